@@ -0,0 +1,74 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.Compiler;
+
+/**
+ * Measures a full compilation of a synthetic corpus, from parsing to the
+ * export of the runtime library. Generated files are unchanged after the first
+ * invocation, so output is measured as it is in a rebuild.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+	@Param({ "1", "16", "64" })
+	public int corpusSize;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private File inputFolder;
+	private File outputFolder;
+	private String[] files;
+
+	@Setup
+	public void setup() throws Exception {
+		this.inputFolder = Files.createTempDirectory("parallelme-input")
+				.toFile();
+		this.outputFolder = Files.createTempDirectory("parallelme-output")
+				.toFile();
+		this.files = Inputs.createCorpus(this.inputFolder, this.corpusSize);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(this.inputFolder);
+		FileUtils.deleteDirectory(this.outputFolder);
+	}
+
+	@Benchmark
+	public void compile() throws Exception {
+		new Compiler(this.threads).compile(this.files,
+				this.outputFolder.getAbsolutePath());
+	}
+}
@@ -0,0 +1,66 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Representative compiler inputs bundled with the benchmarks.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Inputs {
+	/**
+	 * Names of the bundled inputs. Each one is a class with user library code
+	 * stored as a resource named after it.
+	 */
+	public static final String[] names = { "ArraySample", "BitmapSample" };
+
+	/**
+	 * Reads the source code of a bundled input.
+	 */
+	public static String read(String name) throws IOException {
+		InputStream inputStream = Inputs.class.getResourceAsStream(name
+				+ ".java");
+		if (inputStream == null)
+			throw new IOException("Unknown benchmark input: " + name);
+		try {
+			return IOUtils.toString(inputStream, "UTF-8");
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Creates a synthetic corpus in the folder informed, cycling through the
+	 * bundled inputs. Each copy has its class renamed so the generated files
+	 * do not overwrite each other.
+	 * 
+	 * @return Paths of the files created.
+	 */
+	public static String[] createCorpus(File folder, int size)
+			throws IOException {
+		String[] files = new String[size];
+		for (int i = 0; i < size; i++) {
+			String name = names[i % names.length];
+			String className = name + i;
+			File file = new File(folder, className + ".java");
+			FileUtils.writeStringToFile(file,
+					read(name).replaceAll("\\b" + name + "\\b", className),
+					"UTF-8");
+			files[i] = file.getAbsolutePath();
+		}
+		return files;
+	}
+}
@@ -0,0 +1,109 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.CompilerFirstPassListener;
+import org.parallelme.compiler.CompilerSecondPassListener;
+import org.parallelme.compiler.UserLibraryTreeWalker;
+import org.parallelme.compiler.antlr.JavaLexer;
+import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.symboltable.RootSymbol;
+
+/**
+ * Measures the first and second pass walks on a parse tree built once.
+ * 
+ * Besides the bundled inputs, the "Depth" inputs are generated classes with a
+ * single foreach whose user function is an expression of the depth informed.
+ * Each one doubles the depth of the previous, so the score ratio between
+ * consecutive depths must stay close to 2 (linear scaling). Deep parse trees
+ * need a larger stack than the default one.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class ListenerBenchmark {
+	@Param({ "ArraySample", "BitmapSample", "Depth250", "Depth500",
+			"Depth1000", "Depth2000" })
+	public String input;
+
+	private CommonTokenStream tokenStream;
+	private ParseTree tree;
+	private RootSymbol symbolTable;
+
+	@Setup
+	public void setup() throws Exception {
+		String code;
+		if (this.input.startsWith("Depth")) {
+			WorkloadGenerator generator = new WorkloadGenerator();
+			generator.arrayVariables = 0;
+			generator.hdrImageVariables = 0;
+			generator.operations = 1;
+			generator.expressionDepth = Integer.parseInt(this.input
+					.substring("Depth".length()));
+			code = generator.generate(this.input);
+		} else {
+			code = Inputs.read(this.input);
+		}
+		this.tokenStream = new CommonTokenStream(new JavaLexer(
+				new ANTLRInputStream(code)));
+		this.tree = new JavaParser(this.tokenStream).compilationUnit();
+		this.symbolTable = this.firstPass();
+	}
+
+	@Benchmark
+	public RootSymbol firstPass() {
+		RootSymbol symbolTable = new RootSymbol();
+		new ParseTreeWalker().walk(new CompilerFirstPassListener(symbolTable),
+				this.tree);
+		return symbolTable;
+	}
+
+	@Benchmark
+	public CompilerSecondPassListener secondPass() {
+		CompilerSecondPassListener listener = new CompilerSecondPassListener(
+				this.tokenStream, this.symbolTable);
+		new UserLibraryTreeWalker(this.tokenStream, this.symbolTable).walk(
+				listener, this.tree);
+		return listener;
+	}
+
+	/**
+	 * Second pass walking on the whole tree, as a baseline for the pruned
+	 * walk performed by the compiler.
+	 */
+	@Benchmark
+	public CompilerSecondPassListener secondPassFullWalk() {
+		CompilerSecondPassListener listener = new CompilerSecondPassListener(
+				this.tokenStream, this.symbolTable);
+		new ParseTreeWalker().walk(listener, this.tree);
+		return listener;
+	}
+}
@@ -0,0 +1,69 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.antlr.JavaLexer;
+import org.parallelme.compiler.antlr.JavaParser;
+
+/**
+ * Measures lexing and parsing of a compilation unit. SLL is the prediction
+ * mode tried first by the compiler, while LL is the one used as fallback.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	@Param({ "ArraySample", "BitmapSample" })
+	public String input;
+
+	@Param({ "SLL", "LL" })
+	public PredictionMode predictionMode;
+
+	private String code;
+
+	@Setup
+	public void setup() throws Exception {
+		this.code = Inputs.read(this.input);
+	}
+
+	@Benchmark
+	public ParseTree compilationUnit() {
+		JavaParser parser = new JavaParser(new CommonTokenStream(
+				new JavaLexer(new ANTLRInputStream(this.code))));
+		parser.getInterpreter().setPredictionMode(this.predictionMode);
+		if (this.predictionMode == PredictionMode.SLL) {
+			parser.removeErrorListeners();
+			parser.setErrorHandler(new BailErrorStrategy());
+		}
+		return parser.compilationUnit();
+	}
+}
@@ -0,0 +1,119 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.Compiler;
+
+/**
+ * Measures clean builds of corpora created by WorkloadGenerator, so compile
+ * time and memory can be plotted against the number of operations and the
+ * size of the input files. Besides the time of each build, the input size and
+ * the peak heap observed by the compiler are reported as secondary results.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScalingBenchmark {
+	@Param({ "16" })
+	public int files;
+
+	@Param({ "16", "64", "256" })
+	public int operations;
+
+	@Param({ "4", "64" })
+	public int expressionDepth;
+
+	@Param({ "1" })
+	public int nonFinalVariables;
+
+	@Param({ "false", "true" })
+	public boolean streaming;
+
+	private File inputFolder;
+	private File outputFolder;
+	private String[] inputFiles;
+	private long sourceBytes;
+
+	/**
+	 * Secondary results of each build.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Metrics {
+		public long sourceBytes;
+		public long peakHeapBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.sourceBytes = this.peakHeapBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		WorkloadGenerator generator = new WorkloadGenerator();
+		generator.operations = this.operations;
+		generator.expressionDepth = this.expressionDepth;
+		generator.nonFinalVariables = this.nonFinalVariables;
+		this.inputFolder = Files.createTempDirectory("parallelme-input")
+				.toFile();
+		this.inputFiles = generator.generate(this.inputFolder, this.files);
+		this.sourceBytes = FileUtils.sizeOfDirectory(this.inputFolder);
+	}
+
+	@Setup(Level.Iteration)
+	public void createOutputFolder() throws Exception {
+		this.outputFolder = Files.createTempDirectory("parallelme-output")
+				.toFile();
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteOutputFolder() throws Exception {
+		FileUtils.deleteDirectory(this.outputFolder);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(this.inputFolder);
+	}
+
+	@Benchmark
+	public void compile(Metrics metrics) throws Exception {
+		Compiler compiler = new Compiler(1, false, this.streaming);
+		compiler.compile(this.inputFiles,
+				this.outputFolder.getAbsolutePath());
+		metrics.sourceBytes = this.sourceBytes;
+		metrics.peakHeapBytes = Math.max(compiler.getFirstPassPeakHeap(),
+				compiler.getSecondPassPeakHeap());
+	}
+}
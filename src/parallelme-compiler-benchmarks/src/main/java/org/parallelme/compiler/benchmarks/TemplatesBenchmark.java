@@ -0,0 +1,80 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.util.Templates;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+
+/**
+ * Measures the cost of emitting code for a single reduce operation, as done by
+ * the translators, with templates compiled on every call (<b>new ST</b>) and
+ * with the precompiled templates of a group.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplatesBenchmark {
+	private static final String templateReduce = "<decl:{var|\t\t<var.expression>;\n}>"
+			+ "\t<forLoop:{var|<var.loop>}>"
+			+ "\t*<destinationVar> = <inputVar1>;\n";
+	private static final String templateForLoop = "for (int <varName>=<initValue>; <varName>\\<<varMaxVal>; ++<varName>) {\n"
+			+ "\t<body>}\n";
+	private static final String templateReduceForBody = "<inputVar2> = <dataVar>[<xVar>];\n"
+			+ "<inputVar1> = <userFunctionName>(<inputVar1>, <inputVar2><params:{var|, <var.name>}>);\n";
+
+	private final STGroup templates = Templates.load(TemplatesBenchmark.class);
+
+	@Benchmark
+	public String constructor() {
+		return this.render(new ST(templateReduceForBody), new ST(
+				templateForLoop), new ST(templateReduce));
+	}
+
+	@Benchmark
+	public String group() {
+		return this.render(this.templates.getInstanceOf("reduceForBody"),
+				this.templates.getInstanceOf("forLoop"),
+				this.templates.getInstanceOf("reduce"));
+	}
+
+	private String render(ST stForBody, ST stForLoop, ST st) {
+		stForBody.add("inputVar1", "PM_a");
+		stForBody.add("inputVar2", "PM_b");
+		stForBody.add("dataVar", "PM_data");
+		stForBody.add("xVar", "PM_x");
+		stForBody.add("userFunctionName", "PM_reduce");
+		stForBody.addAggr("params.{name}", "PM_factor");
+		stForLoop.add("varName", "PM_x");
+		stForLoop.add("initValue", "1");
+		stForLoop.add("varMaxVal", "PM_size");
+		stForLoop.add("body", stForBody.render());
+		st.addAggr("decl.{expression}", "float PM_a = PM_data[0]");
+		st.addAggr("forLoop.{loop}", stForLoop.render());
+		st.add("destinationVar", "PM_dest");
+		st.add("inputVar1", "PM_a");
+		return st.render();
+	}
+}
@@ -0,0 +1,150 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parallelme.compiler.intermediate.Operation;
+import org.parallelme.compiler.intermediate.Operation.ExecutionType;
+import org.parallelme.compiler.intermediate.Operation.OperationType;
+import org.parallelme.compiler.intermediate.UserFunction;
+import org.parallelme.compiler.intermediate.Variable;
+import org.parallelme.compiler.translation.Java2C;
+import org.parallelme.compiler.translation.renderscript.RSArrayTranslator;
+import org.parallelme.compiler.translation.renderscript.RSBitmapImageTranslator;
+import org.parallelme.compiler.translation.renderscript.RSHDRImageTranslator;
+import org.parallelme.compiler.translation.runtime.PMArrayTranslator;
+import org.parallelme.compiler.translation.runtime.PMBitmapImageTranslator;
+import org.parallelme.compiler.translation.runtime.PMHDRImageTranslator;
+import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
+import org.parallelme.compiler.userlibrary.classes.Array;
+import org.parallelme.compiler.userlibrary.classes.BitmapImage;
+import org.parallelme.compiler.userlibrary.classes.Float32;
+import org.parallelme.compiler.userlibrary.classes.HDRImage;
+import org.parallelme.compiler.userlibrary.classes.Int32;
+import org.parallelme.compiler.userlibrary.classes.Pixel;
+
+/**
+ * Measures the translation of a single operation for every combination of
+ * target runtime, user library class, operation type and execution type, so
+ * the score is the cost per operation translated.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslateOperationBenchmark {
+	@Param({ "RenderScript", "ParallelME" })
+	public String runtime;
+
+	@Param({ "Array", "BitmapImage", "HDRImage" })
+	public String userLibraryClass;
+
+	@Param({ "Foreach", "Reduce", "Map", "Filter" })
+	public OperationType operationType;
+
+	@Param({ "Parallel", "Sequential" })
+	public ExecutionType executionType;
+
+	private BaseUserLibraryTranslator translator;
+	private Operation operation;
+
+	@Setup
+	public void setup() {
+		this.translator = this.createTranslator();
+		this.operation = this.createOperation();
+	}
+
+	@Benchmark
+	public List<String> translateOperation() {
+		return this.translator.translateOperation(this.operation);
+	}
+
+	private BaseUserLibraryTranslator createTranslator() {
+		Java2C cTranslator = new Java2C();
+		boolean renderScript = this.runtime.equals("RenderScript");
+		if (this.userLibraryClass.equals(Array.getInstance().getClassName())) {
+			return renderScript ? new RSArrayTranslator(cTranslator)
+					: new PMArrayTranslator(cTranslator);
+		} else if (this.userLibraryClass.equals(BitmapImage.getInstance()
+				.getClassName())) {
+			return renderScript ? new RSBitmapImageTranslator(cTranslator)
+					: new PMBitmapImageTranslator(cTranslator);
+		} else if (this.userLibraryClass.equals(HDRImage.getInstance()
+				.getClassName())) {
+			return renderScript ? new RSHDRImageTranslator(cTranslator)
+					: new PMHDRImageTranslator(cTranslator);
+		} else {
+			throw new RuntimeException("Invalid user library class: "
+					+ this.userLibraryClass);
+		}
+	}
+
+	/**
+	 * Creates an operation similar to those extracted by the second pass,
+	 * with a user function that touches all its arguments.
+	 */
+	private Operation createOperation() {
+		boolean array = this.userLibraryClass.equals(Array.getInstance()
+				.getClassName());
+		String elementType = array ? Int32.getInstance().getClassName()
+				: Pixel.getInstance().getClassName();
+		String value = array ? "param1.value" : "param1.rgba.red";
+		Variable variable = new Variable("userLibraryVar",
+				this.userLibraryClass, array ? Arrays.asList(elementType)
+						: null, "", 1);
+		Variable destinationVariable = null;
+		List<Variable> arguments = new ArrayList<>();
+		arguments.add(new Variable("param1", elementType, null, "", 10));
+		String code;
+		if (this.operationType == OperationType.Foreach) {
+			code = String.format("{\n\t%s = %s * 3 + 1;\n}", value, value);
+		} else if (this.operationType == OperationType.Reduce) {
+			destinationVariable = new Variable("destVar", elementType, null,
+					"", 999);
+			arguments.add(new Variable("param2", elementType, null, "", 11));
+			code = String.format("{\n\t%s += %s;\n\treturn param2;\n}",
+					value.replace("param1", "param2"), value);
+		} else if (this.operationType == OperationType.Map) {
+			destinationVariable = new Variable("destVar", Array.getInstance()
+					.getClassName(), Arrays.asList(Float32.getInstance()
+					.getClassName()), "", 999);
+			code = String.format(
+					"{\n\tFloat32 ret = new Float32();\n\tret.value = %s * 1.5f;\n\treturn ret;\n}",
+					value);
+		} else {
+			destinationVariable = new Variable("destVar", Array.getInstance()
+					.getClassName(), Arrays.asList(elementType), "", 999);
+			code = String.format("{\n\treturn %s > 2;\n}", value);
+		}
+		Operation operation = new Operation(variable, 123, null,
+				this.operationType, destinationVariable);
+		operation.setExecutionType(this.executionType);
+		operation.setUserFunctionData(new UserFunction(code, arguments));
+		return operation;
+	}
+}
@@ -0,0 +1,305 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates synthetic classes written with the user library, used to measure
+ * how the compiler scales with the number of operations and the size of the
+ * input files.
+ * 
+ * Each class has a single method that creates the configured user library
+ * variables and applies operations to them in turns: operation i is applied to
+ * variable i % variables and its type cycles through foreach, reduce, map and
+ * filter each time all variables were used. User functions are expressions
+ * with the configured depth that alternate between the element value and the
+ * external final variables. Each non-final variable is accumulated by one of
+ * the foreach operations, which forces its sequential translation.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class WorkloadGenerator {
+	public static final String packageName = "org.parallelme.benchmarks.workload";
+	public int arrayVariables = 1;
+	public int bitmapImageVariables = 1;
+	public int hdrImageVariables = 1;
+	public int operations = 12;
+	public int finalVariables = 2;
+	public int nonFinalVariables = 0;
+	public int expressionDepth = 4;
+
+	private enum VariableType {
+		Array, BitmapImage, HDRImage;
+	}
+
+	/**
+	 * Writes a corpus to a folder, so it can also be used to run the compiler
+	 * command line. Options are given as pairs of name and value:
+	 * 
+	 * <pre>
+	 * -o FOLDER -n FILES --arrays N --bitmapImages N --hdrImages N
+	 * --operations N --finalVariables N --nonFinalVariables N
+	 * --expressionDepth N
+	 * </pre>
+	 */
+	public static void main(String[] args) throws Exception {
+		WorkloadGenerator generator = new WorkloadGenerator();
+		File folder = null;
+		int files = 1;
+		for (int i = 0; i < args.length - 1; i += 2) {
+			String value = args[i + 1];
+			if (args[i].equals("-o"))
+				folder = new File(value);
+			else if (args[i].equals("-n"))
+				files = Integer.parseInt(value);
+			else if (args[i].equals("--arrays"))
+				generator.arrayVariables = Integer.parseInt(value);
+			else if (args[i].equals("--bitmapImages"))
+				generator.bitmapImageVariables = Integer.parseInt(value);
+			else if (args[i].equals("--hdrImages"))
+				generator.hdrImageVariables = Integer.parseInt(value);
+			else if (args[i].equals("--operations"))
+				generator.operations = Integer.parseInt(value);
+			else if (args[i].equals("--finalVariables"))
+				generator.finalVariables = Integer.parseInt(value);
+			else if (args[i].equals("--nonFinalVariables"))
+				generator.nonFinalVariables = Integer.parseInt(value);
+			else if (args[i].equals("--expressionDepth"))
+				generator.expressionDepth = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("Invalid argument: "
+						+ args[i]);
+		}
+		if (folder == null || args.length % 2 != 0)
+			throw new IllegalArgumentException(
+					"Usage: -o FOLDER [-n FILES] [--operations N] ...");
+		for (String file : generator.generate(folder, files))
+			System.out.println(file);
+	}
+
+	/**
+	 * Generates a corpus of classes in the folder informed.
+	 * 
+	 * @return Paths of the files created.
+	 */
+	public String[] generate(File folder, int files) throws IOException {
+		String[] ret = new String[files];
+		for (int i = 0; i < files; i++) {
+			String className = "Workload" + i;
+			File file = new File(folder, className + ".java");
+			FileUtils.writeStringToFile(file, this.generate(className),
+					"UTF-8");
+			ret[i] = file.getAbsolutePath();
+		}
+		return ret;
+	}
+
+	/**
+	 * Generates the source code of a single class.
+	 */
+	public String generate(String className) {
+		List<VariableType> variables = this.createVariableList();
+		if (variables.isEmpty() && this.operations > 0)
+			throw new RuntimeException(
+					"Operations require at least one user library variable.");
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import org.parallelme.userlibrary.Array;\n");
+		sb.append("import org.parallelme.userlibrary.datatype.Float32;\n");
+		sb.append("import org.parallelme.userlibrary.datatype.Int32;\n");
+		sb.append("import org.parallelme.userlibrary.function.Filter;\n");
+		sb.append("import org.parallelme.userlibrary.function.Foreach;\n");
+		sb.append("import org.parallelme.userlibrary.function.Map;\n");
+		sb.append("import org.parallelme.userlibrary.function.Reduce;\n");
+		sb.append("import org.parallelme.userlibrary.image.BitmapImage;\n");
+		sb.append("import org.parallelme.userlibrary.image.HDRImage;\n");
+		sb.append("import org.parallelme.userlibrary.image.Pixel;\n");
+		sb.append("import android.graphics.Bitmap;\n\n");
+		sb.append("public class ").append(className).append(" {\n");
+		sb.append("    public float run(int[] data, Bitmap bitmap, byte[] hdrData, int width, int height) {\n");
+		sb.append("        float result = 0.0f;\n");
+		for (int i = 0; i < this.finalVariables; i++)
+			sb.append("        final int external").append(i).append(" = ")
+					.append(i + 2).append(";\n");
+		for (int i = 0; i < this.nonFinalVariables; i++)
+			sb.append("        int counter").append(i).append(" = 0;\n");
+		for (int i = 0; i < variables.size(); i++)
+			this.appendDeclaration(sb, variables.get(i), i);
+		int foreachCount = 0;
+		for (int i = 0; i < this.operations; i++) {
+			int variable = i % variables.size();
+			int operationType = (i / variables.size()) % 4;
+			VariableType type = variables.get(variable);
+			if (operationType == 0) {
+				this.appendForeach(sb, type, variable,
+						foreachCount < this.nonFinalVariables ? foreachCount
+								: -1);
+				foreachCount++;
+			} else if (operationType == 1) {
+				this.appendReduce(sb, type, variable, i);
+			} else if (operationType == 2) {
+				this.appendMap(sb, type, variable, i);
+			} else {
+				this.appendFilter(sb, type, variable, i);
+			}
+		}
+		for (int i = 0; i < variables.size(); i++) {
+			if (variables.get(i) == VariableType.Array)
+				sb.append("        variable").append(i)
+						.append(".toJavaArray(data);\n");
+			else
+				sb.append("        bitmap = variable").append(i)
+						.append(".toBitmap();\n");
+		}
+		for (int i = 0; i < this.nonFinalVariables; i++)
+			sb.append("        result += counter").append(i).append(";\n");
+		sb.append("        return result;\n");
+		sb.append("    }\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private List<VariableType> createVariableList() {
+		List<VariableType> ret = new ArrayList<>();
+		int max = Math.max(this.arrayVariables,
+				Math.max(this.bitmapImageVariables, this.hdrImageVariables));
+		for (int i = 0; i < max; i++) {
+			if (i < this.arrayVariables)
+				ret.add(VariableType.Array);
+			if (i < this.bitmapImageVariables)
+				ret.add(VariableType.BitmapImage);
+			if (i < this.hdrImageVariables)
+				ret.add(VariableType.HDRImage);
+		}
+		return ret;
+	}
+
+	private void appendDeclaration(StringBuilder sb, VariableType type,
+			int variable) {
+		sb.append("        ");
+		if (type == VariableType.Array)
+			sb.append("Array<Int32> variable").append(variable)
+					.append(" = new Array<Int32>(data, Int32.class);\n");
+		else if (type == VariableType.BitmapImage)
+			sb.append("BitmapImage variable").append(variable)
+					.append(" = new BitmapImage(bitmap);\n");
+		else
+			sb.append("HDRImage variable").append(variable)
+					.append(" = new HDRImage(hdrData, width, height);\n");
+	}
+
+	private String elementType(VariableType type) {
+		return type == VariableType.Array ? "Int32" : "Pixel";
+	}
+
+	private String elementValue(VariableType type, String element) {
+		return element
+				+ (type == VariableType.Array ? ".value" : ".rgba.red");
+	}
+
+	/**
+	 * Creates an expression with the configured depth on the element informed.
+	 */
+	private String expression(VariableType type, String element) {
+		StringBuilder sb = new StringBuilder(this.elementValue(type, element));
+		for (int i = 0; i < this.expressionDepth; i++) {
+			sb.append(i % 2 == 0 ? " * " : " + ");
+			if (i % 2 == 0 && this.finalVariables > 0)
+				sb.append("external").append((i / 2) % this.finalVariables);
+			else if (i % 2 == 0)
+				sb.append(i + 2);
+			else
+				sb.append(this.elementValue(type, element));
+		}
+		return sb.toString();
+	}
+
+	private void appendForeach(StringBuilder sb, VariableType type,
+			int variable, int counter) {
+		String elementType = this.elementType(type);
+		sb.append("        variable").append(variable)
+				.append(".par().foreach(new Foreach<").append(elementType)
+				.append(">() {\n");
+		sb.append("            @Override\n");
+		sb.append("            public void function(").append(elementType)
+				.append(" element) {\n");
+		sb.append("                ")
+				.append(this.elementValue(type, "element")).append(" = ")
+				.append(this.expression(type, "element")).append(";\n");
+		if (counter >= 0)
+			sb.append("                counter").append(counter)
+					.append(" += ").append(this.elementValue(type, "element"))
+					.append(";\n");
+		sb.append("            }\n");
+		sb.append("        });\n");
+	}
+
+	private void appendReduce(StringBuilder sb, VariableType type,
+			int variable, int operation) {
+		String elementType = this.elementType(type);
+		sb.append("        ").append(elementType).append(" reduced")
+				.append(operation).append(" = variable").append(variable)
+				.append(".par().reduce(new Reduce<").append(elementType)
+				.append(">() {\n");
+		sb.append("            @Override\n");
+		sb.append("            public ").append(elementType)
+				.append(" function(").append(elementType).append(" a, ")
+				.append(elementType).append(" b) {\n");
+		sb.append("                ").append(this.elementValue(type, "a"))
+				.append(" = ").append(this.expression(type, "a"))
+				.append(" + ").append(this.elementValue(type, "b"))
+				.append(";\n");
+		sb.append("                return a;\n");
+		sb.append("            }\n");
+		sb.append("        });\n");
+		sb.append("        result += ")
+				.append(this.elementValue(type, "reduced" + operation))
+				.append(";\n");
+	}
+
+	private void appendMap(StringBuilder sb, VariableType type, int variable,
+			int operation) {
+		String elementType = this.elementType(type);
+		sb.append("        Array<Float32> mapped").append(operation)
+				.append(" = variable").append(variable)
+				.append(".par().map(Float32.class, new Map<Float32, ")
+				.append(elementType).append(">() {\n");
+		sb.append("            @Override\n");
+		sb.append("            public Float32 function(").append(elementType)
+				.append(" element) {\n");
+		sb.append("                Float32 ret = new Float32();\n");
+		sb.append("                ret.value = ")
+				.append(this.expression(type, "element")).append(";\n");
+		sb.append("                return ret;\n");
+		sb.append("            }\n");
+		sb.append("        });\n");
+	}
+
+	private void appendFilter(StringBuilder sb, VariableType type,
+			int variable, int operation) {
+		String elementType = this.elementType(type);
+		sb.append("        Array<").append(elementType).append("> filtered")
+				.append(operation).append(" = variable").append(variable)
+				.append(".par().filter(new Filter<").append(elementType)
+				.append(">() {\n");
+		sb.append("            @Override\n");
+		sb.append("            public boolean function(").append(elementType)
+				.append(" element) {\n");
+		sb.append("                return ")
+				.append(this.expression(type, "element")).append(" > 0;\n");
+		sb.append("            }\n");
+		sb.append("        });\n");
+	}
+}
@@ -0,0 +1,65 @@
+package org.parallelme.samples.arraytest;
+
+import org.parallelme.userlibrary.Array;
+import org.parallelme.userlibrary.datatype.Int32;
+import org.parallelme.userlibrary.datatype.Float32;
+import org.parallelme.userlibrary.function.Foreach;
+import org.parallelme.userlibrary.function.Map;
+import org.parallelme.userlibrary.function.Reduce;
+import org.parallelme.userlibrary.function.Filter;
+import org.parallelme.userlibrary.image.BitmapImage;
+import org.parallelme.userlibrary.datatype.Pixel;
+import android.graphics.Bitmap;
+
+public class ArraySample {
+    public int run(int[] data, Bitmap bitmap) {
+        Array<Int32> array = new Array<Int32>(data, Int32.class);
+        final int factor = 3;
+        int counter = 0;
+        array.par().foreach(new Foreach<Int32>() {
+            @Override
+            public void function(Int32 element) {
+                element.value = element.value * factor + (element.value - 1) * 2;
+            }
+        });
+        array.par().foreach(new Foreach<Int32>() {
+            @Override
+            public void function(Int32 element) {
+                counter += element.value;
+            }
+        });
+        Int32 sum = array.par().reduce(new Reduce<Int32>() {
+            @Override
+            public Int32 function(Int32 a, Int32 b) {
+                a.value = a.value + b.value;
+                return a;
+            }
+        });
+        Array<Float32> mapped = array.par().map(Float32.class, new Map<Float32, Int32>() {
+            @Override
+            public Float32 function(Int32 element) {
+                Float32 ret = new Float32();
+                ret.value = element.value * 0.5f;
+                return ret;
+            }
+        });
+        Array<Int32> filtered = array.par().filter(new Filter<Int32>() {
+            @Override
+            public boolean function(Int32 element) {
+                return element.value > factor;
+            }
+        });
+        array.toJavaArray(data);
+        BitmapImage image = new BitmapImage(bitmap);
+        int w = image.getWidth();
+        int h = image.getHeight();
+        image.par().foreach(new Foreach<Pixel>() {
+            @Override
+            public void function(Pixel pixel) {
+                pixel.rgba.red = pixel.rgba.red * 0.5f;
+            }
+        });
+        bitmap = image.toBitmap();
+        return sum.value + w + h + counter;
+    }
+}
@@ -0,0 +1,197 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.parallelme.compiler.util.FileWriter;
+
+/**
+ * Persistent record of a previous compilation, stored in the output folder and
+ * used by incremental builds to skip input files that did not change.
+ *
+ * The manifest is a plain text file where each input file starts a new record
+ * ("file" line) followed by its content hash, the class compiled from it and
+ * the artifacts generated for it. Artifacts shared by all classes (Android.mk,
+ * userKernels.hpp and the runtime library) are listed apart in "shared" lines.
+ * A "targets" line records the runtimes code was generated for, since changing
+ * them affects every file.
+ *
+ * @author Wilson de Carvalho
+ */
+public class BuildManifest {
+	public static final String fileName = ".parallelme-manifest";
+	private static final String formatVersion = "3";
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+	// Target runtimes of the build, which are the same for all entries.
+	private String targets = null;
+	// Artifacts that do not belong to a single input file.
+	private final Set<String> sharedArtifacts = new TreeSet<>();
+
+	/**
+	 * Data stored for a single input file.
+	 */
+	public static class Entry {
+		public final String file;
+		public final String hash;
+		public String packageName;
+		public String className;
+		public final List<String> artifacts = new ArrayList<>();
+
+		public Entry(String file, String hash) {
+			this.file = file;
+			this.hash = hash;
+		}
+
+		/**
+		 * Indicates if a class with user library code was compiled from this
+		 * file.
+		 */
+		public boolean hasCompiledClass() {
+			return this.className != null;
+		}
+	}
+
+	/**
+	 * Loads the manifest stored in the folder informed.
+	 *
+	 * @return The manifest found or an empty manifest if the folder does not
+	 *         contain a valid one.
+	 */
+	public static BuildManifest load(String destinationFolder) {
+		BuildManifest manifest = new BuildManifest();
+		File file = new File(destinationFolder, fileName);
+		if (!file.isFile())
+			return manifest;
+		try {
+			List<String> lines = FileUtils.readLines(file, "UTF-8");
+			if (lines.isEmpty()
+					|| !lines.get(0).equals("version\t" + formatVersion))
+				return manifest;
+			Entry entry = null;
+			for (String line : lines.subList(1, lines.size())) {
+				String[] fields = line.split("\t");
+				if (fields[0].equals("targets") && fields.length == 2) {
+					manifest.targets = fields[1];
+				} else if (fields[0].equals("shared") && fields.length == 2) {
+					manifest.sharedArtifacts.add(fields[1]);
+				} else if (fields[0].equals("file") && fields.length == 3) {
+					entry = new Entry(fields[1], fields[2]);
+					manifest.entries.put(entry.file, entry);
+				} else if (entry == null) {
+					return new BuildManifest();
+				} else if (fields[0].equals("class") && fields.length == 3) {
+					entry.packageName = fields[1];
+					entry.className = fields[2];
+				} else if (fields[0].equals("artifact") && fields.length == 2) {
+					entry.artifacts.add(fields[1]);
+				}
+			}
+		} catch (IOException e) {
+			SimpleLogger.warn("Ignoring unreadable build manifest: "
+					+ e.getMessage());
+			return new BuildManifest();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Stores this manifest in the folder informed.
+	 */
+	public void save(String destinationFolder) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("version\t").append(formatVersion).append("\n");
+		if (this.targets != null)
+			sb.append("targets\t").append(this.targets).append("\n");
+		for (String artifact : this.sharedArtifacts)
+			sb.append("shared\t").append(artifact).append("\n");
+		for (Entry entry : this.entries.values()) {
+			sb.append("file\t").append(entry.file).append("\t")
+					.append(entry.hash).append("\n");
+			if (entry.hasCompiledClass())
+				sb.append("class\t").append(entry.packageName).append("\t")
+						.append(entry.className).append("\n");
+			for (String artifact : entry.artifacts)
+				sb.append("artifact\t").append(artifact).append("\n");
+		}
+		FileWriter.writeFile(fileName, destinationFolder, sb.toString());
+	}
+
+	/**
+	 * Target runtimes of the build, or null if unknown.
+	 */
+	public String getTargets() {
+		return this.targets;
+	}
+
+	public void setTargets(String targets) {
+		this.targets = targets;
+	}
+
+	/**
+	 * Artifacts that do not belong to a single input file.
+	 */
+	public Set<String> getSharedArtifacts() {
+		return this.sharedArtifacts;
+	}
+
+	public Entry get(String file) {
+		return this.entries.get(file);
+	}
+
+	public void put(Entry entry) {
+		this.entries.put(entry.file, entry);
+	}
+
+	public List<Entry> getEntries() {
+		return new ArrayList<>(this.entries.values());
+	}
+
+	/**
+	 * Checks if a previously compiled file can be skipped: its contents must
+	 * be the same and all its artifacts must still exist.
+	 */
+	public boolean isUpToDate(String file, String hash, String destinationFolder) {
+		Entry entry = this.entries.get(file);
+		if (entry == null || !entry.hash.equals(hash))
+			return false;
+		for (String artifact : entry.artifacts) {
+			if (!new File(destinationFolder, artifact).isFile())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the content hash of a given file.
+	 */
+	public static String hash(String file) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] bytes = digest.digest(FileUtils
+					.readFileToByteArray(new File(file)));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : bytes)
+				sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Outcome of an in-memory compilation: the generated files, held in a virtual
+ * file tree instead of being written to disk, and the diagnostics reported.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilationResult {
+	private final SortedMap<String, byte[]> files;
+	private final List<Diagnostic> diagnostics;
+
+	CompilationResult(SortedMap<String, byte[]> files,
+			List<Diagnostic> diagnostics) {
+		this.files = Collections.unmodifiableSortedMap(files);
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+	}
+
+	/**
+	 * Generated files indexed by their path relative to the output root, with
+	 * '/' as separator (e.g. "java/foo/Bar.java" or "jni/Android.mk").
+	 */
+	public SortedMap<String, byte[]> getFiles() {
+		return this.files;
+	}
+
+	/**
+	 * Contents of a generated file as UTF-8 text, or null if no file was
+	 * generated in the path informed.
+	 */
+	public String getFileContents(String path) {
+		byte[] contents = this.files.get(path);
+		return contents == null ? null : new String(contents,
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Errors and warnings in the order they were reported.
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	/**
+	 * True if no error was reported.
+	 */
+	public boolean isSuccessful() {
+		for (Diagnostic diagnostic : this.diagnostics) {
+			if (diagnostic.kind == Diagnostic.Kind.Error)
+				return false;
+		}
+		return true;
+	}
+}
@@ -8,17 +8,44 @@
 
 package org.parallelme.compiler;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.apache.commons.io.FileUtils;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.parallelme.compiler.antlr.JavaLexer;
 import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
 import org.parallelme.compiler.exception.CompilationException;
 import org.parallelme.compiler.symboltable.*;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
+import org.parallelme.compiler.userlibrary.PackageDefinition;
+import org.parallelme.compiler.util.FileWriter;
+import org.parallelme.compiler.util.Profiler;
+import org.parallelme.compiler.util.Pair;
 
 /**
  * Main class for ParallelME compiler. It is responsible for parsing the user
@@ -28,6 +55,236 @@ import org.parallelme.compiler.translation.SimpleTranslator;
  * @author Wilson de Carvalho, Pedro Caldeira
  */
 public class Compiler {
+	private final int threads;
+	private final boolean incremental;
+	private final boolean streaming;
+	private String profileReport = null;
+	private String dataflowFormat = null;
+	private final AtomicInteger sllParses = new AtomicInteger();
+	private final AtomicInteger llFallbacks = new AtomicInteger();
+	private int skippedFiles;
+	private int upToDateFiles;
+	// Peak heap usage observed at the end of each phase.
+	private final AtomicLong firstPassPeakHeap = new AtomicLong();
+	private final AtomicLong secondPassPeakHeap = new AtomicLong();
+	private boolean exportInternalLibraries = true;
+	private Set<TargetRuntime> targets = EnumSet.allOf(TargetRuntime.class);
+	// Source code of in-memory compilations, indexed by file name.
+	private Map<String, ? extends CharSequence> sources = null;
+	private final List<Diagnostic> diagnostics = Collections
+			.synchronizedList(new ArrayList<Diagnostic>());
+	// Translates user functions of the current compilation to C.
+	private Java2C cTranslator;
+	// Syntax errors of the files parsed, indexed by file name, kept until
+	// they are reported in the input file order.
+	private final Map<String, SyntaxErrors> syntaxErrors = new ConcurrentHashMap<>();
+	// Root folder of the virtual file tree of in-memory compilations.
+	private static final String memoryRootFolder = "parallelme-output";
+
+	/**
+	 * What must be done with each input file.
+	 */
+	private enum FileStatus {
+		Compile, UpToDate, NoUserLibrary;
+	}
+
+	/**
+	 * Objects produced for a single file during the first pass and consumed
+	 * by the second pass.
+	 */
+	private static class ParsedFile {
+		final String file;
+		final ParseTree tree;
+		final RootSymbol symbolTable;
+		final TokenStreamRewriter tokenStreamRewriter;
+
+		ParsedFile(String file, ParseTree tree, RootSymbol symbolTable,
+				TokenStreamRewriter tokenStreamRewriter) {
+			this.file = file;
+			this.tree = tree;
+			this.symbolTable = symbolTable;
+			this.tokenStreamRewriter = tokenStreamRewriter;
+		}
+	}
+
+	/**
+	 * Syntax errors found while parsing a file, both as diagnostics and as the
+	 * messages printed to the console.
+	 */
+	private static class SyntaxErrors {
+		final List<Diagnostic> diagnostics = new ArrayList<>();
+		final List<String> messages = new ArrayList<>();
+	}
+
+	/**
+	 * Creates a compiler that processes files sequentially.
+	 */
+	public Compiler() {
+		this(1, false);
+	}
+
+	/**
+	 * Creates a compiler that processes up to the number of files informed at
+	 * the same time.
+	 * 
+	 * @param threads
+	 *            Number of worker threads. Values lower than 2 keep the
+	 *            sequential behavior.
+	 */
+	public Compiler(int threads) {
+		this(threads, false);
+	}
+
+	/**
+	 * Creates a compiler that processes up to the number of files informed at
+	 * the same time.
+	 * 
+	 * @param threads
+	 *            Number of worker threads. Values lower than 2 keep the
+	 *            sequential behavior.
+	 * @param incremental
+	 *            If true, a manifest is kept in the destination folder and
+	 *            files that did not change since the previous build are not
+	 *            compiled again.
+	 */
+	public Compiler(int threads, boolean incremental) {
+		this(threads, incremental, false);
+	}
+
+	/**
+	 * Creates a compiler that processes up to the number of files informed at
+	 * the same time.
+	 * 
+	 * @param threads
+	 *            Number of worker threads. Values lower than 2 keep the
+	 *            sequential behavior.
+	 * @param incremental
+	 *            If true, a manifest is kept in the destination folder and
+	 *            files that did not change since the previous build are not
+	 *            compiled again.
+	 * @param streaming
+	 *            If true, each file goes through both passes and code
+	 *            translation before the following files are parsed, so the
+	 *            parse trees of at most one file per thread are kept in
+	 *            memory at a time.
+	 */
+	public Compiler(int threads, boolean incremental, boolean streaming) {
+		this.threads = threads;
+		this.incremental = incremental;
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Enables profiling of the following compilations.
+	 * 
+	 * @param profileReport
+	 *            File where the profiling report of each compilation must be
+	 *            written, in CSV if its name ends with ".csv" and in JSON
+	 *            otherwise. Null disables profiling.
+	 */
+	public void setProfileReport(String profileReport) {
+		this.profileReport = profileReport;
+	}
+
+	/**
+	 * Enables dumps of the dataflow graph of each class compiled, written to
+	 * the "dataflow" folder of the destination folder.
+	 * 
+	 * @param dataflowFormat
+	 *            "dot" for Graphviz DOT or "json" for JSON dumps. Null
+	 *            disables dumps.
+	 */
+	public void setDataflowFormat(String dataflowFormat) {
+		this.dataflowFormat = dataflowFormat;
+	}
+
+	/**
+	 * Sets the runtimes for which code must be generated. Both RenderScript
+	 * and ParallelME runtime are targeted by default, the latter being
+	 * preferred during execution and the former used as a fallback.
+	 * 
+	 * @param targets
+	 *            Non-empty set of target runtimes.
+	 */
+	public void setTargets(Set<TargetRuntime> targets) {
+		if (targets.isEmpty())
+			throw new IllegalArgumentException(
+					"At least one target runtime is necessary.");
+		this.targets = EnumSet.copyOf(targets);
+	}
+
+	/**
+	 * Sets if the runtime library must be exported along with the generated
+	 * code, which is the default. Build tools that ship the runtime library
+	 * on their own may disable it.
+	 */
+	public void setExportInternalLibraries(boolean exportInternalLibraries) {
+		this.exportInternalLibraries = exportInternalLibraries;
+	}
+
+	/**
+	 * Compiles source code held in memory. Nothing is read from nor written
+	 * to disk: generated files are returned in a virtual file tree along with
+	 * the errors and warnings found. Incremental builds are not supported in
+	 * this mode.
+	 * 
+	 * @param sources
+	 *            Source code indexed by file name. Names are only used to
+	 *            order files and in diagnostics.
+	 * @return Generated files and diagnostics.
+	 */
+	public CompilationResult compile(Map<String, ? extends CharSequence> sources)
+			throws IOException {
+		this.sources = sources;
+		try {
+			return this.compileInMemory(sources.keySet().toArray(
+					new String[sources.size()]));
+		} finally {
+			this.sources = null;
+		}
+	}
+
+	/**
+	 * Compiles a list of files, returning generated files in a virtual file
+	 * tree instead of writing them to disk.
+	 * 
+	 * @param files
+	 *            List of files that must be compiled.
+	 * @return Generated files and diagnostics.
+	 * @throws IOException
+	 *             Exception thrown in case of issue while reading files.
+	 */
+	public CompilationResult compile(List<Path> files) throws IOException {
+		String[] fileNames = new String[files.size()];
+		for (int i = 0; i < fileNames.length; i++)
+			fileNames[i] = files.get(i).toString();
+		return this.compileInMemory(fileNames);
+	}
+
+	private CompilationResult compileInMemory(String[] files)
+			throws IOException {
+		SortedMap<String, byte[]> generatedFiles = new TreeMap<>();
+		FileWriter.setMemoryOutput(memoryRootFolder, generatedFiles);
+		try {
+			this.compile(files, memoryRootFolder);
+		} catch (CompilationException e) {
+			// Already recorded as a diagnostic.
+		} finally {
+			FileWriter.setMemoryOutput(null, null);
+		}
+		return new CompilationResult(generatedFiles, new ArrayList<>(
+				this.diagnostics));
+	}
+
+	/**
+	 * Errors and warnings found during the last compilation.
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		synchronized (this.diagnostics) {
+			return new ArrayList<>(this.diagnostics);
+		}
+	}
+
 	/**
 	 * Compile a list of files storing them on the folder informed.
 	 * 
@@ -41,52 +298,655 @@ public class Compiler {
 	 */
 	public void compile(String[] files, String destinationFolder)
 			throws IOException, CompilationException {
-		RootSymbol[] symbolTables = new RootSymbol[files.length];
-		ParseTree[] parseTrees = new ParseTree[files.length];
-		JavaParser[] javaParser = new JavaParser[files.length];
-		TokenStreamRewriter[] tokenStreams = new TokenStreamRewriter[files.length];
-		ParseTreeWalker walker = new ParseTreeWalker();
+		if (this.profileReport == null) {
+			this.compileFiles(files, destinationFolder);
+			return;
+		}
+		Profiler.start();
+		try {
+			this.compileFiles(files, destinationFolder);
+		} finally {
+			Profiler.stop();
+			// The report is always written to disk.
+			FileWriter.setMemoryOutput(null, null);
+			Profiler.writeReport(this.profileReport);
+			SimpleLogger.info("Profile - report written to "
+					+ this.profileReport + ".");
+		}
+	}
+
+	private void compileFiles(String[] files, String destinationFolder)
+			throws IOException, CompilationException {
+		this.sllParses.set(0);
+		this.llFallbacks.set(0);
+		this.firstPassPeakHeap.set(0);
+		this.secondPassPeakHeap.set(0);
+		this.diagnostics.clear();
+		this.syntaxErrors.clear();
+		FileWriter.resetStatistics();
+		this.cTranslator = new Java2C(this.diagnostics);
+		CompilerCodeTranslator codeTranslator = new CompilerCodeTranslator(
+				destinationFolder, this.cTranslator, this.targets,
+				this.diagnostics);
+		codeTranslator.setDataflowFormat(this.dataflowFormat);
+		boolean incremental = this.incremental && this.sources == null;
+		BuildManifest.Entry[] entries = new BuildManifest.Entry[files.length];
+		BuildManifest previousManifest = incremental ? BuildManifest
+				.load(destinationFolder) : new BuildManifest();
+		FileStatus[] status = new FileStatus[files.length];
+		this.skippedFiles = 0;
+		this.upToDateFiles = 0;
+		Profiler.enter("preScan");
+		try {
+			boolean[] upToDate = incremental ? this.findUpToDateFiles(files,
+					destinationFolder, previousManifest, entries)
+					: new boolean[files.length];
+			for (int i = 0; i < files.length; i++) {
+				if (upToDate[i]) {
+					status[i] = FileStatus.UpToDate;
+				} else if (!this.usesUserLibrary(files[i])) {
+					status[i] = FileStatus.NoUserLibrary;
+					this.skippedFiles++;
+				} else {
+					status[i] = FileStatus.Compile;
+				}
+			}
+		} finally {
+			Profiler.exit();
+		}
+		SimpleLogger.info("Pre-scan - " + this.skippedFiles + " of "
+				+ files.length + " files do not use the user library.");
+		ForkJoinPool pool = null;
+		if (this.threads > 1 && files.length > 1)
+			pool = new ForkJoinPool(Math.min(this.threads, files.length));
+		try {
+			if (this.streaming)
+				this.compileStreaming(files, status, entries,
+						previousManifest, codeTranslator, pool);
+			else
+				this.compile(files, status, entries, previousManifest,
+						codeTranslator, pool);
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+		}
+		if (this.exportInternalLibraries) {
+			Profiler.enter("runtimeExport");
+			try {
+				codeTranslator.exportInternalLibraries();
+			} finally {
+				Profiler.exit();
+			}
+		}
+		codeTranslator.createAndroidMKFile();
+		SimpleLogger.info("Parsing - " + this.sllParses.get()
+				+ " files parsed with SLL, " + this.llFallbacks.get()
+				+ " fell back to LL.");
+		SimpleLogger.info("Memory - peak heap used of "
+				+ this.firstPassPeakHeap.get() / (1024 * 1024)
+				+ " MB after first pass and "
+				+ this.secondPassPeakHeap.get() / (1024 * 1024)
+				+ " MB after second pass.");
+		if (incremental) {
+			BuildManifest manifest = new BuildManifest();
+			manifest.setTargets(this.targets.toString());
+			for (BuildManifest.Entry entry : entries)
+				manifest.put(entry);
+			this.recordSharedArtifacts(previousManifest, manifest,
+					destinationFolder);
+			this.removeStaleArtifacts(previousManifest, manifest,
+					destinationFolder);
+			manifest.save(destinationFolder);
+		}
+		SimpleLogger.info("Output - " + FileWriter.getWrittenFileCount()
+				+ " files written (" + FileWriter.getWrittenBytes()
+				+ " bytes), " + FileWriter.getSkippedFileCount()
+				+ " unchanged files skipped.");
+	}
+
+	/**
+	 * Runs both passes on the files that must be compiled. When a fork-join
+	 * pool is informed, the first pass of each file and the second pass walks
+	 * run concurrently. In both cases the first pass of every file finishes
+	 * before any output is written and code translation is performed in the
+	 * original file order, as each walk is joined. This way the generated
+	 * files, the Android.mk ordering and the first error reported are the
+	 * same regardless of the number of threads.
+	 */
+	private void compile(String[] files, FileStatus[] status,
+			BuildManifest.Entry[] entries, BuildManifest previousManifest,
+			CompilerCodeTranslator codeTranslator, ForkJoinPool pool)
+			throws IOException, CompilationException {
 		// ####### First pass #######
+		List<Future<ParsedFile>> firstPassTasks = new ArrayList<>();
 		for (int i = 0; i < files.length; i++) {
-			String file = files[i];
-			SimpleLogger.info("1st pass file - " + file);
-			FileInputStream is = new FileInputStream(file);
+			final String file = files[i];
+			firstPassTasks.add(status[i] != FileStatus.Compile ? null : this
+					.submit(pool,
+					new Callable<ParsedFile>() {
+						@Override
+						public ParsedFile call() throws Exception {
+							return firstPass(file);
+						}
+					}));
+		}
+		List<ParsedFile> parsedFiles = new ArrayList<>();
+		for (int i = 0; i < files.length; i++) {
+			Future<ParsedFile> task = firstPassTasks.get(i);
 			try {
-				CommonTokenStream tokenStream = new CommonTokenStream(
-						new JavaLexer(new ANTLRInputStream(is)));
-				JavaParser parser = new JavaParser(tokenStream);
-				ParseTree tree = parser.compilationUnit();
-				// Object that will be used to rewrite this file, if necessary
-				TokenStreamRewriter tokenStreamRewriter = new TokenStreamRewriter(
-						tokenStream);
-				// Root of this file's symbol table
-				RootSymbol symbolTable = new RootSymbol();
-				CompilerFirstPassListener listener = new CompilerFirstPassListener(
-						symbolTable);
-				// Walk on the parse tree
-				walker.walk(listener, tree);
-				// Stores objects by file for next compiler pass
-				tokenStreams[i] = tokenStreamRewriter;
-				javaParser[i] = parser;
-				parseTrees[i] = tree;
-				symbolTables[i] = symbolTable;
+				parsedFiles.add(task == null ? null : this.join(task));
 			} finally {
-				is.close();
+				this.reportSyntaxErrors(files[i]);
 			}
 		}
+		firstPassTasks = null;
+		this.updatePeakHeap(this.firstPassPeakHeap);
 		// ####### Second pass and code translation #######
-		CompilerCodeTranslator codeTranslator = new CompilerCodeTranslator(
-				destinationFolder, new SimpleTranslator());
+		List<Callable<CompilerSecondPassListener>> walks = new ArrayList<>();
+		List<Future<CompilerSecondPassListener>> secondPassTasks = new ArrayList<>();
+		for (final ParsedFile parsedFile : parsedFiles) {
+			Callable<CompilerSecondPassListener> walk = null;
+			if (parsedFile != null) {
+				walk = new Callable<CompilerSecondPassListener>() {
+					@Override
+					public CompilerSecondPassListener call() {
+						return secondPass(parsedFile);
+					}
+				};
+			}
+			walks.add(walk);
+			// Without a pool each walk is only performed right before its
+			// translation, as the sequential compiler always did.
+			secondPassTasks.add(walk == null || pool == null ? null : pool
+					.submit(walk));
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (status[i] == FileStatus.UpToDate) {
+				this.restoreEntry(i, entries, previousManifest, codeTranslator);
+			} else if (status[i] == FileStatus.Compile) {
+				Future<CompilerSecondPassListener> task = secondPassTasks
+						.get(i);
+				if (task == null)
+					task = this.submit(null, walks.get(i));
+				this.translate(parsedFiles.get(i), this.join(task), entries[i],
+						codeTranslator);
+				// Objects of this file are no longer necessary.
+				parsedFiles.set(i, null);
+				walks.set(i, null);
+				secondPassTasks.set(i, null);
+			}
+		}
+	}
+
+	/**
+	 * Runs both passes on the files that must be compiled, one file at a time
+	 * or, when a fork-join pool is informed, one file per thread at a time.
+	 * Parse trees and token streams of a file are released as soon as its
+	 * code is translated, so memory usage does not grow with the number of
+	 * files. Unlike the default mode, output of the first files is written
+	 * before the following ones are parsed.
+	 */
+	private void compileStreaming(String[] files, FileStatus[] status,
+			BuildManifest.Entry[] entries, BuildManifest previousManifest,
+			CompilerCodeTranslator codeTranslator, ForkJoinPool pool)
+			throws IOException, CompilationException {
+		int window = pool == null ? 1 : pool.getParallelism();
+		List<Future<Pair<ParsedFile, CompilerSecondPassListener>>> tasks = new ArrayList<>();
+		for (int i = 0; i < files.length; i++)
+			tasks.add(null);
+		int next = 0;
+		for (int i = 0; i < files.length; i++) {
+			// Keeps up to one file per thread being parsed ahead of the file
+			// that is translated.
+			for (; next < files.length && next < i + window; next++) {
+				if (status[next] != FileStatus.Compile)
+					continue;
+				final String file = files[next];
+				tasks.set(next, this.submit(pool,
+						new Callable<Pair<ParsedFile, CompilerSecondPassListener>>() {
+							@Override
+							public Pair<ParsedFile, CompilerSecondPassListener> call()
+									throws Exception {
+								ParsedFile parsedFile = firstPass(file);
+								updatePeakHeap(firstPassPeakHeap);
+								return new Pair<>(parsedFile,
+										secondPass(parsedFile));
+							}
+						}));
+			}
+			if (status[i] == FileStatus.UpToDate) {
+				this.restoreEntry(i, entries, previousManifest, codeTranslator);
+			} else if (status[i] == FileStatus.Compile) {
+				Pair<ParsedFile, CompilerSecondPassListener> passes;
+				try {
+					passes = this.join(tasks.get(i));
+				} finally {
+					this.reportSyntaxErrors(files[i]);
+				}
+				tasks.set(i, null);
+				this.translate(passes.left, passes.right, entries[i],
+						codeTranslator);
+			}
+		}
+	}
+
+	/**
+	 * Translates a file after its second pass and records its manifest entry.
+	 */
+	private void translate(ParsedFile parsedFile,
+			CompilerSecondPassListener listener, BuildManifest.Entry entry,
+			CompilerCodeTranslator codeTranslator) throws CompilationException {
+		Profiler.setFile(parsedFile.file);
+		Profiler.enter("translation");
+		this.cTranslator.setFile(parsedFile.file);
+		try {
+			Pair<String, String> compiledClass = codeTranslator.run(
+					parsedFile.file, parsedFile.symbolTable, listener,
+					parsedFile.tokenStreamRewriter);
+			this.recordEntry(entry, listener, compiledClass, codeTranslator);
+		} catch (CompilationException e) {
+			this.diagnostics.add(new Diagnostic(Diagnostic.Kind.Error,
+					parsedFile.file, e.getLineNumber(), e.getMessage()));
+			throw e;
+		} finally {
+			Profiler.exit();
+			Profiler.setFile(null);
+		}
+		this.updatePeakHeap(this.secondPassPeakHeap);
+	}
+
+	/**
+	 * Reuses the manifest entry of a file that is up to date.
+	 */
+	private void restoreEntry(int index, BuildManifest.Entry[] entries,
+			BuildManifest previousManifest,
+			CompilerCodeTranslator codeTranslator) {
+		BuildManifest.Entry entry = previousManifest
+				.get(entries[index].file);
+		if (entry.hasCompiledClass())
+			codeTranslator.addCompiledClass(entry.packageName,
+					entry.className);
+		entries[index] = entry;
+	}
+
+	/**
+	 * Updates a peak heap usage with the heap currently used.
+	 */
+	private void updatePeakHeap(AtomicLong peakHeap) {
+		Runtime runtime = Runtime.getRuntime();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		long peak;
+		do {
+			peak = peakHeap.get();
+		} while (used > peak && !peakHeap.compareAndSet(peak, used));
+	}
+
+	/**
+	 * Peak heap usage, in bytes, observed at the end of the first pass of the
+	 * files compiled during the last compilation.
+	 */
+	public long getFirstPassPeakHeap() {
+		return this.firstPassPeakHeap.get();
+	}
+
+	/**
+	 * Peak heap usage, in bytes, observed at the end of the second pass and
+	 * code translation of the files compiled during the last compilation.
+	 */
+	public long getSecondPassPeakHeap() {
+		return this.secondPassPeakHeap.get();
+	}
+
+	/**
+	 * Checks, without parsing, if a file may use the user library. Files that
+	 * do not mention any of the user library packages cannot import nor
+	 * reference its classes, so they need no translation at all. Comments and
+	 * strings are not excluded, which may only lead to compiling a file that
+	 * could have been skipped.
+	 */
+	private boolean usesUserLibrary(String file) throws IOException {
+		String contents = this.sources != null ? this.sources.get(file)
+				.toString() : new String(FileUtils.readFileToByteArray(new File(
+				file)), "ISO-8859-1");
+		for (String packageName : PackageDefinition.getPackages()) {
+			if (contents.contains(packageName))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Number of input files skipped during the last compilation because they
+	 * do not use the user library.
+	 */
+	public int getSkippedFileCount() {
+		return this.skippedFiles;
+	}
+
+	/**
+	 * Number of input files that were not compiled during the last
+	 * compilation because they did not change since the previous build.
+	 */
+	public int getUpToDateFileCount() {
+		return this.upToDateFiles;
+	}
+
+	/**
+	 * Checks which files have not changed since the previous build. Also
+	 * creates the manifest entry of each file with its current content hash.
+	 * 
+	 * @return Array indicating, by file, if it can be skipped.
+	 */
+	private boolean[] findUpToDateFiles(String[] files,
+			String destinationFolder, BuildManifest previousManifest,
+			BuildManifest.Entry[] entries) throws IOException {
+		boolean[] upToDate = new boolean[files.length];
+		if (!this.incremental)
+			return upToDate;
+		List<BuildManifest.Entry> previousEntries = previousManifest
+				.getEntries();
+		// Every file must be compiled again if the target runtimes changed.
+		boolean targetsChanged = !this.targets.toString().equals(
+				previousManifest.getTargets());
+		boolean changed = previousEntries.size() != files.length;
+		int lastClassFile = -1;
 		for (int i = 0; i < files.length; i++) {
-			String file = files[i];
-			SimpleLogger.info("2nd pass file - " + file);
-			TokenStreamRewriter tokenStreamRewriter = tokenStreams[i];
-			// Walk on the parse tree again
+			String file = new File(files[i]).getCanonicalPath();
+			if (!changed && !previousEntries.get(i).file.equals(file))
+				changed = true;
+			entries[i] = new BuildManifest.Entry(file,
+					BuildManifest.hash(files[i]));
+			upToDate[i] = !targetsChanged
+					&& previousManifest.isUpToDate(file, entries[i].hash,
+							destinationFolder);
+			if (upToDate[i]) {
+				if (previousManifest.get(file).hasCompiledClass())
+					lastClassFile = i;
+			} else {
+				changed = true;
+			}
+		}
+		// userKernels.hpp is written by the translation of every class, each
+		// one overwriting the previous, so it holds the kernels of the last
+		// class compiled. Its contents are not stored in the manifest, so when
+		// anything changes the last class is compiled again to write the file
+		// once more. Android.mk is rebuilt from the class names in the manifest
+		// and needs no recompilation.
+		if (changed && lastClassFile != -1)
+			upToDate[lastClassFile] = false;
+		int count = 0;
+		for (boolean skip : upToDate)
+			count += skip ? 1 : 0;
+		this.upToDateFiles = count;
+		SimpleLogger.info("Incremental build - " + count + " of "
+				+ files.length + " files are up to date.");
+		return upToDate;
+	}
+
+	/**
+	 * Fills the manifest entry of a file that was just compiled.
+	 */
+	private void recordEntry(BuildManifest.Entry entry,
+			CompilerSecondPassListener listener,
+			Pair<String, String> compiledClass,
+			CompilerCodeTranslator codeTranslator) {
+		if (entry == null)
+			return;
+		if (compiledClass != null) {
+			entry.packageName = compiledClass.left;
+			entry.className = compiledClass.right;
+			entry.artifacts.addAll(codeTranslator.getGeneratedFiles(
+					compiledClass.left, compiledClass.right));
+		}
+	}
+
+	/**
+	 * Removes files generated by a previous build for classes that are no
+	 * longer compiled or for runtimes that are no longer targeted.
+	 */
+	private void removeStaleArtifacts(BuildManifest previousManifest,
+			BuildManifest manifest, String destinationFolder) {
+		Set<String> artifacts = this.getArtifacts(manifest);
+		artifacts.addAll(manifest.getSharedArtifacts());
+		Set<String> previousArtifacts = this.getArtifacts(previousManifest);
+		previousArtifacts.addAll(previousManifest.getSharedArtifacts());
+		for (String artifact : previousArtifacts) {
+			if (!artifacts.contains(artifact)) {
+				SimpleLogger.info("Removing stale file - " + artifact);
+				new File(destinationFolder, artifact).delete();
+			}
+		}
+	}
+
+	/**
+	 * Records as shared artifacts the files written during the last
+	 * compilation that do not belong to a single input file. Shared artifacts
+	 * of the previous build are kept unless the target runtimes changed,
+	 * since a build that compiles only some of the files does not write all
+	 * of them again.
+	 */
+	private void recordSharedArtifacts(BuildManifest previousManifest,
+			BuildManifest manifest, String destinationFolder) {
+		if (this.targets.toString().equals(previousManifest.getTargets()))
+			manifest.getSharedArtifacts().addAll(
+					previousManifest.getSharedArtifacts());
+		Set<String> artifacts = this.getArtifacts(manifest);
+		File folder = new File(destinationFolder).getAbsoluteFile();
+		for (String file : FileWriter.getOutputFiles()) {
+			String artifact = "./"
+					+ folder.toURI().relativize(new File(file).toURI())
+							.getPath();
+			if (!artifacts.contains(artifact)
+					&& !artifact.equals("./" + BuildManifest.fileName))
+				manifest.getSharedArtifacts().add(artifact);
+		}
+	}
+
+	/**
+	 * Artifacts of all entries of a manifest.
+	 */
+	private Set<String> getArtifacts(BuildManifest manifest) {
+		Set<String> artifacts = new HashSet<>();
+		for (BuildManifest.Entry entry : manifest.getEntries())
+			artifacts.addAll(entry.artifacts);
+		return artifacts;
+	}
+
+	/**
+	 * Submits a task to the pool informed or, if there is no pool, runs it
+	 * right away in the current thread.
+	 */
+	private <T> Future<T> submit(ForkJoinPool pool, Callable<T> task) {
+		if (pool != null)
+			return pool.submit(task);
+		FutureTask<T> futureTask = new FutureTask<>(task);
+		futureTask.run();
+		return futureTask;
+	}
+
+	/**
+	 * Waits for a given task and rethrows its failure as it would have been
+	 * thrown by the sequential path.
+	 */
+	private <T> T join(Future<T> task) throws IOException,
+			CompilationException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.diagnostics.add(new Diagnostic(Diagnostic.Kind.Error, null,
+					-1, "Compilation interrupted."));
+			throw new CompilationException("Compilation interrupted.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			else if (cause instanceof CompilationException)
+				throw (CompilationException) cause;
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Lexes and parses a file, building its symbol table.
+	 */
+	private ParsedFile firstPass(String file) throws IOException {
+		SimpleLogger.info("1st pass file - " + file);
+		Profiler.setFile(file);
+		try {
+			CommonTokenStream tokenStream;
+			Profiler.enter("lex");
+			try {
+				tokenStream = new CommonTokenStream(new JavaLexer(
+						this.openSource(file)));
+				// Lexes the whole file now, so parsing is measured apart.
+				tokenStream.fill();
+			} finally {
+				Profiler.exit();
+			}
+			ParseTree tree;
+			Profiler.enter("parse");
+			try {
+				tree = this.parse(file, tokenStream);
+			} finally {
+				Profiler.exit();
+			}
+			// Object that will be used to rewrite this file, if necessary
+			TokenStreamRewriter tokenStreamRewriter = new TokenStreamRewriter(
+					tokenStream);
+			// Root of this file's symbol table
+			RootSymbol symbolTable = new RootSymbol();
+			CompilerFirstPassListener listener = new CompilerFirstPassListener(
+					symbolTable);
+			// Walk on the parse tree
+			Profiler.enter("firstPass");
+			try {
+				new ParseTreeWalker().walk(listener, tree);
+			} finally {
+				Profiler.exit();
+			}
+			// Stores objects by file for next compiler pass
+			return new ParsedFile(file, tree, symbolTable, tokenStreamRewriter);
+		} finally {
+			Profiler.setFile(null);
+		}
+	}
+
+	/**
+	 * Reads a source file from memory, in in-memory compilations, or from
+	 * disk.
+	 */
+	private ANTLRInputStream openSource(String file) throws IOException {
+		if (this.sources != null)
+			return new ANTLRInputStream(this.sources.get(file).toString());
+		FileInputStream is = new FileInputStream(file);
+		try {
+			return new ANTLRInputStream(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Parses a compilation unit in two stages. The faster SLL prediction mode
+	 * is tried first, bailing out on the first syntax error, since it is
+	 * enough for virtually all Java code. Only if it fails the token stream is
+	 * rewound and parsed again with full LL prediction and the default error
+	 * reporting, which is the only one that can tell real syntax errors from
+	 * SLL weaknesses. Syntax errors are kept apart for the file informed, so
+	 * files parsed concurrently report them in the same order as a sequential
+	 * compilation.
+	 */
+	private ParseTree parse(final String file, CommonTokenStream tokenStream) {
+		JavaParser parser = new JavaParser(tokenStream);
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			ParseTree tree = parser.compilationUnit();
+			this.sllParses.incrementAndGet();
+			return tree;
+		} catch (ParseCancellationException e) {
+			this.llFallbacks.incrementAndGet();
+			tokenStream.seek(0);
+			parser.reset();
+			final SyntaxErrors errors = new SyntaxErrors();
+			this.syntaxErrors.put(file, errors);
+			parser.addErrorListener(new BaseErrorListener() {
+				@Override
+				public void syntaxError(Recognizer<?, ?> recognizer,
+						Object offendingSymbol, int line,
+						int charPositionInLine, String msg,
+						RecognitionException e) {
+					errors.diagnostics.add(new Diagnostic(
+							Diagnostic.Kind.Error, file, line, msg));
+					// Same message printed by ConsoleErrorListener
+					errors.messages.add("line " + line + ":"
+							+ charPositionInLine + " " + msg);
+				}
+			});
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return parser.compilationUnit();
+		}
+	}
+
+	/**
+	 * Records the syntax errors of a file as diagnostics and prints them to
+	 * the console if errors are logged. It must be called in the input file
+	 * order, right after the first pass of the file is joined.
+	 */
+	private void reportSyntaxErrors(String file) {
+		SyntaxErrors errors = this.syntaxErrors.remove(file);
+		if (errors == null)
+			return;
+		this.diagnostics.addAll(errors.diagnostics);
+		if (SimpleLogger.logError) {
+			for (String message : errors.messages)
+				System.err.println(message);
+		}
+	}
+
+	/**
+	 * Number of files parsed by the SLL stage alone during the last
+	 * compilation.
+	 */
+	public int getSLLParseCount() {
+		return this.sllParses.get();
+	}
+
+	/**
+	 * Number of files that had to be parsed again with full LL prediction
+	 * during the last compilation.
+	 */
+	public int getLLFallbackCount() {
+		return this.llFallbacks.get();
+	}
+
+	/**
+	 * Walks on a file parse tree again, collecting user library data. Code
+	 * that cannot refer to user library variables is skipped.
+	 */
+	private CompilerSecondPassListener secondPass(ParsedFile parsedFile) {
+		SimpleLogger.info("2nd pass file - " + parsedFile.file);
+		Profiler.setFile(parsedFile.file);
+		Profiler.enter("secondPass");
+		try {
 			CompilerSecondPassListener listener = new CompilerSecondPassListener(
-					tokenStreamRewriter.getTokenStream());
-			walker.walk(listener, parseTrees[i]);
-			codeTranslator.run(symbolTables[i], listener, tokenStreamRewriter);
+					parsedFile.tokenStreamRewriter.getTokenStream(),
+					parsedFile.symbolTable);
+			new UserLibraryTreeWalker(
+					parsedFile.tokenStreamRewriter.getTokenStream(),
+					parsedFile.symbolTable).walk(listener, parsedFile.tree);
+			return listener;
+		} finally {
+			Profiler.exit();
+			Profiler.setFile(null);
 		}
-		codeTranslator.createAndroidMKFile();
 	}
 }
@@ -10,6 +10,10 @@ package org.parallelme.compiler;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
 
 /**
  * Class responsible for input argument verification.
@@ -20,12 +24,19 @@ public class CompilerArgsVerification {
 	public class CompilerParameters {
 		public String[] files;
 		public String destinationFolder;
+		public int threads = 1;
+		public boolean incremental = false;
+		public boolean streaming = false;
+		public String profileReport = null;
+		public String dataflowFormat = null;
+		public Set<TargetRuntime> targets = EnumSet
+				.allOf(TargetRuntime.class);
 	}
 
 	public CompilerParameters checkArgs(String[] args) throws Exception {
 		CompilerParameters parameters = new CompilerParameters();
-		boolean filesFound, destinationFolderFound;
-		filesFound = destinationFolderFound = false;
+		boolean filesFound, destinationFolderFound, threadsFound, targetsFound;
+		filesFound = destinationFolderFound = threadsFound = targetsFound = false;
 
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].equals("-f")) {
@@ -55,6 +66,51 @@ public class CompilerArgsVerification {
 					destinationFolderFound = true;
 				}
 			}
+			if (args[i].equals("-i")) {
+				parameters.incremental = true;
+			}
+			if (args[i].equals("--profile")) {
+				if (parameters.profileReport != null)
+					throw new Exception("Duplicated argument: --profile");
+				if (i < args.length - 1) {
+					String reportParam = args[++i];
+					if (reportParam.startsWith("-"))
+						throw new Exception("Invalid file: " + reportParam);
+					parameters.profileReport = reportParam.replace('\"', ' ')
+							.trim();
+				}
+			}
+			if (args[i].equals("--dataflow")) {
+				if (parameters.dataflowFormat != null)
+					throw new Exception("Duplicated argument: --dataflow");
+				if (i < args.length - 1) {
+					String format = args[++i].trim();
+					if (!format.equals("dot") && !format.equals("json"))
+						throw new Exception(
+								"ERROR => Invalid dataflow graph format: "
+										+ format);
+					parameters.dataflowFormat = format;
+				}
+			}
+			if (args[i].equals("--targets")) {
+				if (targetsFound)
+					throw new Exception("Duplicated argument: --targets");
+				if (i < args.length - 1) {
+					parameters.targets = checkTargetsArg(args[++i]);
+					targetsFound = true;
+				}
+			}
+			if (args[i].equals("-s")) {
+				parameters.streaming = true;
+			}
+			if (args[i].equals("-j")) {
+				if (threadsFound)
+					throw new Exception("Duplicated argument: -j");
+				if (i < args.length - 1) {
+					parameters.threads = checkThreadsArg(args[++i]);
+					threadsFound = true;
+				}
+			}
 		}
 		if (filesFound && destinationFolderFound)
 			return parameters;
@@ -110,6 +166,46 @@ public class CompilerArgsVerification {
 		return files.toArray(ret);
 	}
 
+	/**
+	 * Checks if an informed number of compilation threads is valid.
+	 * 
+	 * @param arg
+	 *            Argument that corresponds to the number of threads.
+	 * @return Number of threads.
+	 * @throws Exception
+	 */
+	private int checkThreadsArg(String arg) throws Exception {
+		int threads;
+		try {
+			threads = Integer.parseInt(arg.trim());
+		} catch (NumberFormatException e) {
+			throw new Exception("ERROR => Invalid number of threads: " + arg);
+		}
+		if (threads < 1)
+			throw new Exception("ERROR => Invalid number of threads: " + arg);
+		return threads;
+	}
+
+	/**
+	 * Checks which target runtimes were informed.
+	 * 
+	 * @param arg
+	 *            Argument that corresponds to target runtimes: rs, pm or both.
+	 * @return Set of target runtimes.
+	 * @throws Exception
+	 */
+	private Set<TargetRuntime> checkTargetsArg(String arg) throws Exception {
+		String targets = arg.trim();
+		if (targets.equals("rs"))
+			return EnumSet.of(TargetRuntime.RenderScript);
+		else if (targets.equals("pm"))
+			return EnumSet.of(TargetRuntime.ParallelME);
+		else if (targets.equals("both"))
+			return EnumSet.allOf(TargetRuntime.class);
+		else
+			throw new Exception("ERROR => Invalid target runtimes: " + arg);
+	}
+
 	/**
 	 * Checks if an informed output directory is valid.
 	 * 
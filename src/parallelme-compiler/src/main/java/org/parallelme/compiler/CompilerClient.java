@@ -0,0 +1,63 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Thin client that sends command line arguments to a running
+ * CompilerDaemon.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilerClient {
+	/**
+	 * Sends a compile request to the daemon listening on the port informed.
+	 * 
+	 * @param port
+	 *            Daemon port on the loopback interface.
+	 * @param args
+	 *            Compiler arguments, exactly as they are accepted by the
+	 *            command line.
+	 * @param out
+	 *            Stream where the compiler output is printed.
+	 * @return Compiler exit status.
+	 * @throws IOException
+	 *             Exception thrown in case the daemon cannot be reached.
+	 */
+	public static int send(int port, String[] args, PrintStream out)
+			throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			DataOutputStream request = new DataOutputStream(
+					socket.getOutputStream());
+			request.writeUTF(new File("").getAbsolutePath());
+			request.writeInt(args.length);
+			for (String arg : args)
+				request.writeUTF(arg);
+			request.flush();
+			DataInputStream response = new DataInputStream(
+					socket.getInputStream());
+			int status = response.readInt();
+			byte[] output = new byte[response.readInt()];
+			response.readFully(output);
+			out.write(output);
+			out.flush();
+			return status;
+		} finally {
+			socket.close();
+		}
+	}
+}
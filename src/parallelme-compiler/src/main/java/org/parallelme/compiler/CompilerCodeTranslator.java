@@ -11,13 +11,18 @@ package org.parallelme.compiler;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.TokenStreamRewriter;
 import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
+import org.parallelme.compiler.antlr.JavaLexer;
 import org.parallelme.compiler.exception.CompilationException;
 import org.parallelme.compiler.intermediate.*;
 import org.parallelme.compiler.intermediate.Operation.ExecutionType;
@@ -35,7 +40,10 @@ import org.parallelme.compiler.userlibrary.classes.BitmapImage;
 import org.parallelme.compiler.userlibrary.classes.HDRImage;
 import org.parallelme.compiler.util.FileWriter;
 import org.parallelme.compiler.util.Pair;
+import org.parallelme.compiler.util.Profiler;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Translates the user code written with the user library to a runtime
@@ -44,38 +52,17 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public class CompilerCodeTranslator {
+	private static final STGroup templates = Templates
+			.load(CompilerCodeTranslator.class);
 	private final String outputDestinationFolder;
-	private final RuntimeDefinition rsRuntime;
-	private final RuntimeDefinition pmRuntime;
+	// Runtimes for which code is generated, in the order they are translated.
+	private final List<RuntimeDefinition> runtimes;
 	private final List<Pair<String, String>> compiledClasses;
-	private final static String templateJavaInterface = "<introductoryMsg>\n\n"
-			+ "package <packageName>;\n\n"
-			+ "<imports:{var|import <var.statement>;\n}>\n"
-			+ "public interface <interfaceName> {\n"
-			+ "\tboolean isValid();\n\n"
-			+ "\t<methods:{var|<var.signature>;}; separator=\"\\n\\n\">"
-			+ "\n}\n";
-	private final static String templateJavaClass = "<introductoryMsg>\n\n"
-			+ "package <packageName>;\n\n"
-			+ "<imports:{var|import <var.statement>;\n}>\n"
-			+ "public class <className> implements <interfaceName> {\n"
-			+ "\t<classDeclarations:{var|<var.line>\n}>\n"
-			+ "\tpublic boolean isValid() {\n\t\t<isValidBody>\n\t\\}\n\n"
-			+ "\t<methods:{var|<var.signature> {\n\t<var.body>\n\\}}; separator=\"\\n\\n\">"
-			+ "\n\\}\n";
-	private final static String templateInitialization = "\n\n\tprivate <interfaceName> <objectName>;\n\n"
-			+ "\tpublic <className>(RenderScript PM_mRS) {\n"
-			+ "\t\tthis.<objectName> = new <openCLClassName>();\n"
-			+ "\t\tif (!this.<objectName>.isValid())\n"
-			+ "\t\t\tthis.<objectName> = new <renderScriptClassName>(PM_mRS);\n"
-			+ "\t}\n";
-	private final static String templateSequentialOperation = "<declParams:{var|<var.type>[] <var.arrName> = new <var.type>[1];\n"
-			+ "<var.arrName>[0] = <var.varName>;\n}>"
-			+ "<destinationVariable:{var|<var.type> <var.name> = }><paralleMEObject>.<operationName>("
-			+ "<params:{var|<var.name>}; separator=\", \">);"
-			+ "\n<recoverParams:{var|<var.varName> = <var.arrName>[0];}>";
-	private final static String templateParallelOperation = "<destinationVariable:{var|<var.type> <var.name> = }>"
-			+ "<objectName>.<operationName>(<params>);";
+	private final List<Diagnostic> diagnostics;
+	// File whose code is being translated.
+	private String file;
+	// Format of the dataflow graph dumps ("dot" or "json"), or null.
+	private String dataflowFormat = null;
 
 	/**
 	 * Base constructor.
@@ -84,59 +71,195 @@ public class CompilerCodeTranslator {
 	 *            Output destination folder for compiled files.
 	 * @param tokenStreamRewriter
 	 *            Token stream that will be used to rewrite user code.
+	 * @param targets
+	 *            Runtimes for which code must be generated. When a single
+	 *            runtime is informed, the translated user code instantiates
+	 *            it directly, with no fallback to the other one.
+	 * @param diagnostics
+	 *            List where warnings found during translation are added.
 	 */
 	public CompilerCodeTranslator(String outputDestinationFolder,
-			CTranslator cTranslator) {
+			CTranslator cTranslator, Set<TargetRuntime> targets,
+			List<Diagnostic> diagnostics) {
 		this.outputDestinationFolder = outputDestinationFolder;
-		this.rsRuntime = new RenderScriptRuntimeDefinition(cTranslator,
-				outputDestinationFolder);
-		this.pmRuntime = new ParallelMERuntimeDefinition(cTranslator,
-				outputDestinationFolder);
+		this.runtimes = new ArrayList<>();
+		if (targets.contains(TargetRuntime.RenderScript))
+			this.runtimes.add(new RenderScriptRuntimeDefinition(cTranslator,
+					outputDestinationFolder));
+		if (targets.contains(TargetRuntime.ParallelME))
+			this.runtimes.add(new ParallelMERuntimeDefinition(cTranslator,
+					outputDestinationFolder));
 		this.compiledClasses = new ArrayList<>();
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * Enables dumps of the dataflow graph of each class compiled.
+	 * 
+	 * @param dataflowFormat
+	 *            "dot" for Graphviz DOT or "json" for JSON dumps. Null
+	 *            disables dumps.
+	 */
+	public void setDataflowFormat(String dataflowFormat) {
+		this.dataflowFormat = dataflowFormat;
 	}
 
 	/**
 	 * Translates the user code written with the user library to a runtime
 	 * compatible code.
 	 * 
+	 * @param file
+	 *            Source file of the class, used in diagnostics.
 	 * @param symbolTable
 	 *            Symbol table for current class.
 	 * @param listener
 	 *            Compiler second pass listener that was used to walk on this
 	 *            class' parse tree.
+	 * @return Package and name of the class compiled, or null if the symbol
+	 *         table contains no class.
 	 */
-	public void run(Symbol symbolTable, CompilerSecondPassListener listener,
+	public Pair<String, String> run(String file, Symbol symbolTable,
+			CompilerSecondPassListener listener,
 			TokenStreamRewriter tokenStreamRewriter)
 			throws CompilationException {
-		ArrayList<Symbol> classSymbols = symbolTable
+		this.file = file;
+		List<Symbol> classSymbols = symbolTable
 				.getSymbols(ClassSymbol.class);
+		Pair<String, String> compiledClass = null;
 		// Gets the class symbol table
 		if (!classSymbols.isEmpty()) {
 			// 1. Get operations and set proper types (parallel or sequential)
-			// depending on its code structure.
+			// depending on its code structure, fusing adjacent foreach
+			// operations.
 			String packageName = listener.getPackageName();
 			ClassSymbol classSymbol = (ClassSymbol) symbolTable.getSymbols(
 					ClassSymbol.class).get(0);
 			OperationsAndBinds operationsAndBinds = this.getOperationsAndBinds(
-					listener.getOperationsAndBinds(), classSymbol);
+					listener.getOperationsAndBinds(), classSymbol,
+					tokenStreamRewriter.getTokenStream());
+			if (this.dataflowFormat != null)
+				this.writeDataflowGraph(packageName, classSymbol.name,
+						operationsAndBinds.dataflowGraph);
 			List<MethodCall> methodCalls = listener.getMethodCalls();
-			this.compiledClasses.add(new Pair<String, String>(packageName,
-					classSymbol.name));
+			compiledClass = new Pair<String, String>(packageName,
+					classSymbol.name);
+			this.compiledClasses.add(compiledClass);
 			// 2. Creates the java interface that will be used to implement each
 			// runtime code.
-			this.createJavaWrapperInterface(packageName, classSymbol.name,
-					operationsAndBinds, methodCalls);
-			// 3. Translate code to RenderScript
-			this.runtimeSpecificTranslation(packageName, classSymbol.name,
-					operationsAndBinds, methodCalls, this.rsRuntime);
-			// 4. Translate code to ParallelME runtime
-			this.runtimeSpecificTranslation(packageName, classSymbol.name,
-					operationsAndBinds, methodCalls, this.pmRuntime);
-			// 5. Translate the user code, calling the runtime wrapper
-			this.translateUserCode(packageName, classSymbol.name, classSymbol,
-					operationsAndBinds, methodCalls,
-					listener.getImportTokens(), tokenStreamRewriter);
+			Profiler.enter("translation.wrapperInterface");
+			try {
+				this.createJavaWrapperInterface(packageName, classSymbol.name,
+						operationsAndBinds, methodCalls);
+			} finally {
+				Profiler.exit();
+			}
+			// 3. Translate code to RenderScript and/or ParallelME runtime
+			for (RuntimeDefinition runtime : this.runtimes)
+				this.runtimeSpecificTranslation(packageName, classSymbol.name,
+						operationsAndBinds, methodCalls, runtime);
+			// 4. Translate the user code, calling the runtime wrapper
+			Profiler.enter("translation.userCode");
+			try {
+				this.translateUserCode(packageName, classSymbol.name,
+						classSymbol, operationsAndBinds, methodCalls,
+						listener.getImportTokens(), tokenStreamRewriter);
+			} finally {
+				Profiler.exit();
+			}
+		}
+		return compiledClass;
+	}
+
+	/**
+	 * Registers a class that was compiled by a previous build and whose
+	 * generated files are still up to date, so it is kept in the files that
+	 * aggregate all compiled classes.
+	 * 
+	 * @param packageName
+	 *            Package of the class.
+	 * @param className
+	 *            Name of the class.
+	 */
+	public void addCompiledClass(String packageName, String className) {
+		this.compiledClasses.add(new Pair<String, String>(packageName,
+				className));
+	}
+
+	/**
+	 * Lists the files generated exclusively for a given class, relative to the
+	 * output destination folder.
+	 * 
+	 * @param packageName
+	 *            Package of the class.
+	 * @param className
+	 *            Name of the class.
+	 * @return List of relative file paths.
+	 */
+	public List<String> getGeneratedFiles(String packageName, String className) {
+		RuntimeCommonDefinitions definitions = RuntimeCommonDefinitions
+				.getInstance();
+		String javaFolder = definitions.getJavaDestinationFolder(".",
+				packageName);
+		String pmClassName = definitions.getCClassName(packageName,
+				definitions.getJavaWrapperClassName(className,
+						TargetRuntime.ParallelME));
+		List<String> files = new ArrayList<>();
+		files.add(javaFolder + className + ".java");
+		files.add(javaFolder + definitions.getJavaWrapperInterfaceName(className)
+				+ ".java");
+		if (this.dataflowFormat != null)
+			files.add(definitions.getDataflowDestinationFolder(".",
+					packageName) + className + "." + this.dataflowFormat);
+		if (this.isTarget(TargetRuntime.RenderScript)) {
+			files.add(javaFolder
+					+ definitions.getJavaWrapperClassName(className,
+							TargetRuntime.RenderScript) + ".java");
+			files.add(definitions.getRSDestinationFolder(".", packageName)
+					+ className + ".rs");
 		}
+		if (this.isTarget(TargetRuntime.ParallelME)) {
+			files.add(javaFolder
+					+ definitions.getJavaWrapperClassName(className,
+							TargetRuntime.ParallelME) + ".java");
+			files.add(definitions.getJNIDestinationFolder(".") + pmClassName
+					+ ".cpp");
+			files.add(definitions.getJNIDestinationFolder(".") + pmClassName
+					+ ".h");
+		}
+		return files;
+	}
+
+	/**
+	 * Writes the dataflow graph of a class in the format chosen.
+	 */
+	private void writeDataflowGraph(String packageName, String className,
+			DataflowGraph dataflowGraph) {
+		String contents = this.dataflowFormat.equals("dot") ? dataflowGraph
+				.toDot(className) : dataflowGraph.toJson();
+		FileWriter.writeFile(className + "." + this.dataflowFormat,
+				RuntimeCommonDefinitions.getInstance()
+						.getDataflowDestinationFolder(
+								this.outputDestinationFolder, packageName),
+				contents);
+	}
+
+	/**
+	 * Checks if code is generated for a given runtime.
+	 */
+	private boolean isTarget(TargetRuntime targetRuntime) {
+		return this.getRuntime(targetRuntime) != null;
+	}
+
+	/**
+	 * Returns the definition of a given runtime, or null if no code is
+	 * generated for it.
+	 */
+	private RuntimeDefinition getRuntime(TargetRuntime targetRuntime) {
+		for (RuntimeDefinition runtime : this.runtimes) {
+			if (runtime.getTargetRuntime() == targetRuntime)
+				return runtime;
+		}
+		return null;
 	}
 
 	/**
@@ -158,15 +281,33 @@ public class CompilerCodeTranslator {
 			String className, OperationsAndBinds operationsAndBinds,
 			List<MethodCall> methodCalls, RuntimeDefinition targetRuntime)
 			throws CompilationException {
-		// 1. Creates Java wrapper implementation for interface created
-		this.createJavaWrapperImplementation(packageName, className,
-				operationsAndBinds, methodCalls, targetRuntime);
-		// 2. Translate user code to C code compatible with the target runtime
-		targetRuntime.translateOperationsAndBinds(packageName, className,
-				operationsAndBinds);
-		// 3. Export internal library files for each target runtime
+		Profiler.enter("translation." + targetRuntime.getTargetRuntime());
 		try {
-			targetRuntime.exportInternalLibrary("", outputDestinationFolder);
+			// 1. Creates Java wrapper implementation for interface created
+			this.createJavaWrapperImplementation(packageName, className,
+					operationsAndBinds, methodCalls, targetRuntime);
+			// 2. Translate user code to C code compatible with the target
+			// runtime
+			targetRuntime.translateOperationsAndBinds(packageName, className,
+					operationsAndBinds);
+		} finally {
+			Profiler.exit();
+		}
+	}
+
+	/**
+	 * Exports internal library files for each target runtime. Must be called
+	 * once, after all classes were compiled, since these files are the same
+	 * for every class.
+	 * 
+	 * @throws CompilationException
+	 */
+	public void exportInternalLibraries() throws CompilationException {
+		if (this.compiledClasses.isEmpty())
+			return;
+		try {
+			for (RuntimeDefinition runtime : this.runtimes)
+				runtime.exportInternalLibrary("", this.outputDestinationFolder);
 		} catch (IOException e) {
 			throw new CompilationException(
 					"Error exporting internal library files: " + e.getMessage());
@@ -194,7 +335,7 @@ public class CompilerCodeTranslator {
 			List<MethodCall> methodCalls) throws CompilationException {
 		String interfaceName = RuntimeCommonDefinitions.getInstance()
 				.getJavaWrapperInterfaceName(className);
-		ST st = new ST(templateJavaInterface);
+		ST st = templates.getInstanceOf("javaInterface");
 		st.add("introductoryMsg", RuntimeCommonDefinitions.getInstance()
 				.getHeaderComment());
 		st.add("packageName", packageName);
@@ -215,15 +356,15 @@ public class CompilerCodeTranslator {
 			st.addAggr("methods.{signature}", RuntimeCommonDefinitions
 					.getInstance().createJavaMethodSignature(methodCall, true));
 		}
-		Set<String> imports = this.getImports(operationAndBinds,
-				this.rsRuntime, true);
-		imports.addAll(this.getImports(operationAndBinds, this.pmRuntime, true));
+		Set<String> imports = new TreeSet<>();
+		for (RuntimeDefinition runtime : this.runtimes)
+			imports.addAll(this.getImports(operationAndBinds, runtime, true));
 		this.addImportStatements(imports, st);
 		FileWriter.writeFile(
 				interfaceName + ".java",
 				RuntimeCommonDefinitions.getInstance()
 						.getJavaDestinationFolder(this.outputDestinationFolder,
-								packageName), st.render());
+								packageName), st);
 	}
 
 	/**
@@ -327,7 +468,7 @@ public class CompilerCodeTranslator {
 		String javaClassName = RuntimeCommonDefinitions.getInstance()
 				.getJavaWrapperClassName(className,
 						targetRuntime.getTargetRuntime());
-		ST st = new ST(templateJavaClass);
+		ST st = templates.getInstanceOf("javaClass");
 		st.add("introductoryMsg", RuntimeCommonDefinitions.getInstance()
 				.getHeaderComment());
 		st.add("packageName", packageName);
@@ -379,7 +520,7 @@ public class CompilerCodeTranslator {
 				javaClassName + ".java",
 				RuntimeCommonDefinitions.getInstance()
 						.getJavaDestinationFolder(this.outputDestinationFolder,
-								packageName), st.render());
+								packageName), st);
 	}
 
 	private void translateClassDeclarations(ST st, String className,
@@ -464,8 +605,11 @@ public class CompilerCodeTranslator {
 	private void insertRenderScriptImports(ClassSymbol classSymbol,
 			TokenStreamRewriter tokenStreamRewriter)
 			throws CompilationException {
-		ST st = new ST("<imports:{var|import <var.statement>;\n}>\n");
-		this.addImportStatements(this.rsRuntime.getImports(), st);
+		RuntimeDefinition rsRuntime = this.getRuntime(TargetRuntime.RenderScript);
+		if (rsRuntime == null)
+			return;
+		ST st = templates.getInstanceOf("imports");
+		this.addImportStatements(rsRuntime.getImports(), st);
 		tokenStreamRewriter.insertBefore(classSymbol.tokenAddress.start,
 				st.render());
 	}
@@ -486,15 +630,19 @@ public class CompilerCodeTranslator {
 			TokenStreamRewriter tokenStreamRewriter, String className) {
 		String interfaceName = RuntimeCommonDefinitions.getInstance()
 				.getJavaWrapperInterfaceName(className);
-		ST st = new ST(templateInitialization);
+		ST st = templates.getInstanceOf("initialization");
 		st.add("interfaceName", interfaceName);
 		st.add("objectName", RuntimeCommonDefinitions.getInstance()
 				.getParallelMEObjectName());
 		st.add("className", className);
-		st.add("openCLClassName", RuntimeCommonDefinitions.getInstance()
-				.getJavaWrapperClassName(className, TargetRuntime.ParallelME));
-		st.add("renderScriptClassName", RuntimeCommonDefinitions.getInstance()
-				.getJavaWrapperClassName(className, TargetRuntime.RenderScript));
+		if (this.isTarget(TargetRuntime.ParallelME))
+			st.add("openCLClassName", RuntimeCommonDefinitions.getInstance()
+					.getJavaWrapperClassName(className,
+							TargetRuntime.ParallelME));
+		if (this.isTarget(TargetRuntime.RenderScript))
+			st.add("renderScriptClassName", RuntimeCommonDefinitions
+					.getInstance().getJavaWrapperClassName(className,
+							TargetRuntime.RenderScript));
 		tokenStreamRewriter.insertAfter(classSymbol.bodyAddress.start,
 				st.render());
 	}
@@ -556,7 +704,7 @@ public class CompilerCodeTranslator {
 			ST st;
 			// Sequential operations must create arrays to store variables
 			if (operation.getExecutionType() == ExecutionType.Sequential) {
-				st = new ST(templateSequentialOperation);
+				st = templates.getInstanceOf("sequentialOperation");
 				st.add("paralleMEObject", objectName);
 				for (Variable variable : operation.getExternalVariables()) {
 					if (!variable.isFinal()) {
@@ -575,7 +723,7 @@ public class CompilerCodeTranslator {
 					}
 				}
 			} else {
-				st = new ST(templateParallelOperation);
+				st = templates.getInstanceOf("parallelOperation");
 				st.add("objectName", objectName);
 				st.add("params",
 						RuntimeCommonDefinitions.getInstance()
@@ -594,6 +742,23 @@ public class CompilerCodeTranslator {
 			}
 			tokenStreamRewriter.replace(operation.statementAddress.start,
 					operation.statementAddress.stop, st.render());
+			// Fused operations are performed by the call above, so their
+			// statements are removed along with the preceding whitespace
+			for (Operation fusedOperation : operation.getFusedOperations())
+				tokenStreamRewriter.delete(
+						operation.statementAddress.stop.getTokenIndex() + 1,
+						fusedOperation.statementAddress.stop.getTokenIndex());
+			// Producers are performed by the reduce kernels, so their
+			// adjacent statements are removed along with the following
+			// whitespace
+			Operation producer = operation.getProducerOperation();
+			if (producer != null) {
+				while (producer.getProducerOperation() != null)
+					producer = producer.getProducerOperation();
+				tokenStreamRewriter.delete(
+						producer.statementAddress.start.getTokenIndex(),
+						operation.statementAddress.start.getTokenIndex() - 1);
+			}
 		}
 	}
 
@@ -618,8 +783,7 @@ public class CompilerCodeTranslator {
 								.getOutputBindName(outputBind),
 						outputBind.destinationObject.name);
 			} else {
-				ST st = new ST(
-						"<destType:{var|<var.value> }><destVar> = <kernel>.<methodName>();");
+				ST st = templates.getInstanceOf("outputBindCall");
 				if (outputBind.outputBindType == OutputBindType.Assignment) {
 					st.add("destType", null);
 				} else {
@@ -673,7 +837,7 @@ public class CompilerCodeTranslator {
 			Symbol classTable) {
 		ArrayList<Pair<UserLibraryVariableSymbol, CreatorSymbol>> variables = new ArrayList<>();
 		// Get all creators' symbols
-		ArrayList<Symbol> creators = classTable.getSymbols(CreatorSymbol.class);
+		List<Symbol> creators = classTable.getSymbols(CreatorSymbol.class);
 		// And filter those creators that correspond to user library instances.
 		for (Symbol symbol : creators) {
 			CreatorSymbol creator = (CreatorSymbol) symbol;
@@ -741,18 +905,54 @@ public class CompilerCodeTranslator {
 	 *            List of all operations and binds found.
 	 * @param symbolTable
 	 *            Symbol table.
+	 * @param tokenStream
+	 *            Token stream of the class, used to find adjacent operations.
 	 * 
 	 * @return Container with input binds, operations and output binds.
 	 */
 	private OperationsAndBinds getOperationsAndBinds(
-			Collection<UserLibraryData> operationsAndBinds, Symbol symbolTable) {
+			Collection<UserLibraryData> operationsAndBinds, Symbol symbolTable,
+			TokenStream tokenStream) {
 		ArrayList<Operation> operations = new ArrayList<>();
 		ArrayList<OutputBind> outputBinds = new ArrayList<>();
+		Operation previousOperation = null;
+		Operation kernelOperation = null;
 		for (UserLibraryData userLibraryData : operationsAndBinds) {
 			if (userLibraryData instanceof Operation) {
 				Operation operation = (Operation) userLibraryData;
 				this.setOperationType(operation);
-				operations.add(operation);
+				if (previousOperation != null
+						&& this.isFusible(previousOperation, operation,
+								tokenStream)) {
+					kernelOperation.fuse(operation);
+				} else if (previousOperation != null
+						&& previousOperation == kernelOperation
+						&& operation.operationType == OperationType.Reduce
+						&& this.isProducerFusible(previousOperation,
+								operation, symbolTable, tokenStream)) {
+					operations.remove(previousOperation);
+					// A filter right before the map is fused into it as well,
+					// so the reduce kernels skip the elements it rejects
+					if (previousOperation.operationType == OperationType.Map
+							&& !operations.isEmpty()) {
+						Operation filter = operations
+								.get(operations.size() - 1);
+						if (filter.operationType == OperationType.Filter
+								&& this.isProducerFusible(filter,
+										previousOperation, symbolTable,
+										tokenStream)) {
+							operations.remove(filter);
+							previousOperation.fuseProducer(filter);
+						}
+					}
+					operation.fuseProducer(previousOperation);
+					operations.add(operation);
+					kernelOperation = operation;
+				} else {
+					operations.add(operation);
+					kernelOperation = operation;
+				}
+				previousOperation = operation;
 			} else if (userLibraryData instanceof OutputBind) {
 				outputBinds.add((OutputBind) userLibraryData);
 			}
@@ -770,7 +970,202 @@ public class CompilerCodeTranslator {
 			inputBinds.add(new InputBind(variable, ++inputBindCount, arguments,
 					pair.left.statementAddress, pair.right.statementAddress));
 		}
-		return new OperationsAndBinds(inputBinds, operations, outputBinds);
+		DataflowGraph dataflowGraph = this.buildDataflowGraph(inputBinds,
+				operations, outputBinds, symbolTable);
+		return new OperationsAndBinds(inputBinds, operations, outputBinds,
+				dataflowGraph);
+	}
+
+	/**
+	 * Builds the dataflow graph of the binds and operations of a class,
+	 * adding them in statement order along with their enclosing methods.
+	 */
+	private DataflowGraph buildDataflowGraph(List<InputBind> inputBinds,
+			List<Operation> operations, List<OutputBind> outputBinds,
+			Symbol symbolTable) {
+		List<Pair<Integer, UserLibraryData>> statements = new ArrayList<>();
+		for (InputBind inputBind : inputBinds)
+			statements.add(new Pair<Integer, UserLibraryData>(
+					inputBind.creationStatementAddress.start.getTokenIndex(),
+					inputBind));
+		for (Operation operation : operations)
+			statements.add(new Pair<Integer, UserLibraryData>(
+					operation.statementAddress.start.getTokenIndex(),
+					operation));
+		for (OutputBind outputBind : outputBinds)
+			statements.add(new Pair<Integer, UserLibraryData>(
+					outputBind.statementAddress.start.getTokenIndex(),
+					outputBind));
+		Collections.sort(statements,
+				new Comparator<Pair<Integer, UserLibraryData>>() {
+					@Override
+					public int compare(Pair<Integer, UserLibraryData> a,
+							Pair<Integer, UserLibraryData> b) {
+						return a.left.compareTo(b.left);
+					}
+				});
+		List<Symbol> methods = symbolTable.getSymbols(MethodSymbol.class);
+		DataflowGraph dataflowGraph = new DataflowGraph();
+		for (Pair<Integer, UserLibraryData> statement : statements)
+			dataflowGraph.addNode(statement.right,
+					this.getEnclosingMethod(methods, statement.left));
+		return dataflowGraph;
+	}
+
+	/**
+	 * Signature of the innermost method that contains a given token, e.g.
+	 * "process(Bitmap, int)", or null if the token is in a constructor or
+	 * field initializer.
+	 */
+	private String getEnclosingMethod(List<Symbol> methods, int tokenIndex) {
+		MethodSymbol enclosingMethod = null;
+		int enclosingMethodStart = -1;
+		for (Symbol method : methods) {
+			int start = method.tokenAddress.start.getTokenIndex();
+			int stop = method.tokenAddress.stop.getTokenIndex();
+			// Inner methods start after the methods that contain them
+			if (start <= tokenIndex && tokenIndex <= stop
+					&& start > enclosingMethodStart) {
+				enclosingMethod = (MethodSymbol) method;
+				enclosingMethodStart = start;
+			}
+		}
+		if (enclosingMethod == null)
+			return null;
+		StringBuilder signature = new StringBuilder(enclosingMethod.name);
+		signature.append("(");
+		for (Symbol argument : enclosingMethod.arguments) {
+			if (signature.charAt(signature.length() - 1) != '(')
+				signature.append(", ");
+			signature.append(((VariableSymbol) argument).typeName);
+		}
+		return signature.append(")").toString();
+	}
+
+	/**
+	 * Check if a given operation can be fused into the previous one, so both
+	 * user functions are called by the same kernel. Only parallel foreach
+	 * operations are fused, either into a previous foreach on the same
+	 * variable or into the filter on an array that produced this variable,
+	 * and only when both statements are adjacent.
+	 */
+	private boolean isFusible(Operation previousOperation,
+			Operation operation, TokenStream tokenStream) {
+		if (operation.operationType != OperationType.Foreach
+				|| previousOperation.getExecutionType() != ExecutionType.Parallel
+				|| operation.getExecutionType() != ExecutionType.Parallel) {
+			return false;
+		}
+		if (previousOperation.operationType == OperationType.Foreach) {
+			if (!previousOperation.variable.name
+					.equals(operation.variable.name))
+				return false;
+		} else if (previousOperation.operationType == OperationType.Filter) {
+			if (!this.isArray(previousOperation.variable)
+					|| previousOperation.destinationVariable == null
+					|| !previousOperation.destinationVariable.name
+							.equals(operation.variable.name))
+				return false;
+		} else {
+			return false;
+		}
+		return this.areAdjacent(previousOperation, operation, tokenStream);
+	}
+
+	/**
+	 * Check if a map or filter can be fused into the operation that follows
+	 * it, so the following operation's kernels apply the map user function
+	 * or skip the elements rejected by the filter for each element they read
+	 * and the intermediate array is never allocated. Only parallel
+	 * operations on arrays are fused, and the producer destination variable
+	 * must be declared by the producer statement itself, as recorded in the
+	 * symbol table, and read by the following operation alone.
+	 */
+	private boolean isProducerFusible(Operation previousOperation,
+			Operation operation, Symbol symbolTable, TokenStream tokenStream) {
+		if (previousOperation.operationType != OperationType.Map
+				&& previousOperation.operationType != OperationType.Filter)
+			return false;
+		if (previousOperation.getExecutionType() != ExecutionType.Parallel
+				|| operation.getExecutionType() != ExecutionType.Parallel
+				|| !previousOperation.getFusedOperations().isEmpty()
+				|| previousOperation.getProducerOperation() != null
+				|| !this.isArray(previousOperation.variable)
+				|| previousOperation.destinationVariable == null
+				|| !previousOperation.destinationVariable.name
+						.equals(operation.variable.name)
+				|| !this.areAdjacent(previousOperation, operation,
+						tokenStream)) {
+			return false;
+		}
+		UserLibraryVariableSymbol destination = this.getDeclaredVariable(
+				previousOperation, symbolTable);
+		if (destination == null)
+			return false;
+		// Then it must be referenced only once, by the reduce statement,
+		// until the end of the scope that contains its declaration
+		String name = destination.name;
+		int references = 0;
+		int start = previousOperation.statementAddress.stop.getTokenIndex() + 1;
+		int stop = destination.enclosingScope.tokenAddress.stop
+				.getTokenIndex();
+		for (int i = start; i <= stop; i++) {
+			Token token = tokenStream.get(i);
+			if (token.getType() == JavaLexer.Identifier
+					&& token.getText().equals(name)) {
+				if (i < operation.statementAddress.start.getTokenIndex()
+						|| i > operation.statementAddress.stop.getTokenIndex())
+					return false;
+				references++;
+			}
+		}
+		return references == 1;
+	}
+
+	/**
+	 * Find the user library variable declared by the statement of a given
+	 * operation with the same name of the operation destination variable.
+	 * 
+	 * @return The variable symbol or null if the destination variable was not
+	 *         declared by the operation statement.
+	 */
+	private UserLibraryVariableSymbol getDeclaredVariable(Operation operation,
+			Symbol symbolTable) {
+		int start = operation.statementAddress.start.getTokenIndex();
+		int stop = operation.statementAddress.stop.getTokenIndex();
+		for (Symbol symbol : symbolTable
+				.getSymbols(UserLibraryVariableSymbol.class)) {
+			UserLibraryVariableSymbol variable = (UserLibraryVariableSymbol) symbol;
+			if (variable.name.equals(operation.destinationVariable.name)
+					&& variable.statementAddress != null
+					&& variable.enclosingScope.tokenAddress != null
+					&& variable.statementAddress.start.getTokenIndex() >= start
+					&& variable.statementAddress.stop.getTokenIndex() <= stop)
+				return variable;
+		}
+		return null;
+	}
+
+	private boolean isArray(Variable variable) {
+		return variable.typeName.equals(Array.getInstance().getClassName());
+	}
+
+	/**
+	 * Check if there is nothing but whitespace between two operation
+	 * statements. It guarantees they are in the same block and that no bind,
+	 * method call or any other statement runs between them.
+	 */
+	private boolean areAdjacent(Operation first, Operation second,
+			TokenStream tokenStream) {
+		int start = first.statementAddress.stop.getTokenIndex() + 1;
+		int stop = second.statementAddress.start.getTokenIndex();
+		if (start > stop)
+			return false;
+		for (int i = start; i < stop; i++) {
+			if (tokenStream.get(i).getChannel() == Token.DEFAULT_CHANNEL)
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -785,10 +1180,16 @@ public class CompilerCodeTranslator {
 		for (int i = 0; i < variables.size()
 				&& executionType == ExecutionType.Parallel; i++) {
 			if (!variables.get(i).isFinal()) {
+				int line = operation.statementAddress.start.getLine();
 				SimpleLogger
 						.warn("Operation with non-final external variable in line "
-								+ operation.statementAddress.start.getLine()
+								+ line
 								+ " will be translated to a sequential operation in the target runtime.");
+				this.diagnostics.add(new Diagnostic(Diagnostic.Kind.Warning,
+						this.file, line,
+						"Operation with non-final external variable will be "
+								+ "translated to a sequential operation in "
+								+ "the target runtime."));
 				executionType = ExecutionType.Sequential;
 			}
 		}
@@ -797,21 +1198,13 @@ public class CompilerCodeTranslator {
 
 	/**
 	 * Creates Android.mk file in ParallelME JNI folder based on all previously
-	 * compiled classes.
+	 * compiled classes. Nothing is created if no code is generated for
+	 * ParallelME runtime.
 	 */
 	public void createAndroidMKFile() {
-		String templateAndroidMKFile = "<introductoryMsg>\n\n"
-				+ "LOCAL_PATH := $(call my-dir)\n"
-				+ "include $(CLEAR_VARS)\n"
-				+ "LOCAL_MODULE := ParallelMEGenerated\n"
-				+ "LOCAL_C_INCLUDES := $(LOCAL_PATH)/../runtime/include\n"
-				+ "LOCAL_CPPFLAGS := -Ofast -Wall -Wextra -Werror -Wno-unused-parameter -std=c++14 -fexceptions\n"
-				+ "LOCAL_CPP_FEATURES += exceptions\n"
-				+ "LOCAL_LDLIBS := -llog\n"
-				+ "LOCAL_SHARED_LIBRARIES := ParallelMERuntime\n"
-				+ "LOCAL_SRC_FILES := <files:{var|<var.name>}; separator=\" \\\\\n\t\">\n"
-				+ "include $(BUILD_SHARED_LIBRARY)\n";
-		ST st = new ST(templateAndroidMKFile);
+		if (!this.isTarget(TargetRuntime.ParallelME))
+			return;
+		ST st = templates.getInstanceOf("androidMKFile");
 		st.add("introductoryMsg", RuntimeCommonDefinitions.getInstance()
 				.getAndroidMKHeaderComment());
 		st.addAggr("files.{name}", "org_parallelme_ParallelMERuntime.cpp");
@@ -825,7 +1218,7 @@ public class CompilerCodeTranslator {
 		FileWriter.writeFile(
 				"Android.mk",
 				RuntimeCommonDefinitions.getInstance().getJNIDestinationFolder(
-						outputDestinationFolder), st.render());
+						outputDestinationFolder), st);
 	}
 
 	// private void errorChecking(OperationsAndBinds operationsAndBinds) {
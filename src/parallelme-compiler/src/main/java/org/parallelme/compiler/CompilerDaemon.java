@@ -0,0 +1,134 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Long-lived compiler process that keeps the compiler classes loaded and the
+ * ANTLR DFA and prediction context caches (shared by all JavaLexer and
+ * JavaParser instances) warm between builds.
+ * 
+ * Requests are received on a loopback port, one at a time, with the exact
+ * same arguments accepted by the command line. A request contains the client
+ * working directory, used to resolve relative paths, followed by the
+ * arguments. The response contains the compiler exit status followed by
+ * everything that the compiler printed.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilerDaemon {
+	public static final String stopCommand = "-stop";
+	private final int port;
+
+	public CompilerDaemon(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Serves compile requests until a stop request is received.
+	 */
+	public void serve() throws IOException {
+		ServerSocket serverSocket = new ServerSocket(this.port, 50,
+				InetAddress.getLoopbackAddress());
+		System.out.println("ParallelME compiler daemon listening on port "
+				+ serverSocket.getLocalPort());
+		try {
+			boolean running = true;
+			while (running) {
+				Socket socket = serverSocket.accept();
+				try {
+					running = this.handle(socket);
+				} catch (IOException e) {
+					System.out.println("Error while handling request: "
+							+ e.getMessage());
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Handles a single request.
+	 * 
+	 * @return False if the daemon must stop, true otherwise.
+	 */
+	private boolean handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		String workingDirectory = in.readUTF();
+		String[] args = new String[in.readInt()];
+		for (int i = 0; i < args.length; i++)
+			args[i] = in.readUTF();
+		if (args.length == 1 && args[0].equals(stopCommand)) {
+			this.reply(out, 0, new byte[0]);
+			return false;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream output = new PrintStream(buffer, true, "UTF-8");
+		SimpleLogger.setOutput(output);
+		int status;
+		try {
+			status = Main.run(resolvePaths(args, workingDirectory), output);
+		} finally {
+			SimpleLogger.setOutput(System.out);
+		}
+		output.flush();
+		this.reply(out, status, buffer.toByteArray());
+		return true;
+	}
+
+	private void reply(DataOutputStream out, int status, byte[] output)
+			throws IOException {
+		out.writeInt(status);
+		out.writeInt(output.length);
+		out.write(output);
+		out.flush();
+	}
+
+	/**
+	 * Resolves relative input and output paths against the client working
+	 * directory, since the daemon may have been started elsewhere.
+	 */
+	static String[] resolvePaths(String[] args, String workingDirectory) {
+		String[] ret = args.clone();
+		for (int i = 0; i < ret.length - 1; i++) {
+			if ((ret[i].equals("-f") || ret[i].equals("-o") || ret[i]
+					.equals("--profile"))
+					&& !ret[i + 1].startsWith("-")) {
+				String[] paths = ret[++i].replace('\"', ' ').trim().split(";");
+				for (int j = 0; j < paths.length; j++) {
+					File file = new File(paths[j]);
+					if (!file.isAbsolute())
+						paths[j] = new File(workingDirectory, paths[j])
+								.getPath();
+				}
+				StringBuilder sb = new StringBuilder();
+				for (int j = 0; j < paths.length; j++) {
+					if (j > 0)
+						sb.append(";");
+					sb.append(paths[j]);
+				}
+				ret[i] = sb.toString();
+			}
+		}
+		return ret;
+	}
+}
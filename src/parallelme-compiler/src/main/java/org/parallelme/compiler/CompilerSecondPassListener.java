@@ -34,7 +34,7 @@ import org.parallelme.compiler.userlibrary.*;
  * 
  * @author Wilson de Carvalho
  */
-public class CompilerSecondPassListener extends ScopeDrivenListener {
+public class CompilerSecondPassListener extends SymbolTableDrivenListener {
 	private enum StatementType {
 		Operation, OutputBind, None;
 	}
@@ -73,9 +73,12 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 	 * @param tokenStream
 	 *            Token stream for the tree being visited. Used to extract
 	 *            original code data.
+	 * @param symbolTable
+	 *            Symbol table created on the first pass for the same tree.
 	 */
-	public CompilerSecondPassListener(TokenStream tokenStream) {
-		super(new RootSymbol());
+	public CompilerSecondPassListener(TokenStream tokenStream,
+			RootSymbol symbolTable) {
+		super(symbolTable);
 		this.operationsAndBinds = new ArrayList<>();
 		this.tokenStream = tokenStream;
 		this.operationCount = this.outputBindCount = this.methodCallCount = 0;
@@ -178,14 +181,6 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 	/**
 	 * Extracts the necessary operation data to create an object with user
 	 * function data.
-	 * 
-	 * TODO This code must be refactored. This data should be get in the
-	 * isOperation method. I got this data here because I'm using an instance of
-	 * ScopeDrivenListener that builds the symbol table along the tree walk. It
-	 * must be modified to provide scopes based on the symbol table created on
-	 * the first pass, otherwise this translator will never work correctly in
-	 * case a user class variable is declared after a given method and then used
-	 * inside this method.
 	 */
 	private void getOperationData() {
 		if (this.currentScope.enclosingScope instanceof CreatorSymbol) {
@@ -221,7 +216,8 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 						methodBody.tokenAddress.start,
 						methodBody.tokenAddress.stop);
 				UserFunction userFunctionData = new UserFunction(
-						originalMethodContent, variables);
+						originalMethodContent, variables,
+						methodBody.tokenAddress);
 				// Add all those external variables found on the operation to
 				// be used in the second pass.
 				for (VariableSymbol variable : this.operationExternalVariables
@@ -243,14 +239,15 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 	}
 
 	private void checkExpression(JavaParser.ExpressionContext ctx) {
-		String expression = ctx.getText();
-		// To avoid unnecessary user variable check, only performs verification
-		// as long as there is a different scope.
-		if (this.currentScope != this.previousScope) {
-			this.userLibraryVariablesUnderScope = this.currentScope
-					.getSymbolsUnderScope(UserLibraryVariableSymbol.class);
-
-		}
+		// Only expressions formed by a single identifier may refer to a
+		// variable, so there is no need to build the text of all the others.
+		String expression = this.getIdentifier(ctx);
+		if (expression == null)
+			return;
+		// The symbol table caches this map until new symbols are added to the
+		// current scope or its enclosing scopes.
+		this.userLibraryVariablesUnderScope = this.currentScope
+				.getSymbolsUnderScope(UserLibraryVariableSymbol.class);
 		// Checks if this expression contains an user library variable
 		if (this.userLibraryVariablesUnderScope.containsKey(expression)) {
 			UserLibraryVariableSymbol variable = (UserLibraryVariableSymbol) this.userLibraryVariablesUnderScope
@@ -291,6 +288,38 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 		}
 	}
 
+	/**
+	 * Gets the identifier of an expression formed by a single identifier.
+	 * 
+	 * @param ctx
+	 *            Expression context.
+	 * @return The identifier, or null if the expression is anything else.
+	 */
+	private String getIdentifier(JavaParser.ExpressionContext ctx) {
+		if (ctx.primary() != null && ctx.primary().Identifier() != null)
+			return ctx.primary().Identifier().getText();
+		return null;
+	}
+
+	/**
+	 * Gets the member accessed on an expression, as in
+	 * <i>expression.member</i>, using the parent expression tokens.
+	 * 
+	 * @param ctx
+	 *            Expression context.
+	 * @return The member identifier, or null if the parent expression is not
+	 *         a member access on the expression provided.
+	 */
+	private String getAccessedMember(JavaParser.ExpressionContext ctx) {
+		if (ctx.parent instanceof ExpressionContext) {
+			ExpressionContext parent = (ExpressionContext) ctx.parent;
+			if (parent.getChildCount() == 3 && parent.getChild(0) == ctx
+					&& parent.Identifier() != null)
+				return parent.Identifier().getText();
+		}
+		return null;
+	}
+
 	/**
 	 * Checks if the statement provided that contains a user library object
 	 * corresponds to an operation that must be translated to the target
@@ -309,7 +338,7 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 		// - variableName.par().operationName(...)
 		JavaParser.StatementContext stx = this.currentStatement;
 		LocalVariableDeclarationStatementContext lcx = this.currentVariableStatement;
-		if (etx.parent.getText().equals(variable.name + ".par")) {
+		if ("par".equals(this.getAccessedMember(etx))) {
 			if ((stx != null
 					&& stx.statementExpression() != null
 					&& stx.statementExpression().expression() != null
@@ -393,13 +422,8 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 	private boolean isOutputBind(UserLibraryVariableSymbol variable,
 			UserLibraryCollection userLibraryClass,
 			JavaParser.ExpressionContext ctx) {
-		boolean ret = false;
-		if (ctx.parent.getText().equals(
-				variable.name + "."
-						+ userLibraryClass.getOutputBindMethodName())) {
-			ret = true;
-		}
-		return ret;
+		return userLibraryClass.getOutputBindMethodName().equals(
+				this.getAccessedMember(ctx));
 	}
 
 	/**
@@ -410,10 +434,8 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 			JavaParser.ExpressionContext ctx) {
 		boolean ret = false;
 		if (ctx.parent.parent instanceof ExpressionContext) {
-			String expression = ctx.parent.getText();
-			String methodName = expression.substring(
-					expression.indexOf(".") + 1, expression.length());
-			if (userLibraryClass.isValidMethod(methodName)) {
+			String methodName = this.getAccessedMember(ctx);
+			if (methodName != null && userLibraryClass.isValidMethod(methodName)) {
 				ret = true;
 			}
 		}
@@ -542,9 +564,7 @@ public class CompilerSecondPassListener extends ScopeDrivenListener {
 	private void getMethodCallData(UserLibraryVariableSymbol variable,
 			JavaParser.ExpressionContext ctx) {
 		ExpressionContext expressionCtx = (ExpressionContext) ctx.parent.parent;
-		String expression = ctx.parent.getText();
-		String methodName = expression.substring(expression.indexOf(".") + 1,
-				expression.length());
+		String methodName = this.getAccessedMember(ctx);
 		this.methodCalls.add(new MethodCall(methodName, new Variable(
 				variable.name, variable.typeName, variable.typeParameters,
 				variable.modifier, variable.identifier), new TokenAddress(
@@ -0,0 +1,47 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+/**
+ * An error or warning reported while compiling a given source file.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Diagnostic {
+	public enum Kind {
+		Error, Warning;
+	}
+
+	public final Kind kind;
+	// Source file name, or null if the diagnostic is not related to a file.
+	public final String file;
+	// Line number in the source file, or -1 if unknown.
+	public final int line;
+	public final String message;
+
+	public Diagnostic(Kind kind, String file, int line, String message) {
+		this.kind = kind;
+		this.file = file;
+		this.line = line;
+		this.message = message;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		if (this.file != null) {
+			builder.append(this.file);
+			if (this.line != -1)
+				builder.append(":").append(this.line);
+			builder.append(": ");
+		}
+		return builder.append(this.kind.toString().toLowerCase())
+				.append(": ").append(this.message).toString();
+	}
+}
@@ -8,6 +8,8 @@
 
 package org.parallelme.compiler;
 
+import java.io.PrintStream;
+
 import org.parallelme.compiler.CompilerArgsVerification.CompilerParameters;
 import org.parallelme.compiler.exception.CompilationException;
 
@@ -18,36 +20,88 @@ import org.parallelme.compiler.exception.CompilationException;
  */
 public class Main {
 	public static void main(String[] args) {
+		if (args.length == 2 && args[0].equals("-daemon")) {
+			try {
+				new CompilerDaemon(Integer.parseInt(args[1])).serve();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} else if (args.length >= 2 && args[0].equals("-server")) {
+			String[] compilerArgs = new String[args.length - 2];
+			System.arraycopy(args, 2, compilerArgs, 0, compilerArgs.length);
+			try {
+				System.exit(CompilerClient.send(Integer.parseInt(args[1]),
+						compilerArgs, System.out));
+			} catch (Exception ex) {
+				ex.printStackTrace();
+				System.exit(1);
+			}
+		} else {
+			System.exit(run(args, System.out));
+		}
+	}
+
+	/**
+	 * Runs the compiler with the arguments informed.
+	 * 
+	 * @param args
+	 *            Command line arguments.
+	 * @param out
+	 *            Stream where messages must be printed.
+	 * @return Zero in case of success, non-zero otherwise.
+	 */
+	public static int run(String[] args, PrintStream out) {
+		int ret = 1;
 		try {
 			CompilerParameters parameters = null;
 			try {
 				parameters = (new CompilerArgsVerification()).checkArgs(args);
 			} catch (Exception e) {
-				printHelpMsg();
+				printHelpMsg(out);
 			}
 			if (parameters != null) {
 				SimpleLogger.logError = true;
 				SimpleLogger.logInfo = true;
 				SimpleLogger.logWarn = true;
-				(new Compiler()).compile(parameters.files,
+				Compiler compiler = new Compiler(parameters.threads,
+						parameters.incremental, parameters.streaming);
+				compiler.setProfileReport(parameters.profileReport);
+				compiler.setTargets(parameters.targets);
+				compiler.setDataflowFormat(parameters.dataflowFormat);
+				compiler.compile(parameters.files,
 						parameters.destinationFolder);
+				ret = 0;
 			} else {
-				printHelpMsg();
+				printHelpMsg(out);
 			}
 		} catch (CompilationException ex) {
 			SimpleLogger.error(ex.getMessage());
 		} catch (Exception ex) {
-			ex.printStackTrace();
+			ex.printStackTrace(out);
 		}
+		return ret;
 	}
 
-	private static void printHelpMsg() {
-		System.out
-				.println("ParallelME compiler accepts the following arguments:");
-		System.out
-				.println("-f\t\tJava file or directory path (quoted). In case of multiple files,");
-		System.out
-				.println("\t\tuse a ; separated list of files or directories in the same quoted string.");
-		System.out.println("-o\t\tOutput directory path (quoted).");
+	private static void printHelpMsg(PrintStream out) {
+		out.println("ParallelME compiler accepts the following arguments:");
+		out.println("-f\t\tJava file or directory path (quoted). In case of multiple files,");
+		out.println("\t\tuse a ; separated list of files or directories in the same quoted string.");
+		out.println("-o\t\tOutput directory path (quoted).");
+		out.println("-j\t\tNumber of files compiled in parallel (optional, default 1).");
+		out.println("-i\t\tIncremental build: skip files that did not change since the");
+		out.println("\t\tprevious build on the same output directory (optional).");
+		out.println("-s\t\tStreaming build: compile each file completely before parsing the");
+		out.println("\t\tnext ones, keeping memory usage flat on large projects (optional).");
+		out.println("--targets\tRuntimes code is generated for: rs (RenderScript), pm");
+		out.println("\t\t(ParallelME runtime) or both (optional, default both).");
+		out.println("--profile\tReport file with time and memory spent by phase and by file,");
+		out.println("\t\tin CSV if its name ends with .csv and in JSON otherwise (optional).");
+		out.println("--dataflow\tDumps the dataflow graph of binds and operations of each class to");
+		out.println("\t\tthe dataflow output directory, in dot or json format (optional).");
+		out.println();
+		out.println("To keep the compiler loaded between builds, start a daemon with");
+		out.println("\t\t-daemon PORT");
+		out.println("and prefix the arguments above with -server PORT to send them to it.");
+		out.println("-server PORT -stop shuts the daemon down.");
 	}
-}
\ No newline at end of file
+}
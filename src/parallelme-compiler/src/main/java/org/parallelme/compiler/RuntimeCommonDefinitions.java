@@ -31,7 +31,9 @@ import org.parallelme.compiler.userlibrary.classes.HDRImage;
 import org.parallelme.compiler.userlibrary.classes.Int16;
 import org.parallelme.compiler.userlibrary.classes.Int32;
 import org.parallelme.compiler.userlibrary.classes.Pixel;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Code useful for common runtime definitions.
@@ -39,8 +41,9 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public class RuntimeCommonDefinitions {
+	private static final STGroup templates = Templates
+			.load(RuntimeCommonDefinitions.class);
 	private static RuntimeCommonDefinitions instance = new RuntimeCommonDefinitions();
-	private final String templateMethodSignature = "<modifier:{var|<var.value> }><returnType> <name>(<params:{var|<var.type> <var.name>}; separator=\", \">)";
 	private final String inSuffix = "In";
 	private final String outSuffix = "Out";
 	private final String inputBindName = "inputBind";
@@ -252,6 +255,16 @@ public class RuntimeCommonDefinitions {
 				+ packageName.replaceAll("\\.", "/") + File.separator;
 	}
 
+	/**
+	 * Return a destination folder for dataflow graph dumps.
+	 */
+	public String getDataflowDestinationFolder(String baseDestinationFolder,
+			String packageName) {
+		return baseDestinationFolder + File.separator + "dataflow"
+				+ File.separator + packageName.replaceAll("\\.", "/")
+				+ File.separator;
+	}
+
 	/**
 	 * Return the Java wrapper interface name that must be created for a given
 	 * class.
@@ -322,7 +335,7 @@ public class RuntimeCommonDefinitions {
 	public <T extends Parameter> String createJavaMethodSignature(
 			String modifier, String returnType, String name,
 			List<T> parameters, boolean asArrayVariables) {
-		ST st = new ST(templateMethodSignature);
+		ST st = templates.getInstanceOf("methodSignature");
 		if (modifier.isEmpty())
 			st.add("modifier", null);
 		else
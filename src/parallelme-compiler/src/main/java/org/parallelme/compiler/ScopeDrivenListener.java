@@ -31,6 +31,8 @@ import org.parallelme.compiler.util.StringUtil;
  */
 public class ScopeDrivenListener extends JavaBaseListener {
 	protected int symbolsCounter = 1;
+	// Root scope provided in the constructor.
+	protected final Symbol rootScope;
 	// Current scope.
 	protected Symbol currentScope = null;
 	// Previos scope.
@@ -50,6 +52,7 @@ public class ScopeDrivenListener extends JavaBaseListener {
 	 *            the creation of this symbol table.
 	 */
 	public ScopeDrivenListener(Symbol rootScope) {
+		this.rootScope = rootScope;
 		this.currentScope = rootScope;
 	}
 
@@ -215,6 +218,8 @@ public class ScopeDrivenListener extends JavaBaseListener {
 	 *            A symbol to associate to the new scope.
 	 */
 	private void newScope(Symbol scopeSymbol) {
+		if (this.rootScope instanceof RootSymbol)
+			((RootSymbol) this.rootScope).addScope(scopeSymbol);
 		this.previousScope = this.currentScope;
 		if (this.currentScope != null) {
 			this.currentScope.addSymbol(scopeSymbol);
@@ -8,6 +8,7 @@
 
 package org.parallelme.compiler;
 
+import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -23,21 +24,30 @@ public class SimpleLogger {
 	public static boolean logInfo = false;
 	public static boolean logError = false;
 	public static boolean logWarn = false;
+	private static PrintStream output = System.out;
 
-	public static void info(String msg) {
+	/**
+	 * Sets the stream where messages are printed. Standard output is used by
+	 * default.
+	 */
+	public static synchronized void setOutput(PrintStream stream) {
+		output = stream;
+	}
+
+	public static synchronized void info(String msg) {
 		if (logInfo)
-			System.out.println(sdf.format(new Date()) + " - " + msg);
+			output.println(sdf.format(new Date()) + " - " + msg);
 	}
 
-	public static void error(String msg) {
+	public static synchronized void error(String msg) {
 		if (logError)
-			System.out.println("[ERROR] " + sdf.format(new Date()) + " - "
+			output.println("[ERROR] " + sdf.format(new Date()) + " - "
 					+ msg);
 	}
 	
-	public static void warn(String msg) {
+	public static synchronized void warn(String msg) {
 		if (logWarn)
-			System.out.println("[WARN] " + sdf.format(new Date()) + " - "
+			output.println("[WARN] " + sdf.format(new Date()) + " - "
 					+ msg);
 	}
 }
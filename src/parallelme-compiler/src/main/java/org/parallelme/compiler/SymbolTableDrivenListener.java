@@ -0,0 +1,109 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.symboltable.*;
+
+/**
+ * Symbol table-driven listener. Like its parent class, it updates
+ * <b>currentScope</b> variable accordingly to the symbol currently being
+ * visited, but instead of creating a new symbol table along the walk it
+ * resumes the scopes of a symbol table previously created by the first pass.
+ * Scopes are found by the token address of the tree node that created them.
+ * 
+ * Since the symbol table is complete before the walk starts, all symbols of a
+ * scope are visible from any point of it, including those declared after the
+ * code being visited.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class SymbolTableDrivenListener extends ScopeDrivenListener {
+	/**
+	 * Constructor.
+	 * 
+	 * @param symbolTable
+	 *            Symbol table created on the first pass for the same parse
+	 *            tree that will be walked with this listener.
+	 */
+	public SymbolTableDrivenListener(RootSymbol symbolTable) {
+		super(symbolTable);
+	}
+
+	@Override
+	public void enterClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
+		this.enterScope(new TokenAddress(ctx.getParent().start,
+				ctx.getParent().stop));
+	}
+
+	@Override
+	public void exitClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
+		this.exitScope(new TokenAddress(ctx.getParent().start,
+				ctx.getParent().stop));
+	}
+
+	@Override
+	public void enterMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
+		this.enterScope(new TokenAddress(ctx.start, ctx.stop));
+	}
+
+	@Override
+	public void exitMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
+		this.exitScope(new TokenAddress(ctx.start, ctx.stop));
+	}
+
+	@Override
+	public void enterCreator(JavaParser.CreatorContext ctx) {
+		this.enterScope(new TokenAddress(ctx.start, ctx.stop));
+	}
+
+	@Override
+	public void exitCreator(JavaParser.CreatorContext ctx) {
+		this.exitScope(new TokenAddress(ctx.start, ctx.stop));
+	}
+
+	/**
+	 * Variables were already stored in the symbol table.
+	 */
+	@Override
+	public void enterLocalVariableDeclaration(
+			JavaParser.LocalVariableDeclarationContext ctx) {
+	}
+
+	/**
+	 * Fields were already stored in the symbol table.
+	 */
+	@Override
+	public void enterFieldDeclaration(JavaParser.FieldDeclarationContext ctx) {
+	}
+
+	/**
+	 * Updates the current scope to the one created for the token address
+	 * provided, if any.
+	 */
+	private void enterScope(TokenAddress tokenAddress) {
+		Symbol scope = ((RootSymbol) this.rootScope).getScope(tokenAddress);
+		if (scope != null) {
+			this.previousScope = this.currentScope;
+			this.currentScope = scope;
+		}
+	}
+
+	/**
+	 * Returns the current scope to the previous one only if it was created
+	 * for the token address provided.
+	 */
+	private void exitScope(TokenAddress tokenAddress) {
+		if (this.currentScope.tokenAddress != null
+				&& this.currentScope.tokenAddress.equals(tokenAddress)) {
+			this.previousScope = this.currentScope;
+			this.currentScope = this.currentScope.enclosingScope;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.parallelme.compiler.antlr.JavaLexer;
+import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.symboltable.RootSymbol;
+import org.parallelme.compiler.symboltable.Symbol;
+import org.parallelme.compiler.symboltable.UserLibraryVariableSymbol;
+
+/**
+ * Parse tree walker that skips the class members and statements that cannot
+ * refer to user library variables, which are the only code the second pass
+ * looks at.
+ * 
+ * Before the walk, the token stream is scanned once for identifiers named
+ * after any user library variable found by the first pass. A member or
+ * statement is skipped, entering and exiting none of its nodes, if its tokens
+ * contain none of these identifiers. Statements that contain one are walked
+ * entirely, since user functions declared in them must be fully visited.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class UserLibraryTreeWalker extends ParseTreeWalker {
+	// Sorted indexes of the tokens that may refer to user library variables.
+	private final int[] tokenIndexes;
+	private int skippedSubtrees = 0;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tokenStream
+	 *            Token stream of the tree that will be walked. All tokens must
+	 *            have been fetched.
+	 * @param symbolTable
+	 *            Symbol table created on the first pass for the same tree.
+	 */
+	public UserLibraryTreeWalker(TokenStream tokenStream,
+			RootSymbol symbolTable) {
+		Set<String> names = new HashSet<>();
+		for (Symbol symbol : symbolTable
+				.getSymbols(UserLibraryVariableSymbol.class))
+			names.add(symbol.name);
+		int[] indexes = new int[16];
+		int count = 0;
+		if (!names.isEmpty()) {
+			for (int i = 0; i < tokenStream.size(); i++) {
+				Token token = tokenStream.get(i);
+				if (token.getType() == JavaLexer.Identifier
+						&& names.contains(token.getText())) {
+					if (count == indexes.length)
+						indexes = Arrays.copyOf(indexes, count * 2);
+					indexes[count++] = i;
+				}
+			}
+		}
+		this.tokenIndexes = Arrays.copyOf(indexes, count);
+	}
+
+	@Override
+	public void walk(ParseTreeListener listener, ParseTree t) {
+		if (t instanceof JavaParser.ClassBodyDeclarationContext
+				|| t instanceof JavaParser.BlockStatementContext) {
+			if (!this.mayReferUserLibrary((ParserRuleContext) t)) {
+				this.skippedSubtrees++;
+				return;
+			}
+			if (t instanceof JavaParser.BlockStatementContext) {
+				ParseTreeWalker.DEFAULT.walk(listener, t);
+				return;
+			}
+		}
+		super.walk(listener, t);
+	}
+
+	/**
+	 * Checks if a node contains an identifier named after a user library
+	 * variable.
+	 */
+	private boolean mayReferUserLibrary(ParserRuleContext ctx) {
+		if (ctx.start == null || ctx.stop == null
+				|| ctx.stop.getTokenIndex() < ctx.start.getTokenIndex())
+			return true;
+		int position = Arrays.binarySearch(this.tokenIndexes,
+				ctx.start.getTokenIndex());
+		if (position >= 0)
+			return true;
+		int next = -position - 1;
+		return next < this.tokenIndexes.length
+				&& this.tokenIndexes[next] <= ctx.stop.getTokenIndex();
+	}
+
+	/**
+	 * Number of class members and statements skipped by the walks performed
+	 * so far.
+	 */
+	public int getSkippedSubtreeCount() {
+		return this.skippedSubtrees;
+	}
+}
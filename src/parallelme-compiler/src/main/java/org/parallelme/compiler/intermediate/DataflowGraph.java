@@ -0,0 +1,354 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.intermediate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.parallelme.compiler.intermediate.Operation.OperationType;
+import org.parallelme.compiler.symboltable.TokenAddress;
+
+/**
+ * Dataflow graph of the binds and operations of a class. Each node is an
+ * input bind, an operation or an output bind, and each edge links the node
+ * that defines a variable to a node that uses that definition.
+ *
+ * Nodes must be added in statement order. Edges are scoped per method: a
+ * use is linked to the last definition of the same variable added before it
+ * in the same method, regardless of loops and branches. Variables defined in
+ * other methods or in fields have no edge to their uses.
+ *
+ * @author Wilson de Carvalho
+ */
+public class DataflowGraph {
+	public enum NodeType {
+		InputBind, Operation, OutputBind;
+	}
+
+	public enum EdgeType {
+		// User library variables, e.g. images and arrays
+		UserLibrary,
+		// Java variables read or written by binds and operations
+		External;
+	}
+
+	public static class Node {
+		public final int id;
+		public final NodeType nodeType;
+		public final UserLibraryData userLibraryData;
+		// Signature of the enclosing method, or null for field initializers.
+		public final String method;
+		private final List<Edge> inEdges = new ArrayList<>();
+		private final List<Edge> outEdges = new ArrayList<>();
+
+		private Node(int id, NodeType nodeType,
+				UserLibraryData userLibraryData, String method) {
+			this.id = id;
+			this.nodeType = nodeType;
+			this.userLibraryData = userLibraryData;
+			this.method = method;
+		}
+
+		/**
+		 * Edges from the nodes whose definitions this node uses.
+		 */
+		public List<Edge> getInEdges() {
+			return Collections.unmodifiableList(inEdges);
+		}
+
+		/**
+		 * Edges to the nodes that use definitions of this node.
+		 */
+		public List<Edge> getOutEdges() {
+			return Collections.unmodifiableList(outEdges);
+		}
+
+		/**
+		 * Source code line of the node statement.
+		 */
+		public int getLine() {
+			TokenAddress address;
+			if (userLibraryData instanceof Operation)
+				address = ((Operation) userLibraryData).statementAddress;
+			else if (userLibraryData instanceof OutputBind)
+				address = ((OutputBind) userLibraryData).statementAddress;
+			else
+				address = ((InputBind) userLibraryData).creationStatementAddress;
+			return address.start.getLine();
+		}
+
+		/**
+		 * Short description, e.g. "Foreach 3" or "InputBind 1".
+		 */
+		public String getLabel() {
+			String label;
+			if (nodeType == NodeType.Operation)
+				label = ((Operation) userLibraryData).operationType.toString();
+			else
+				label = nodeType.toString();
+			return label + " " + userLibraryData.sequentialNumber;
+		}
+	}
+
+	public static class Edge {
+		public final Node source;
+		public final Node target;
+		public final String variableName;
+		public final EdgeType edgeType;
+
+		private Edge(Node source, Node target, String variableName,
+				EdgeType edgeType) {
+			this.source = source;
+			this.target = target;
+			this.variableName = variableName;
+			this.edgeType = edgeType;
+		}
+	}
+
+	private final List<Node> nodes = new ArrayList<>();
+	private final List<Edge> edges = new ArrayList<>();
+	private final Map<UserLibraryData, Node> nodesByData = new HashMap<>();
+	// Last definition of each variable, indexed by method and variable name.
+	private final Map<String, Map<String, Node>> definitions = new HashMap<>();
+
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public List<Edge> getEdges() {
+		return Collections.unmodifiableList(edges);
+	}
+
+	/**
+	 * Node of a given bind or operation, or null if it was not added.
+	 */
+	public Node getNode(UserLibraryData userLibraryData) {
+		return nodesByData.get(userLibraryData);
+	}
+
+	/**
+	 * Adds a bind or operation after those already added, linking the
+	 * variables it uses to their last definitions in the same method.
+	 *
+	 * @param userLibraryData
+	 *            Input bind, operation or output bind.
+	 * @param method
+	 *            Signature of the enclosing method, or null for field
+	 *            initializers.
+	 * @return The new node.
+	 */
+	public Node addNode(UserLibraryData userLibraryData, String method) {
+		NodeType nodeType;
+		if (userLibraryData instanceof InputBind)
+			nodeType = NodeType.InputBind;
+		else if (userLibraryData instanceof Operation)
+			nodeType = NodeType.Operation;
+		else if (userLibraryData instanceof OutputBind)
+			nodeType = NodeType.OutputBind;
+		else
+			throw new RuntimeException("Invalid dataflow graph node: "
+					+ userLibraryData.getClass().getSimpleName());
+		Node node = new Node(nodes.size(), nodeType, userLibraryData, method);
+		nodes.add(node);
+		nodesByData.put(userLibraryData, node);
+		Map<String, Node> methodDefinitions = definitions.get(method);
+		if (methodDefinitions == null) {
+			methodDefinitions = new HashMap<>();
+			definitions.put(method, methodDefinitions);
+		}
+		for (Map.Entry<String, EdgeType> use : getUses(userLibraryData)
+				.entrySet()) {
+			Node source = methodDefinitions.get(use.getKey());
+			if (source != null) {
+				Edge edge = new Edge(source, node, use.getKey(),
+						use.getValue());
+				edges.add(edge);
+				source.outEdges.add(edge);
+				node.inEdges.add(edge);
+			}
+		}
+		for (String definition : getDefinitions(userLibraryData))
+			methodDefinitions.put(definition, node);
+		return node;
+	}
+
+	/**
+	 * Variables read by a given bind or operation. Operations read the input
+	 * variable of their fused producers and the external variables of their
+	 * fused operations.
+	 */
+	private Map<String, EdgeType> getUses(UserLibraryData userLibraryData) {
+		Map<String, EdgeType> uses = new LinkedHashMap<>();
+		if (userLibraryData instanceof InputBind) {
+			for (Parameter parameter : ((InputBind) userLibraryData).parameters) {
+				if (parameter instanceof Variable)
+					uses.put(((Variable) parameter).name, EdgeType.External);
+			}
+		} else if (userLibraryData instanceof Operation) {
+			Operation operation = (Operation) userLibraryData;
+			uses.put(operation.getInputVariable().name, EdgeType.UserLibrary);
+			for (Variable variable : operation.getExternalVariables())
+				uses.put(variable.name, EdgeType.External);
+		} else {
+			uses.put(userLibraryData.variable.name, EdgeType.UserLibrary);
+		}
+		return uses;
+	}
+
+	/**
+	 * Variables written by a given bind or operation. Foreach operations
+	 * write their own variable, while non-final external variables are
+	 * copied back by sequential operations.
+	 */
+	private List<String> getDefinitions(UserLibraryData userLibraryData) {
+		List<String> definitions = new ArrayList<>();
+		if (userLibraryData instanceof InputBind) {
+			definitions.add(userLibraryData.variable.name);
+		} else if (userLibraryData instanceof Operation) {
+			Operation operation = (Operation) userLibraryData;
+			if (operation.operationType == OperationType.Foreach
+					|| operation.destinationVariable == null)
+				definitions.add(operation.variable.name);
+			else
+				definitions.add(operation.destinationVariable.name);
+			for (Operation fusedOperation : operation.getFusedOperations())
+				definitions.add(fusedOperation.variable.name);
+			for (Variable variable : operation.getExternalVariables()) {
+				if (!variable.isFinal())
+					definitions.add(variable.name);
+			}
+		} else {
+			OutputBind outputBind = (OutputBind) userLibraryData;
+			if (outputBind.destinationObject != null)
+				definitions.add(outputBind.destinationObject.name);
+		}
+		return definitions;
+	}
+
+	/**
+	 * Renders the graph in Graphviz DOT format, with one cluster per method.
+	 * External variable edges are dashed.
+	 *
+	 * @param graphName
+	 *            Name of the graph, usually the class name.
+	 */
+	public String toDot(String graphName) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("digraph ").append(quote(graphName)).append(" {\n");
+		sb.append("\tnode [shape=box];\n");
+		Map<String, List<Node>> methods = new LinkedHashMap<>();
+		for (Node node : nodes) {
+			List<Node> methodNodes = methods.get(node.method);
+			if (methodNodes == null) {
+				methodNodes = new ArrayList<>();
+				methods.put(node.method, methodNodes);
+			}
+			methodNodes.add(node);
+		}
+		int cluster = 0;
+		for (Map.Entry<String, List<Node>> method : methods.entrySet()) {
+			String indentation = "\t";
+			if (method.getKey() != null) {
+				sb.append("\tsubgraph cluster_").append(cluster++)
+						.append(" {\n\t\tlabel=")
+						.append(quote(method.getKey())).append(";\n");
+				indentation = "\t\t";
+			}
+			for (Node node : method.getValue()) {
+				sb.append(indentation).append("n").append(node.id)
+						.append(" [label=\"").append(escape(node.getLabel()))
+						.append("\\n")
+						.append(escape(node.userLibraryData.variable.name))
+						.append(" (line ").append(node.getLine())
+						.append(")\"];\n");
+			}
+			if (method.getKey() != null)
+				sb.append("\t}\n");
+		}
+		for (Edge edge : edges) {
+			sb.append("\tn").append(edge.source.id).append(" -> n")
+					.append(edge.target.id).append(" [label=")
+					.append(quote(edge.variableName));
+			if (edge.edgeType == EdgeType.External)
+				sb.append(", style=dashed");
+			sb.append("];\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Renders the graph in JSON format.
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"nodes\": [");
+		boolean first = true;
+		for (Node node : nodes) {
+			sb.append(first ? "\n" : ",\n");
+			sb.append("    {\"id\": ").append(node.id)
+					.append(", \"type\": ")
+					.append(quote(node.nodeType.toString()));
+			if (node.nodeType == NodeType.Operation) {
+				Operation operation = (Operation) node.userLibraryData;
+				sb.append(", \"operation\": ")
+						.append(quote(operation.operationType.toString()))
+						.append(", \"fused\": [");
+				for (int i = 0; i < operation.getFusedOperations().size(); i++) {
+					sb.append(i > 0 ? ", " : "").append(
+							operation.getFusedOperations().get(i).sequentialNumber);
+				}
+				sb.append("], \"producers\": [");
+				Operation producer = operation.getProducerOperation();
+				while (producer != null) {
+					sb.append(producer.sequentialNumber);
+					producer = producer.getProducerOperation();
+					if (producer != null)
+						sb.append(", ");
+				}
+				sb.append("]");
+			}
+			sb.append(", \"number\": ")
+					.append(node.userLibraryData.sequentialNumber)
+					.append(", \"variable\": ")
+					.append(quote(node.userLibraryData.variable.name))
+					.append(", \"method\": ")
+					.append(node.method == null ? "null" : quote(node.method))
+					.append(", \"line\": ").append(node.getLine()).append("}");
+			first = false;
+		}
+		sb.append(first ? "],\n" : "\n  ],\n");
+		sb.append("  \"edges\": [");
+		first = true;
+		for (Edge edge : edges) {
+			sb.append(first ? "\n" : ",\n");
+			sb.append("    {\"source\": ").append(edge.source.id)
+					.append(", \"target\": ").append(edge.target.id)
+					.append(", \"variable\": ")
+					.append(quote(edge.variableName)).append(", \"type\": ")
+					.append(quote(edge.edgeType.toString())).append("}");
+			first = false;
+		}
+		sb.append(first ? "]\n" : "\n  ]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static String quote(String value) {
+		return "\"" + escape(value) + "\"";
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
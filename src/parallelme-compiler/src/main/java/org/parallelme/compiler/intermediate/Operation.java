@@ -33,6 +33,8 @@ public class Operation extends UserLibraryData {
 
 	private UserFunction userFunctionData;
 	private ArrayList<Variable> externalVariables;
+	private ArrayList<Operation> fusedOperations;
+	private Operation producerOperation;
 
 	private ExecutionType executionType;
 
@@ -41,6 +43,7 @@ public class Operation extends UserLibraryData {
 			Variable destinationVariable) {
 		super(variable, sequentialNumber);
 		this.externalVariables = new ArrayList<>();
+		this.fusedOperations = new ArrayList<>();
 		this.setExecutionType(executionType);
 		this.statementAddress = statementAddress;
 		this.operationType = operationType;
@@ -63,6 +66,85 @@ public class Operation extends UserLibraryData {
 		this.externalVariables.add(variable);
 	}
 
+	/**
+	 * Operations fused into this one, in the order their user functions must
+	 * be called after this operation's user function.
+	 */
+	public List<Operation> getFusedOperations() {
+		return fusedOperations;
+	}
+
+	/**
+	 * Fuses a given operation into this one, so both user functions are
+	 * called by the same kernel. External variables of the fused operation
+	 * are added to this operation's external variables, since they must be
+	 * provided by the same runtime call. Fused operations are adjacent in
+	 * the user code, so variables with the same name are the same variable.
+	 */
+	public void fuse(Operation operation) {
+		this.fusedOperations.add(operation);
+		this.addExternalVariables(operation);
+	}
+
+	/**
+	 * Operation that produces this operation's input and was fused into it,
+	 * or null if there is none. Producer's result is computed inside this
+	 * operation's kernels for each element read, instead of being stored in
+	 * its destination variable.
+	 */
+	public Operation getProducerOperation() {
+		return producerOperation;
+	}
+
+	/**
+	 * Operation of a given type among the producers fused into this
+	 * operation, directly or through another producer, or null if there is
+	 * none.
+	 */
+	public Operation getProducerOperation(OperationType operationType) {
+		Operation producer = this.producerOperation;
+		while (producer != null && producer.operationType != operationType)
+			producer = producer.producerOperation;
+		return producer;
+	}
+
+	/**
+	 * Fuses the operation that produces this operation's input into this
+	 * one. As in fuse(), its external variables are added to this
+	 * operation's external variables.
+	 */
+	public void fuseProducer(Operation operation) {
+		this.producerOperation = operation;
+		this.addExternalVariables(operation);
+	}
+
+	/**
+	 * Variable whose data is read by this operation's kernels: the input
+	 * variable of the producer operation in case there is one, or this
+	 * operation's variable otherwise. Producers may have producers of their
+	 * own, so the first operation of the chain is the one whose variable is
+	 * read.
+	 */
+	public Variable getInputVariable() {
+		return this.producerOperation != null ? this.producerOperation
+				.getInputVariable() : this.variable;
+	}
+
+	private void addExternalVariables(Operation operation) {
+		for (Variable variable : operation.getExternalVariables()) {
+			if (!this.hasExternalVariable(variable.name))
+				this.externalVariables.add(variable);
+		}
+	}
+
+	private boolean hasExternalVariable(String name) {
+		for (Variable variable : this.externalVariables) {
+			if (variable.name.equals(name))
+				return true;
+		}
+		return false;
+	}
+
 	public ExecutionType getExecutionType() {
 		return executionType;
 	}
@@ -19,11 +19,15 @@ public class OperationsAndBinds {
 	public final List<InputBind> inputBinds;
 	public final List<Operation> operations;
 	public final List<OutputBind> outputBinds;
+	// Def-use relations between the binds and operations above.
+	public final DataflowGraph dataflowGraph;
 
 	public OperationsAndBinds(List<InputBind> inputBinds,
-			List<Operation> operations, List<OutputBind> outputBinds) {
+			List<Operation> operations, List<OutputBind> outputBinds,
+			DataflowGraph dataflowGraph) {
 		this.inputBinds = inputBinds;
 		this.operations = operations;
 		this.outputBinds = outputBinds;
+		this.dataflowGraph = dataflowGraph;
 	}
 }
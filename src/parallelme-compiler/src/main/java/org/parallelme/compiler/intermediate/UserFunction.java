@@ -10,6 +10,8 @@ package org.parallelme.compiler.intermediate;
 
 import java.util.List;
 
+import org.parallelme.compiler.symboltable.TokenAddress;
+
 /**
  * Stores user function data that must be translated to the target runtime.
  * 
@@ -18,9 +20,18 @@ import java.util.List;
 public class UserFunction {
 	public final String Code;
 	public final List<Variable> arguments;
+	// Address of the user function body in the source file, or null if
+	// unknown.
+	public final TokenAddress tokenAddress;
 
 	public UserFunction(String Code, List<Variable> arguments) {
+		this(Code, arguments, null);
+	}
+
+	public UserFunction(String Code, List<Variable> arguments,
+			TokenAddress tokenAddress) {
 		this.Code = Code;
 		this.arguments = arguments;
+		this.tokenAddress = tokenAddress;
 	}
 }
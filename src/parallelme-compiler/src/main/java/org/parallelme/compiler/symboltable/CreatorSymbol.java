@@ -32,7 +32,7 @@ public class CreatorSymbol extends Symbol {
 			TokenAddress tokenAddress, TokenAddress statementAddress,
 			int identifier) {
 		super(name, enclosingScope, tokenAddress, identifier);
-		this.typeName = typeName;
+		this.typeName = typeName != null ? typeName.intern() : null;
 		this.attributedObjectName = attributedObjectName;
 		this.typeParameters = typeParameters;
 		this.arguments = arguments;
@@ -23,7 +23,7 @@ public class MethodSymbol extends Symbol {
 			Collection<Symbol> arguments, Symbol enclosingScope,
 			TokenAddress tokenAddress, int identifier) {
 		super(name, enclosingScope, tokenAddress, identifier);
-		this.returnType = returnType;
+		this.returnType = returnType != null ? returnType.intern() : null;
 		this.arguments = arguments;
 		for (Symbol argument : arguments)
 			this.addSymbol(argument);
@@ -8,13 +8,45 @@
 
 package org.parallelme.compiler.symboltable;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A symbol for root definition on the symbol table.
  * 
+ * Besides the table hierarchy, the root keeps every scope symbol (classes,
+ * methods and creators) created under it indexed by its token address, so
+ * later passes can resume a scope from the parse tree node that created it.
+ * 
  * @author Wilson de Carvalho
  */
 public class RootSymbol extends Symbol {
+	private final Map<TokenAddress, Symbol> scopes = new HashMap<>();
+
 	public RootSymbol() {
 		super("PM_", null, null, Integer.MIN_VALUE);
 	}
+
+	/**
+	 * Indexes a scope symbol by its token address. Scopes must be indexed when
+	 * created, since symbols with the same name replace each other on the
+	 * table hierarchy (e.g. overloaded methods) but must still be found here.
+	 * 
+	 * @param scope
+	 *            Scope symbol that was created under this root.
+	 */
+	public void addScope(Symbol scope) {
+		this.scopes.put(scope.tokenAddress, scope);
+	}
+
+	/**
+	 * Search for the scope symbol created for a given token address.
+	 * 
+	 * @param tokenAddress
+	 *            Token address of the scope symbol.
+	 * @return Scope symbol if found, null otherwise.
+	 */
+	public Symbol getScope(TokenAddress tokenAddress) {
+		return this.scopes.get(tokenAddress);
+	}
 }
@@ -9,17 +9,30 @@
 package org.parallelme.compiler.symboltable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Abstract symbol definition for scope-drive symbol table creation. It must be
  * inherited to define proper symbol types.
  * 
+ * Besides the inner symbols themselves, each scope keeps them indexed by
+ * symbol class and caches the results of getSymbolsUnderScope and getSymbols.
+ * A scope shares a version stamp with its enclosing scopes, so results of
+ * getSymbolsUnderScope are rebuilt only after a symbol is added to this scope
+ * or to any of its enclosing scopes, and results of getSymbols only after a
+ * symbol is added to this scope or to one of its inner scopes. Inner symbols
+ * must therefore be added exclusively with addSymbol.
+ * 
+ * Symbol names are interned, so they may be compared by reference.
+ * 
  * @author Wilson de Carvalho
  */
 public abstract class Symbol {
+	// Must be modified only through addSymbol.
 	public final LinkedHashMap<String, Symbol> innerSymbols;
 
 	public final String name;
@@ -28,12 +41,61 @@ public abstract class Symbol {
 	// Symbol's unique identifier
 	public final int identifier;
 
+	// Inner symbols indexed by their classes
+	private final Map<Class<?>, LinkedHashMap<String, Symbol>> innerSymbolsByClass = new HashMap<>();
+	// Scope where this symbol was added
+	private Symbol parent;
+	// Number of symbols added to this scope and its enclosing scopes, shared
+	// by all scopes created under the same enclosing scope chain
+	private final Version version;
+	// Number of symbols added to this scope and all its inner scopes
+	private int treeModifications = 0;
+	private final Map<Class<?>, ScopeView> symbolsUnderScopeCache = new HashMap<>();
+	private final Map<Class<?>, TreeView> symbolsCache = new HashMap<>();
+
+	/**
+	 * Version stamp of a chain of enclosing scopes.
+	 */
+	private static class Version {
+		int value = 0;
+	}
+
+	/**
+	 * Cached result of getSymbolsUnderScope, valid as long as no symbols were
+	 * added to this scope nor to its enclosing scopes.
+	 */
+	private static class ScopeView {
+		final int version;
+		final Map<String, Symbol> symbols;
+
+		ScopeView(int version, Map<String, Symbol> symbols) {
+			this.version = version;
+			this.symbols = symbols;
+		}
+	}
+
+	/**
+	 * Cached result of getSymbols, valid as long as no symbols were added to
+	 * this scope nor to its inner scopes.
+	 */
+	private static class TreeView {
+		final int treeModifications;
+		final List<Symbol> symbols;
+
+		TreeView(int treeModifications, List<Symbol> symbols) {
+			this.treeModifications = treeModifications;
+			this.symbols = symbols;
+		}
+	}
+
 	public Symbol(String name, Symbol enclosingScope, TokenAddress tokenAddress, int identifier) {
 		this.innerSymbols = new LinkedHashMap<>();
-		this.name = name;
+		this.name = name != null ? name.intern() : null;
 		this.enclosingScope = enclosingScope;
 		this.tokenAddress = tokenAddress;
 		this.identifier = identifier;
+		this.version = enclosingScope != null ? enclosingScope.version
+				: new Version();
 	}
 
 	/**
@@ -50,8 +112,9 @@ public abstract class Symbol {
 	 * @return Symbol object if found, null otherwise.
 	 */
 	public Symbol getSymbolUnderScope(String name) {
-		if (this.innerSymbols.containsKey(name))
-			return this.innerSymbols.get(name);
+		Symbol symbol = this.innerSymbols.get(name);
+		if (symbol != null)
+			return symbol;
 		else if (this.enclosingScope != null)
 			return this.enclosingScope.getSymbolUnderScope(name);
 		else
@@ -75,9 +138,9 @@ public abstract class Symbol {
 	 * @return Symbol object if found, null otherwise.
 	 */
 	public Symbol getSymbolUnderScope(String name, Class<?> symbolClass) {
-		if (this.innerSymbols.containsKey(name)
-				&& this.innerSymbols.get(name).getClass() == symbolClass)
-			return this.innerSymbols.get(name);
+		Symbol symbol = this.getInnerSymbol(name, symbolClass);
+		if (symbol != null)
+			return symbol;
 		else if (this.enclosingScope != null)
 			return this.enclosingScope.getSymbolUnderScope(name, symbolClass);
 		else
@@ -87,20 +150,32 @@ public abstract class Symbol {
 	/**
 	 * Search for all symbols of a provided class under this scope.
 	 * 
+	 * Cost:
+	 * 
+	 * O(1) when the result is cached. The result is only rebuilt after
+	 * symbols are added to this scope or its enclosing scopes.
+	 * 
 	 * @param symbolClass
 	 *            The symbol class that is being searched.
 	 * 
-	 * @return A map of symbols with with their names as keys.
+	 * @return An unmodifiable map of symbols with with their names as keys.
 	 */
 	public Map<String, Symbol> getSymbolsUnderScope(Class<?> symbolClass) {
-		HashMap<String, Symbol> ret = new HashMap<>();
-		for (Symbol symbol : this.innerSymbols.values()) {
-			if (symbol.getClass() == symbolClass)
-				ret.put(symbol.name, symbol);
+		ScopeView view = this.symbolsUnderScopeCache.get(symbolClass);
+		if (view == null || view.version != this.version.value) {
+			HashMap<String, Symbol> ret = new HashMap<>();
+			LinkedHashMap<String, Symbol> symbols = this.innerSymbolsByClass
+					.get(symbolClass);
+			if (symbols != null)
+				ret.putAll(symbols);
+			if (this.enclosingScope != null)
+				ret.putAll(this.enclosingScope
+						.getSymbolsUnderScope(symbolClass));
+			view = new ScopeView(this.version.value,
+					Collections.unmodifiableMap(ret));
+			this.symbolsUnderScopeCache.put(symbolClass, view);
 		}
-		if (this.enclosingScope != null)
-			ret.putAll(this.enclosingScope.getSymbolsUnderScope(symbolClass));
-		return ret;
+		return view.symbols;
 	}
 
 	/**
@@ -124,11 +199,7 @@ public abstract class Symbol {
 	 * @return Symbol object if found, null otherwise.
 	 */
 	public Symbol getInnerSymbol(String name) {
-		Symbol symbol = null;
-		if (this.innerSymbols.containsKey(name)) {
-			symbol = this.innerSymbols.get(name);
-		}
-		return symbol;
+		return this.innerSymbols.get(name);
 	}
 
 	/**
@@ -142,33 +213,39 @@ public abstract class Symbol {
 	 * @return Symbol object if found, null otherwise.
 	 */
 	public Symbol getInnerSymbol(String name, Class<?> symbolClass) {
-		Symbol symbol = null;
-		if (this.innerSymbols.containsKey(name)) {
-			if (this.innerSymbols.get(name).getClass() == symbolClass) {
-				symbol = this.innerSymbols.get(name);
-			}
-		}
-		return symbol;
+		LinkedHashMap<String, Symbol> symbols = this.innerSymbolsByClass
+				.get(symbolClass);
+		return symbols != null ? symbols.get(name) : null;
 	}
 
 	/**
 	 * Search for all symbols of a provided class under this scope and among the
 	 * scope of the inner symbols.
 	 * 
+	 * Cost:
+	 * 
+	 * O(1) when the result is cached. The result is only rebuilt after
+	 * symbols are added to this scope or its inner scopes.
+	 * 
 	 * @param symbolClass
 	 *            The symbol class that is being searched.
 	 * 
-	 * @return An array of symbols of the informed class.
+	 * @return An unmodifiable list of symbols of the informed class.
 	 */
-	public ArrayList<Symbol> getSymbols(Class<?> symbolClass) {
-		ArrayList<Symbol> ret = new ArrayList<>();
-		for (Symbol symbol : this.innerSymbols.values()) {
-			if (symbol.getClass() == symbolClass)
-				ret.add(symbol);
-			if (symbol.innerSymbols != null)
-				ret.addAll(symbol.getSymbols(symbolClass));
+	public List<Symbol> getSymbols(Class<?> symbolClass) {
+		TreeView view = this.symbolsCache.get(symbolClass);
+		if (view == null || view.treeModifications != this.treeModifications) {
+			ArrayList<Symbol> symbols = new ArrayList<>();
+			for (Symbol symbol : this.innerSymbols.values()) {
+				if (symbol.getClass() == symbolClass)
+					symbols.add(symbol);
+				symbols.addAll(symbol.getSymbols(symbolClass));
+			}
+			view = new TreeView(this.treeModifications,
+					Collections.unmodifiableList(symbols));
+			this.symbolsCache.put(symbolClass, view);
 		}
-		return ret;
+		return view.symbols;
 	}
 
 	/**
@@ -189,7 +266,21 @@ public abstract class Symbol {
 	}
 
 	public void addSymbol(Symbol symbol) {
-		this.innerSymbols.put(symbol.name, symbol);
+		Symbol replaced = this.innerSymbols.put(symbol.name, symbol);
+		if (replaced != null)
+			this.innerSymbolsByClass.get(replaced.getClass()).remove(
+					replaced.name);
+		LinkedHashMap<String, Symbol> symbols = this.innerSymbolsByClass
+				.get(symbol.getClass());
+		if (symbols == null) {
+			symbols = new LinkedHashMap<>();
+			this.innerSymbolsByClass.put(symbol.getClass(), symbols);
+		}
+		symbols.put(symbol.name, symbol);
+		symbol.parent = this;
+		this.version.value++;
+		for (Symbol scope = this; scope != null; scope = scope.parent)
+			scope.treeModifications++;
 	}
 
 	@Override
@@ -32,4 +32,10 @@ public class TokenAddress {
 			return foo.start == this.start && foo.stop == this.stop;
 		}
 	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(this.start)
+				+ System.identityHashCode(this.stop);
+	}
 }
\ No newline at end of file
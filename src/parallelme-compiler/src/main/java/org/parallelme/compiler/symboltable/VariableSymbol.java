@@ -26,9 +26,9 @@ public class VariableSymbol extends Symbol {
 			Symbol enclosingScope, TokenAddress tokenAddress,
 			TokenAddress statementAddress, int identifier) {
 		super(name, enclosingScope, tokenAddress, identifier);
-		this.typeName = typeName;
+		this.typeName = typeName != null ? typeName.intern() : null;
 		this.typeParameters = typeParameters;
-		this.modifier = modifier;
+		this.modifier = modifier != null ? modifier.intern() : null;
 		this.statementAddress = statementAddress;
 	}
 
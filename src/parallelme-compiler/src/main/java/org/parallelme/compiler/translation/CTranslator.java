@@ -8,6 +8,10 @@
 
 package org.parallelme.compiler.translation;
 
+import java.util.Map;
+
+import org.parallelme.compiler.intermediate.UserFunction;
+
 /**
  * Defines the contract of a C code translator that will be used to translate
  * operations' code to C.
@@ -16,11 +20,16 @@ package org.parallelme.compiler.translation;
  */
 public interface CTranslator {
 	/**
-	 * Translate an informed Java code to C.
+	 * Translate the code of an informed user function to C.
 	 * 
-	 * @param javaCode
-	 *            Java code that must be translated to C.
+	 * @param userFunction
+	 *            User function whose code must be translated to C. Types and
+	 *            fields of its arguments are replaced by their C equivalents.
+	 * @param renamedVariables
+	 *            Variables that must have their references replaced in the
+	 *            translated code, indexed by their original name.
 	 * @return String with code translated to C.
 	 */
-	public String translate(String javaCode);
+	public String translate(UserFunction userFunction,
+			Map<String, String> renamedVariables);
 }
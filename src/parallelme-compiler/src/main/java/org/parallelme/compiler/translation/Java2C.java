@@ -8,18 +8,366 @@
 
 package org.parallelme.compiler.translation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStreamRewriter;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.parallelme.compiler.Diagnostic;
+import org.parallelme.compiler.antlr.JavaBaseListener;
+import org.parallelme.compiler.antlr.JavaLexer;
+import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.antlr.JavaParser.BlockContext;
+import org.parallelme.compiler.antlr.JavaParser.ClassCreatorRestContext;
+import org.parallelme.compiler.antlr.JavaParser.ClassOrInterfaceTypeContext;
+import org.parallelme.compiler.antlr.JavaParser.CreatedNameContext;
+import org.parallelme.compiler.antlr.JavaParser.ExpressionContext;
+import org.parallelme.compiler.antlr.JavaParser.ExpressionListContext;
+import org.parallelme.compiler.antlr.JavaParser.LocalVariableDeclarationContext;
+import org.parallelme.compiler.antlr.JavaParser.PrimaryContext;
+import org.parallelme.compiler.antlr.JavaParser.PrimitiveTypeContext;
+import org.parallelme.compiler.antlr.JavaParser.VariableDeclaratorContext;
+import org.parallelme.compiler.intermediate.UserFunction;
+import org.parallelme.compiler.intermediate.Variable;
+import org.parallelme.compiler.userlibrary.UserLibraryClass;
+import org.parallelme.compiler.userlibrary.UserLibraryClassFactory;
+import org.parallelme.compiler.userlibrary.UserLibraryDataType;
+import org.parallelme.compiler.userlibrary.classes.Pixel;
+
 /**
- * Java2C wrapper.
+ * Translates user functions to C by walking their parse tree once. Only the
+ * tokens that differ in C are rewritten, so the layout of the user code is
+ * kept in the translated code.
+ * 
+ * The following constructions are translated:
+ * 
+ * <pre>
+ * User library, primitive and boxed types: Pixel to float4, Int32 to int,
+ * boolean to bool, etc;
+ * 
+ * Pixel fields: rgba.red, rgba.green, rgba.blue and rgba.alpha to s0, s1, s2
+ * and s3, and the coordinates of Pixel arguments (x and y) to the kernel
+ * coordinates;
+ * 
+ * Numeric user library objects: value field to the variable itself and
+ * creation (e.g. new Float32()) to the value informed, or zero;
+ * 
+ * Math class functions and constants to their C equivalents;
+ * 
+ * Renamed variables, like external variables stored as globals.
+ * </pre>
+ * 
+ * Each user function is parsed only once, no matter how many times it is
+ * translated, and its syntax errors are recorded as diagnostics.
  * 
  * @author Wilson de Carvalho
  */
 public class Java2C implements CTranslator {
+	private static final Map<String, String> mathMembers = new HashMap<>();
+	private static final Map<String, String> pixelFields = new HashMap<>();
+
+	static {
+		mathMembers.put("abs", "fabs");
+		mathMembers.put("signum", "sign");
+		mathMembers.put("toRadians", "radians");
+		mathMembers.put("toDegrees", "degrees");
+		mathMembers.put("PI", "M_PI");
+		mathMembers.put("E", "M_E");
+		pixelFields.put("red", "s0");
+		pixelFields.put("green", "s1");
+		pixelFields.put("blue", "s2");
+		pixelFields.put("alpha", "s3");
+	}
+
+	private final List<Diagnostic> diagnostics;
+	// Source file of the user functions being translated.
+	private String file = null;
+	// Token stream and parse tree of each user function already parsed.
+	private final Map<UserFunction, ParsedFunction> parsedFunctions = Collections
+			.synchronizedMap(new WeakHashMap<UserFunction, ParsedFunction>());
+
+	private static class ParsedFunction {
+		public final CommonTokenStream tokenStream;
+		public final BlockContext block;
+
+		public ParsedFunction(CommonTokenStream tokenStream, BlockContext block) {
+			this.tokenStream = tokenStream;
+			this.block = block;
+		}
+	}
+
+	public Java2C() {
+		this(new ArrayList<Diagnostic>());
+	}
+
+	/**
+	 * @param diagnostics
+	 *            List where syntax errors of user functions are recorded.
+	 */
+	public Java2C(List<Diagnostic> diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * Sets the source file of the user functions translated from now on, so
+	 * their syntax errors are reported with the file name.
+	 * 
+	 * @param file
+	 *            Source file name.
+	 */
+	public void setFile(String file) {
+		this.file = file;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String translate(String javaCode) {
-		// TODO Integrate Java2C.
-		return javaCode;
+	public String translate(UserFunction userFunction,
+			Map<String, String> renamedVariables) {
+		ParsedFunction parsedFunction = this.parsedFunctions.get(userFunction);
+		if (parsedFunction == null) {
+			parsedFunction = this.parse(userFunction);
+			this.parsedFunctions.put(userFunction, parsedFunction);
+		}
+		TokenStreamRewriter rewriter = new TokenStreamRewriter(
+				parsedFunction.tokenStream);
+		new ParseTreeWalker().walk(new CodeTranslator(rewriter,
+				userFunction.arguments, renamedVariables),
+				parsedFunction.block);
+		return rewriter.getText();
+	}
+
+	/**
+	 * Parses a user function body with the same two stage strategy used by
+	 * the compiler: SLL prediction first and full LL only if it fails. Syntax
+	 * errors found by the LL stage are recorded as diagnostics of the current
+	 * file, with their lines in the source file when the user function
+	 * address is known.
+	 */
+	private ParsedFunction parse(final UserFunction userFunction) {
+		CommonTokenStream tokenStream = new CommonTokenStream(new JavaLexer(
+				new ANTLRInputStream(userFunction.Code)));
+		tokenStream.fill();
+		JavaParser parser = new JavaParser(tokenStream);
+		parser.removeErrorListeners();
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			return new ParsedFunction(tokenStream, parser.block());
+		} catch (ParseCancellationException e) {
+			tokenStream.seek(0);
+			parser.reset();
+			final String file = this.file;
+			parser.addErrorListener(new BaseErrorListener() {
+				@Override
+				public void syntaxError(Recognizer<?, ?> recognizer,
+						Object offendingSymbol, int line,
+						int charPositionInLine, String msg,
+						RecognitionException e) {
+					if (userFunction.tokenAddress == null) {
+						diagnostics.add(new Diagnostic(Diagnostic.Kind.Error,
+								file, -1, "Invalid user function code, line "
+										+ line + ":" + charPositionInLine
+										+ " " + msg));
+					} else {
+						// Lines are counted from the opening brace of the
+						// user function in the source file.
+						diagnostics.add(new Diagnostic(Diagnostic.Kind.Error,
+								file, userFunction.tokenAddress.start
+										.getLine() + line - 1,
+								"Invalid user function code: " + msg));
+					}
+				}
+			});
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return new ParsedFunction(tokenStream, parser.block());
+		}
+	}
+
+	/**
+	 * Returns the C equivalent of a Java type, or null if it must be kept.
+	 */
+	private static String translateType(String typeName) {
+		UserLibraryClass userLibraryClass = UserLibraryClassFactory
+				.getClass(typeName);
+		if (userLibraryClass instanceof UserLibraryDataType)
+			return ((UserLibraryDataType) userLibraryClass).getCType();
+		else if (BoxedTypes.isBoxed(typeName))
+			return BoxedTypes.getCType(typeName);
+		else if (PrimitiveTypes.isPrimitive(typeName))
+			return PrimitiveTypes.getCType(typeName);
+		return null;
+	}
+
+	/**
+	 * Listener that rewrites the tokens of a single user function.
+	 */
+	private static class CodeTranslator extends JavaBaseListener {
+		private final TokenStreamRewriter rewriter;
+		private final Map<String, String> renamedVariables;
+		// Type of arguments and local variables, indexed by name.
+		private final Map<String, String> variableTypes = new HashMap<>();
+		private final Map<String, String> argumentTypes = new HashMap<>();
+
+		public CodeTranslator(TokenStreamRewriter rewriter,
+				List<Variable> arguments, Map<String, String> renamedVariables) {
+			this.rewriter = rewriter;
+			this.renamedVariables = renamedVariables;
+			for (Variable argument : arguments)
+				this.argumentTypes.put(argument.name, argument.typeName);
+			this.variableTypes.putAll(this.argumentTypes);
+		}
+
+		@Override
+		public void enterLocalVariableDeclaration(
+				LocalVariableDeclarationContext ctx) {
+			String typeName = ctx.type().getText();
+			for (VariableDeclaratorContext declarator : ctx
+					.variableDeclarators().variableDeclarator())
+				this.variableTypes.put(declarator.variableDeclaratorId()
+						.Identifier().getText(), typeName);
+		}
+
+		@Override
+		public void enterClassOrInterfaceType(ClassOrInterfaceTypeContext ctx) {
+			if (ctx.getChildCount() == 1)
+				this.replaceType(ctx, ctx.getText());
+		}
+
+		@Override
+		public void enterPrimitiveType(PrimitiveTypeContext ctx) {
+			this.replaceType(ctx, ctx.getText());
+		}
+
+		private void replaceType(ParserRuleContext ctx, String typeName) {
+			String cType = translateType(typeName);
+			if (cType != null && !cType.isEmpty() && !cType.equals(typeName))
+				this.rewriter.replace(ctx.start, ctx.stop, cType);
+		}
+
+		@Override
+		public void enterPrimary(PrimaryContext ctx) {
+			if (ctx.Identifier() == null)
+				return;
+			String newName = this.renamedVariables.get(ctx.Identifier()
+					.getText());
+			if (newName == null)
+				return;
+			// A dereference must be enclosed when followed by a postfix
+			// operator, which has higher precedence.
+			ParseTree expression = ctx.getParent();
+			ParseTree parent = expression.getParent();
+			if (newName.startsWith("*") && parent instanceof ExpressionContext
+					&& parent.getChildCount() > 1
+					&& parent.getChild(0) == expression) {
+				String operator = parent.getChild(1).getText();
+				if (operator.equals("++") || operator.equals("--")
+						|| operator.equals("[") || operator.equals("."))
+					newName = "(" + newName + ")";
+			}
+			this.rewriter.replace(ctx.start, newName);
+		}
+
+		@Override
+		public void enterExpression(ExpressionContext ctx) {
+			if (ctx.getChildCount() == 3 && ctx.Identifier() != null
+					&& ctx.getChild(1).getText().equals("."))
+				this.translateFieldAccess(ctx);
+			else if (ctx.creator() != null)
+				this.translateCreator(ctx);
+		}
+
+		private void translateFieldAccess(ExpressionContext ctx) {
+			ExpressionContext target = ctx.expression(0);
+			String field = ctx.Identifier().getText();
+			String targetName = this.getIdentifier(target);
+			if (targetName != null) {
+				String typeName = this.variableTypes.get(targetName);
+				if (targetName.equals("Math") && typeName == null) {
+					String member = mathMembers.get(field);
+					this.rewriter.replace(ctx.start, ctx.stop,
+							member == null ? field : member);
+				} else if (this.isNumeric(typeName) && field.equals("value")) {
+					this.rewriter.delete(this.getToken(ctx.getChild(1)),
+							ctx.stop);
+				} else if (this.isPixel(this.argumentTypes.get(targetName))
+						&& (field.equals("x") || field.equals("y"))) {
+					this.rewriter.replace(ctx.start, ctx.stop, field);
+				}
+			} else if (target.getChildCount() == 3
+					&& target.Identifier() != null
+					&& target.Identifier().getText().equals("rgba")
+					&& pixelFields.containsKey(field)) {
+				String pixelName = this.getIdentifier(target.expression(0));
+				if (pixelName != null
+						&& this.isPixel(this.variableTypes.get(pixelName)))
+					this.rewriter.replace(this.getToken(target.getChild(1)),
+							ctx.stop, "." + pixelFields.get(field));
+			}
+		}
+
+		/**
+		 * Numeric user library objects are plain C variables, so their
+		 * creation is replaced by the value informed.
+		 */
+		private void translateCreator(ExpressionContext ctx) {
+			CreatedNameContext createdName = ctx.creator().createdName();
+			ClassCreatorRestContext creatorRest = ctx.creator()
+					.classCreatorRest();
+			if (createdName == null || createdName.getChildCount() != 1
+					|| creatorRest == null || creatorRest.classBody() != null
+					|| !this.isNumeric(createdName.getText()))
+				return;
+			ExpressionListContext arguments = creatorRest.arguments()
+					.expressionList();
+			if (arguments == null)
+				this.rewriter.replace(ctx.start, ctx.stop, "0");
+			else if (arguments.expression().size() == 1)
+				this.rewriter.delete(ctx.start, createdName.stop);
+		}
+
+		/**
+		 * Returns the identifier of an expression made of a single variable,
+		 * or null if it is anything else.
+		 */
+		private String getIdentifier(ExpressionContext ctx) {
+			if (ctx.primary() != null && ctx.getChildCount() == 1
+					&& ctx.primary().Identifier() != null)
+				return ctx.primary().Identifier().getText();
+			return null;
+		}
+
+		private Token getToken(ParseTree node) {
+			return ((TerminalNode) node).getSymbol();
+		}
+
+		private boolean isPixel(String typeName) {
+			return Pixel.getInstance().getClassName().equals(typeName);
+		}
+
+		private boolean isNumeric(String typeName) {
+			return typeName != null
+					&& !this.isPixel(typeName)
+					&& UserLibraryClassFactory.getClass(typeName) instanceof UserLibraryDataType;
+		}
 	}
 }
@@ -22,7 +22,9 @@ import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.ArrayTranslator;
 import org.parallelme.compiler.userlibrary.UserLibraryClassFactory;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for Array translation to RenderScript runtime.
@@ -30,17 +32,8 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
-	private static final String templateInputBindObjCreation = "<allocation> = Allocation.createSized(PM_mRS, Element.<elementType>(PM_mRS), <inputArray>.length);\n"
-			+ "<allocation>.copyFrom(<inputArray>);";
-	private static final String templateOutputBindCall1 = "<baseType>[] <name>;\n"
-			+ "if (<inputAllocation> != null) {\n"
-			+ "\tint <size> = <inputAllocation>.getType().getX();\n"
-			+ "\t<size> = <fromImageVar> ? <size> * 4 : <size>;\n"
-			+ "\t<name> = new <baseType>[<size>];\n"
-			+ "\t<inputAllocation>.copyTo(<name>);\n"
-			+ "} else {\n"
-			+ "\t<name> = new <baseType>[0];\n" + "}\n" + "return <name>;";
-	private static final String templateOutputBindCall2 = "<inputObject>.copyTo(<destinationObject>);";
+	private static final STGroup templates = Templates
+			.load(RSArrayTranslator.class);
 
 	public RSArrayTranslator(CTranslator cCodeTranslator) {
 		super(cCodeTranslator);
@@ -62,7 +55,7 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 			InputBind inputBind) {
 		String inputObject = commonDefinitions
 				.getVariableOutName(inputBind.variable);
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		// TODO Check if parameters array has size 1, otherwise throw an
 		// exception and abort translation.
 		st.add("inputArray", inputBind.parameters.get(0));
@@ -130,7 +123,7 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 		// object type and name.
 		ST st;
 		if (outputBind.outputBindType != OutputBindType.None) {
-			st = new ST(templateOutputBindCall1);
+			st = templates.getInstanceOf("outputBindCall1");
 			st.add("name", commonDefinitions.getPrefix() + "javaArray");
 			st.add("size", commonDefinitions.getPrefix() + "size");
 			st.add("fromImageVar", commonDefinitions
@@ -140,7 +133,7 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 			st.add("baseType", baseType);
 			st.add("inputAllocation", allocationObject);
 		} else {
-			st = new ST(templateOutputBindCall2);
+			st = templates.getInstanceOf("outputBindCall2");
 			st.add("inputObject", allocationObject);
 			st.add("destinationObject", destinationObject);
 		}
@@ -159,10 +152,12 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 	 */
 	@Override
 	protected String translateReduce(Operation operation) {
-		ST st = new ST(templateReduce);
-		ST stForLoop = new ST(templateForLoop);
-		ST stForLoop2 = new ST(templateForLoop);
-		ST stForBody = new ST(templateReduceForBody);
+		if (operation.getProducerOperation(OperationType.Filter) != null)
+			return translateFilteredReduce(operation);
+		ST st = templates.getInstanceOf("reduce");
+		ST stForLoop = templates.getInstanceOf("forLoop");
+		ST stForLoop2 = templates.getInstanceOf("forLoop");
+		ST stForBody = templates.getInstanceOf("reduceForBody");
 		stForBody.add("yVar", null);
 		String xVar = commonDefinitions.getPrefix() + "x";
 		stForLoop.add("varName", xVar);
@@ -180,6 +175,7 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 		String varType = commonDefinitions.translateToCType(inputVar1.typeName);
 		st.add("varType", varType);
 		stForBody.add("varType", varType);
+		setElementRead(stForBody, null, varType);
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		String dataVar = isSequential ? getInputDataVariableName(operation)
 				: getTileVariableName(operation);
@@ -205,6 +201,9 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 		st.addAggr("forLoop.{loop}", stForLoop.render());
 		stForBody.remove("dataVar");
 		stForBody.add("dataVar", getInputDataVariableName(operation));
+		stForBody.remove("readType");
+		stForBody.remove("mapFunction");
+		setElementRead(stForBody, operation.getProducerOperation(), varType);
 		if (!isSequential) {
 			stForLoop2.add("initValue", String.format(
 					"(int) pow(floor(sqrt((float)%s)), 2)",
@@ -222,6 +221,89 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 				FunctionType.BaseOperation);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String translateParallelReduceTile(Operation operation) {
+		if (operation.getProducerOperation(OperationType.Filter) == null)
+			return super.translateParallelReduceTile(operation);
+		ST st = templates.getInstanceOf("filteredReduceTile");
+		String baseVar = getBaseVariableName();
+		String sizeVar = getAllocationDimCall("X",
+				getTileVariableName(operation));
+		st.add("baseVar", baseVar);
+		st.add("sizeVar", sizeVar);
+		st.add("forBody", getFilteredReduceForBody(operation, baseVar + " + "
+				+ commonDefinitions.getPrefix() + "x"));
+		st.add("foundAllocation", getTileFoundVariableName(operation));
+		setFilteredReduceVariables(operation, st);
+		return createKernelFunction(operation, st.render(), FunctionType.Tile);
+	}
+
+	/**
+	 * Translates a parallel reduce whose input is filtered by a fused filter
+	 * operation. Each tile informs if any of its elements was kept by the
+	 * filter, so empty tiles are skipped when their results are reduced. The
+	 * result is zero in case no element is kept at all.
+	 */
+	private String translateFilteredReduce(Operation operation) {
+		ST st = templates.getInstanceOf("filteredReduce");
+		st.add("tileSizeVar",
+				getAllocationDimCall("X", getTileVariableName(operation)));
+		st.add("sizeVar",
+				getAllocationDimCall("X", getInputDataVariableName(operation)));
+		st.add("forBody", getFilteredReduceForBody(operation,
+				commonDefinitions.getPrefix() + "x"));
+		st.add("foundAllocation", getTileFoundVariableName(operation));
+		st.add("tileAllocation", getTileVariableName(operation));
+		st.add("destVar",
+				getOutputVariableName(operation.destinationVariable, operation));
+		setFilteredReduceVariables(operation, st);
+		return createKernelFunction(operation, st.render(),
+				FunctionType.BaseOperation);
+	}
+
+	/**
+	 * Creates the loop body that reads an input element of a filtered reduce
+	 * and, in case the filter keeps it, accumulates it with the map user
+	 * function applied, if there is a fused map.
+	 */
+	private String getFilteredReduceForBody(Operation operation, String index) {
+		ST st = templates.getInstanceOf("filteredReduceForBody");
+		Operation filter = operation.getProducerOperation(OperationType.Filter);
+		Operation map = operation.getProducerOperation(OperationType.Map);
+		st.add("readType", commonDefinitions.translateToCType(filter
+				.getUserFunctionData().arguments.get(0).typeName));
+		st.add("elementVar", commonDefinitions.getPrefix() + "element");
+		st.add("dataVar", getInputDataVariableName(operation));
+		st.add("index", index);
+		st.add("filterFunctionName",
+				commonDefinitions.getOperationUserFunctionName(filter));
+		st.add("mapFunction", null);
+		if (map != null)
+			st.addAggr("mapFunction.{name}",
+					commonDefinitions.getOperationUserFunctionName(map));
+		setFilteredReduceVariables(operation, st);
+		return st.render();
+	}
+
+	/**
+	 * Sets the attributes shared by all filtered reduce templates.
+	 */
+	private void setFilteredReduceVariables(Operation operation, ST st) {
+		Variable inputVar1 = operation.getUserFunctionData().arguments.get(0);
+		Variable inputVar2 = operation.getUserFunctionData().arguments.get(1);
+		st.add("inputVar1", inputVar1.name);
+		st.add("inputVar2", inputVar2.name);
+		st.add("varType",
+				commonDefinitions.translateToCType(inputVar1.typeName));
+		st.add("xVar", commonDefinitions.getPrefix() + "x");
+		st.add("foundVar", commonDefinitions.getPrefix() + "found");
+		st.add("userFunctionName",
+				commonDefinitions.getOperationUserFunctionName(operation));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -274,8 +356,8 @@ public class RSArrayTranslator extends RSTranslator implements ArrayTranslator {
 			st.addAggr("tileSize.{name, expression}",
 					getTileSizeVariableName(operation), String.format(
 							"(int)Math.floor(Math.sqrt(%s.getType().getX()))",
-							commonDefinitions
-									.getVariableOutName(operation.variable)));
+							commonDefinitions.getVariableOutName(operation
+									.getInputVariable())));
 		}
 	}
 }
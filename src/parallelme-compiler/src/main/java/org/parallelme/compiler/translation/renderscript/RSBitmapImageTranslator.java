@@ -17,7 +17,9 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.BitmapImageTranslator;
 import org.parallelme.compiler.userlibrary.classes.BitmapImage;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for BitmapImage translation to RenderScript runtime.
@@ -26,19 +28,8 @@ import org.stringtemplate.v4.ST;
  */
 public class RSBitmapImageTranslator extends RSImageTranslator implements
 		BitmapImageTranslator {
-	private static final String templateInputBindObjCreation = "Type <dataTypeInputObject>;\n"
-			+ "<inputObject> = Allocation.createFromBitmap(PM_mRS, <param>, Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT | Allocation.USAGE_SHARED);\n"
-			+ "<dataTypeInputObject> = new Type.Builder(PM_mRS, Element.F32_3(PM_mRS))\n"
-			+ "\t.setX(<inputObject>.getType().getX())\n"
-			+ "\t.setY(<inputObject>.getType().getY())\n"
-			+ "\t.create();\n"
-			+ "<outputObject> = Allocation.createTyped(PM_mRS, <dataTypeInputObject>);\n"
-			+ "<kernelName>.forEach_toFloat<classType>(<inputObject>, <outputObject>);";
-	private static final String templateInputBind = "\nfloat3 __attribute__((kernel)) toFloat<classType>(uchar4 PM_in, uint32_t x, uint32_t y) {"
-			+ "\n\tfloat3 PM_out;"
-			+ "\n\tPM_out.s0 = (float) PM_in.r;"
-			+ "\n\tPM_out.s1 = (float) PM_in.g;"
-			+ "\n\tPM_out.s2 = (float) PM_in.b;" + "\n\treturn PM_out;" + "\n}";
+	private static final STGroup templates = Templates
+			.load(RSBitmapImageTranslator.class);
 	private static final String templateOutputBind = "\nuchar4 __attribute__((kernel)) toBitmapBitmapImage(float3 PM_in, uint32_t x, uint32_t y) {"
 			+ "\n\tuchar4 PM_out;"
 			+ "\n\tPM_out.r = (uchar) (PM_in.s0);"
@@ -56,7 +47,7 @@ public class RSBitmapImageTranslator extends RSImageTranslator implements
 	 */
 	@Override
 	public String translateInputBind(String className, InputBind inputBind) {
-		ST st = new ST(templateInputBind);
+		ST st = templates.getInstanceOf("inputBind");
 		st.add("classType", inputBind.variable.typeName);
 		return st.render();
 	}
@@ -73,7 +64,7 @@ public class RSBitmapImageTranslator extends RSImageTranslator implements
 				.getVariableOutName(inputBind.variable);
 		String dataTypeInputObject = commonDefinitions
 				.getVariableInName(inputBind.variable) + "DataType";
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		st.add("dataTypeInputObject", dataTypeInputObject);
 		st.add("inputObject", inputObject);
 		st.add("outputObject", outputObject);
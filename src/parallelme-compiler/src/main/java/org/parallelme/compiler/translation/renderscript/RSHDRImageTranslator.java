@@ -17,7 +17,9 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.HDRImageTranslator;
 import org.parallelme.compiler.userlibrary.classes.HDRImage;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for HDRImage translation to RenderScript runtime.
@@ -26,33 +28,8 @@ import org.stringtemplate.v4.ST;
  */
 public class RSHDRImageTranslator extends RSImageTranslator implements
 		HDRImageTranslator {
-	private static final String templateInputBindObjCreation = "Type <dataTypeInputObject> = new Type.Builder(<rsVarName>, Element.RGBA_8888(<rsVarName>))\n"
-			+ "\t.setX(width)\n"
-			+ "\t.setY(height)\n"
-			+ "\t.create();\n"
-			+ "Type <dataTypeOutputObject> = new Type.Builder(<rsVarName>, Element.F32_4(<rsVarName>))\n"
-			+ "\t.setX(width)\n"
-			+ "\t.setY(height)\n"
-			+ "\t.create();\n"
-			+ "<inputObject> = Allocation.createTyped(<rsVarName>, <dataTypeInputObject>, Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);\n"
-			+ "<outputObject> = Allocation.createTyped(<rsVarName>, <dataTypeOutputObject>);\n"
-			+ "<inputObject>.copyFrom(data);\n"
-			+ "<kernelName>.forEach_toFloat<classType>(<inputObject>, <outputObject>);";
-	private static final String templateInputBind = "\nfloat4 __attribute__((kernel)) toFloat<classType>(uchar4 PM_in, uint32_t x, uint32_t y) {"
-			+ "\n\tfloat4 PM_out;"
-			+ "\n\tif (PM_in.s3 != 0) {"
-			+ "\n\t\tfloat f = ldexp(1.0f, (PM_in.s3 & 0xFF) - (128 + 8));"
-			+ "\n\t\tPM_out.s0 = (PM_in.s0 & 0xFF) * f;"
-			+ "\n\t\tPM_out.s1 = (PM_in.s1 & 0xFF) * f;"
-			+ "\n\t\tPM_out.s2 = (PM_in.s2 & 0xFF) * f;"
-			+ "\n\t\tPM_out.s3 = 0.0f;"
-			+ "\n\t} else {"
-			+ "\n\t\tPM_out.s0 = 0.0f;"
-			+ "\n\t\tPM_out.s1 = 0.0f;"
-			+ "\n\t\tPM_out.s2 = 0.0f;"
-			+ "\n\t\tPM_out.s3 = 0.0f;"
-			+ "\n\t}"
-			+ "\n\treturn PM_out;" + "\n}";
+	private static final STGroup templates = Templates
+			.load(RSHDRImageTranslator.class);
 	private static final String templateOutputBind = "\nuchar4 __attribute__((kernel)) toBitmapHDRImage(float4 PM_in, uint32_t x, uint32_t y) {"
 			+ "\n\tuchar4 PM_out;"
 			+ "\n\tPM_out.r = (uchar) (PM_in.s0 * 255.0f);"
@@ -69,7 +46,7 @@ public class RSHDRImageTranslator extends RSImageTranslator implements
 	 */
 	@Override
 	public String translateInputBind(String className, InputBind inputBind) {
-		ST st = new ST(templateInputBind);
+		ST st = templates.getInstanceOf("inputBind");
 		st.add("classType", inputBind.variable.typeName);
 		return st.render();
 	}
@@ -86,7 +63,7 @@ public class RSHDRImageTranslator extends RSImageTranslator implements
 				.getVariableOutName(inputBind.variable);
 		String dataTypeInputObject = inputObject + "DataType";
 		String dataTypeOutputObject = outputObject + "DataType";
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		st.add("params",
 				commonDefinitions.toCommaSeparatedString(inputBind.parameters));
 		st.add("dataTypeInputObject", dataTypeInputObject);
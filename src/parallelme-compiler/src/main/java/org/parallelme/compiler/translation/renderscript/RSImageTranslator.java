@@ -18,7 +18,9 @@ import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.ImageTranslator;
 import org.parallelme.compiler.userlibrary.classes.Pixel;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Base class for Image translation to RenderScript runtime.
@@ -27,15 +29,8 @@ import org.stringtemplate.v4.ST;
  */
 public abstract class RSImageTranslator extends RSTranslator implements
 		ImageTranslator {
-	private static final String templateOutputBindCall1 = "if (<inputAllocation> != null) {\n"
-			+ "\tBitmap <destinationObject> = Bitmap.createBitmap(<inputAllocation>.getType().getX(), "
-			+ "\t<inputAllocation>.getType().getY(), Bitmap.Config.ARGB_8888);\n"
-			+ "<callRSFunction:{var|\t\t<var.value>\n}>"
-			+ "\treturn <destinationObject>;"
-			+ "} else {\n"
-			+ "\treturn null;\n" + "}";
-	private static final String templateOutputBindCall2 = "<kernelName>.forEach_toBitmap<classType>(<outputObject>, <inputObject>);\n"
-			+ "<inputObject>.copyTo(<destinationObject>);";
+	private static final STGroup templates = Templates
+			.load(RSImageTranslator.class);
 
 	public RSImageTranslator(CTranslator cCodeTranslator) {
 		super(cCodeTranslator);
@@ -90,7 +85,7 @@ public abstract class RSImageTranslator extends RSTranslator implements
 		String outputObject = this.commonDefinitions
 				.getVariableOutName(outputBind.variable);
 		String destinationObject = outputBind.destinationObject.name;
-		ST st2 = new ST(templateOutputBindCall2);
+		ST st2 = templates.getInstanceOf("outputBindCall2");
 		st2.add("classType", outputBind.variable.typeName);
 		st2.add("kernelName", this.commonDefinitions.getKernelName(className));
 		st2.add("outputObject", outputObject);
@@ -99,7 +94,7 @@ public abstract class RSImageTranslator extends RSTranslator implements
 		// If it is an object assignment, must declare the destination
 		// object type and name.
 		if (outputBind.outputBindType != OutputBindType.None) {
-			ST st1 = new ST(templateOutputBindCall1);
+			ST st1 = templates.getInstanceOf("outputBindCall1");
 			st1.add("inputAllocation", inputObject);
 			st1.add("destinationObject", destinationObject);
 			st1.addAggr("callRSFunction.{value}", st2.render());
@@ -157,9 +152,9 @@ public abstract class RSImageTranslator extends RSTranslator implements
 	 */
 	@Override
 	protected String translateReduce(Operation operation) {
-		ST st = new ST(templateReduce);
-		ST stForLoop = new ST(templateForLoop);
-		ST stForBody = new ST(templateReduceForBody);
+		ST st = templates.getInstanceOf("reduce");
+		ST stForLoop = templates.getInstanceOf("forLoop");
+		ST stForBody = templates.getInstanceOf("reduceForBody");
 		String xVar = commonDefinitions.getPrefix() + "x";
 		stForLoop.add("varName", xVar);
 		stForBody.add("xVar", xVar);
@@ -176,6 +171,7 @@ public abstract class RSImageTranslator extends RSTranslator implements
 		String varType = commonDefinitions.translateToCType(inputVar1.typeName);
 		st.add("varType", varType);
 		stForBody.add("varType", varType);
+		setElementRead(stForBody, null, varType);
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		String dataVar = isSequential ? getInputDataVariableName(operation)
 				: getTileVariableName(operation);
@@ -197,7 +193,7 @@ public abstract class RSImageTranslator extends RSTranslator implements
 		if (isSequential) {
 			String yVar = commonDefinitions.getPrefix() + "y";
 			stForBody.addAggr("yVar.{name}", yVar);
-			ST stInnerFor = new ST(templateForLoop);
+			ST stInnerFor = templates.getInstanceOf("forLoop");
 			stInnerFor.add("varName", yVar);
 			stInnerFor.add("initValue", "1");
 			stInnerFor.add(
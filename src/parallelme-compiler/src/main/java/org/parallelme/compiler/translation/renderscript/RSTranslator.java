@@ -8,6 +8,9 @@
 
 package org.parallelme.compiler.translation.renderscript;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.parallelme.compiler.intermediate.Operation;
 import org.parallelme.compiler.intermediate.Operation.OperationType;
 import org.parallelme.compiler.intermediate.Variable;
@@ -19,7 +22,9 @@ import org.parallelme.compiler.userlibrary.UserLibraryClass;
 import org.parallelme.compiler.userlibrary.UserLibraryClassFactory;
 import org.parallelme.compiler.userlibrary.UserLibraryDataType;
 import org.parallelme.compiler.userlibrary.classes.Pixel;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Base class for RenderScript translators.
@@ -27,82 +32,7 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public abstract class RSTranslator extends BaseUserLibraryTranslator {
-	private static final String templateOperationCall = "<tileSize:{var|int <var.name> = <var.expression>;\n}>"
-			+ "<allocation:{var|<var.body>}; separator=\"\\n\">"
-			+ "<variables:{var|\n\n<kernelName>.set_<var.gVariableName>(<var.variableName>);}>"
-			+ "<inputSize:{var|\n\n<kernelName>.set_<var.name>(<var.allocationName>.getType().get<var.XYZ>());}>"
-			+ "<kernels:{var|\n\n<kernelName>.<var.rsOperationName>_<var.functionName>(<var.allocations>);}>"
-			+ "<sequentialNonFinalVariables:{var|\n\n<var.allName>.copyTo(<var.arrName>);}>"
-			+ "<additionalStatements:{var|\n\n<var.value>}>"
-			+ "<destinationVariable:{var|\n\n<var.nativeReturnType>[] <var.tmpName> = new <var.nativeReturnType>[<var.size>];\n"
-			+ "<var.name>.copyTo(<var.tmpName>);\n"
-			+ "return new <var.returnObjectCreation>;}>"
-			+ "<fromImage:{var|\n\n<var.name> = <var.value>;}>";
-	private static final String templateAllocationRSFile = "<allocation:{var|rs_allocation <var.name>;\n}>"
-			+ "<sizeVar:{var|int <var.name>;\n}>"
-			+ "<externalVariables:{var|<var.type> <var.name>;\n}>\n";
-	private static final String templateSequentialAllocationJavaFile = "<externalVariables:{var|"
-			+ "Allocation <var.allName> = Allocation.createSized(<rsVarName>, Element.<var.elementType>(<rsVarName>), 1);\n"
-			+ "<kernelName>.set_<var.gName>(<var.name>[0]);\n"
-			+ "<kernelName>.set_<var.gNameOut>(<var.allName>);}; separator=\"\\n\">";
-	protected static final String templateReduceForBody = "<inputVar2> = rsGetElementAt_<varType>(<dataVar>, <xVar><yVar:{var|, <var.name>}>);\n"
-			+ "<inputVar1> = <userFunctionName>(<inputVar1>, <inputVar2>);\n";
-	protected static final String templateForLoop = "for (int <varName>=<initValue>; <varName> \\< <varMaxVal>; ++<varName>) {\n\t<body>}\n";
-	protected static final String templateReduce = "\t<varType> <inputVar1> = rsGetElementAt_<varType>(<dataVar>, 0);\n"
-			+ "\t<varType> <inputVar2>;\n"
-			+ "\t<forLoop:{var|<var.loop>}>"
-			+ "\trsSetElementAt_<varType>(<destVar>, <inputVar1>, 0);\n"
-			+ "<setExternalVariables:{var|\t\trsSetElementAt_<var.type>(<var.allocationName>, <var.varName>, 0);\n}>";
-	private static final String templateParallelReduceTile = "<declBaseVar:{var|\t\tint <baseVar> = x * <sizeVar>;\n}>"
-			+ "\t<varType> <inputVar1> = rsGetElementAt_<varType>(<dataVar>, <baseVar>);\n"
-			+ "\t<varType> <inputVar2>;\n"
-			+ "\tfor (int <xVar>=1; <xVar>\\<<sizeVar>; ++<xVar>) {\n"
-			+ "\t\t<inputVar2> = rsGetElementAt_<varType>(<dataVar>, <x:{var|x, }><declBaseVar:{var|<baseVar> + }><xVar>);\n"
-			+ "\t\t<inputVar1> = <userFunctionName>(<inputVar1>, <inputVar2>);\n"
-			+ "\t}\n" + "\treturn <inputVar1>;\n";
-	private static final String templateFunctionDecl = "<modifier:{var|<var.value> }><returnType><isKernel:{var|  __attribute__((kernel))}> <functionName>("
-			+ "<params:{var|<var.type> <var.name>}; separator=\", \">)";
-	private static final String templateAllocation = "Type <allocationName>Type = new Type.Builder(<rsVarName>, Element.<rsType>(<rsVarName>))\n"
-			+ "\t.set<XYZ>(<expression>)\n"
-			+ "\t.create();\n"
-			+ "<declareAllocation:{var|Allocation }><allocationName> = Allocation.createTyped(<rsVarName>, <allocationName>Type);";
-	private static String templateParallelForeachMapFunction = "\treturn <userFunction>("
-			+ "<varName><isImage:{var|, x, y}>);\n";
-	private static String templateSequentialFunction = "<countVar:{var|int <var.name> = 0;\n}>"
-			+ "\tfor (int <xVar>=0; <xVar>\\<rsAllocationGetDimX(<readAllocation>); ++<xVar>) {\n"
-			+ "<isImage:{var|\t\tfor (int <yVar>=0; <yVar>\\<rsAllocationGetDimY(<readAllocation>); ++<yVar>) {\n}>"
-			+ "\t\t<body>\n"
-			+ "<isImage:{var|\t\t\\}\n}>"
-			+ "\t}\n"
-			+ "<setExternalVariables:{var|\t\trsSetElementAt_<var.type>(<var.allocationName>, <var.varName>, 0);\n}>";
-	private static String templateSetValues = "rsSetElementAt_<typeSet>(<writeAllocation>, <userFunction>(rsGetElementAt_<typeGet>("
-			+ "<readAllocation>, <xVar><isImage:{var|, <yVar>}>)<isImage:{var|, <xVar>, <yVar>}>), <notImageMap:{var|<xVar><isImage:{var|, <yVar>}>}>"
-			+ "<imageMap:{var|<countVar>++}>);";
-	private static final String templateFilter = "\tint <varCount> = 0;\n"
-			+ "\tfor (int <xVar>=0; <xVar>\\<rsAllocationGetDimX(<tileAllocation>); ++<xVar>) {\n"
-			+ "<isImage:{var|\tfor (int <yVar>=0; <yVar>\\<rsAllocationGetDimY(<tileAllocation>); ++<yVar>) {\n}>"
-			+ "\t\tint PM_value = rsGetElementAt_int(<tileAllocation>, <xVar><isImage:{var|, <yVar>}>);\n"
-			+ "\t\tif (PM_value >= 0) {\n"
-			+ "\t\t\trsSetElementAt_<type>(<outputAllocation>, rsGetElementAt_<type>(<inputAllocation>, PM_value), <varCount>++);\n"
-			+ "\t\t}\n" + "<isImage:{var|\t\\}\n}>" + "\t}\n";
-	private static final String templateParallelFilterTile = "\tif (<userFunctionName>(<varName><isImage:{var|, <xVar>, <yVar>}>)) {\n"
-			+ "\t\trsAtomicInc(&<varCounterName>);\n"
-			+ "\t\treturn x;\n"
-			+ "\t} else {\n" + "\t\treturn -1;\n" + "\t}\n";
-	private static String templateFilterOperationCall = "int <sizeVarName>[] = new int[1];\n"
-			+ "<kernelName>.get_<gSizeVariableName>().copyTo(<sizeVarName>);\n"
-			+ "if (<sizeVarName>[0] > 0) {\n"
-			+ "\t<allocation:{var|<var.body>}; separator=\"\\n\">"
-			+ "\t<fromImage:{var|\n\n\t<var.name> = <var.value>;}>"
-			+ "\t<variables:{var|\n\n\t<kernelName>.set_<var.gVariableName>(<var.variableName>);}>"
-			+ "<kernels:{var|\n\n\t<kernelName>.<var.rsOperationName>_<var.functionName>(<var.allocations>);}>"
-			+ "\n}";
-	private static String templateSequentialFilterTile = "if (<userFunction>(rsGetElementAt_<type>(<inputAllocation>, <xVar><isImage:{var|, <yVar>}>)<isImage:{var|, <xVar>, <yVar>}>)) {\n"
-			+ "\trsSetElementAt_int(<tileAllocation>, <xTileVar>, <xTileVar>);\n"
-			+ "\t<sizeVarName>++;\n"
-			+ "} else {\n"
-			+ "\trsSetElementAt_int(<tileAllocation>, -1, <xTileVar>);\n"
-			+ "}\n" + "<xTileVar>++;";
+	private static final STGroup templates = Templates.load(RSTranslator.class);
 
 	protected CTranslator cCodeTranslator;
 
@@ -114,7 +44,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 * {@inheritDoc}
 	 */
 	public String translateOperationCall(String className, Operation operation) {
-		ST st = new ST(templateOperationCall);
+		ST st = templates.getInstanceOf("operationCall");
 		st.add("rsVarName", getRSVariableName());
 		st.add("kernelName", commonDefinitions.getKernelName(className));
 		st.add("allocation", null);
@@ -162,7 +92,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	private String createSequentialAllocationJavaFile(String className,
 			Operation operation) {
-		ST st = new ST(templateSequentialAllocationJavaFile);
+		ST st = templates.getInstanceOf("sequentialAllocationJavaFile");
 		st.add("kernelName", commonDefinitions.getKernelName(className));
 		st.add("rsVarName", getRSVariableName());
 		st.add("externalVariables", null);
@@ -212,11 +142,11 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 				operation.destinationVariable, operation);
 		st.addAggr("variables.{gVariableName, variableName}", destVarName,
 				destVarName);
-		st.addAggr("variables.{gVariableName, variableName}",
-				getInputDataVariableName(operation),
-				commonDefinitions.getVariableOutName(operation.variable));
+		// Reads the producer's input in case it was fused into this operation
 		String variableAllocation = commonDefinitions
-				.getVariableOutName(operation.variable);
+				.getVariableOutName(operation.getInputVariable());
+		st.addAggr("variables.{gVariableName, variableName}",
+				getInputDataVariableName(operation), variableAllocation);
 		st.add("allocationName", variableAllocation);
 		if (operation.getExecutionType() == ExecutionType.Parallel) {
 			String tileVariableName = getTileVariableName(operation);
@@ -230,6 +160,16 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 					tileVariableName, "forEach");
 			st.addAggr("variables.{gVariableName, variableName}",
 					tileVariableName, tileVariableName);
+			if (operation.getProducerOperation(OperationType.Filter) != null) {
+				String tileFoundVariableName = getTileFoundVariableName(operation);
+				st.addAggr(
+						"allocation.{body}",
+						createAllocation(operation,
+								getTileSizeVariableName(operation),
+								tileFoundVariableName, "int", true));
+				st.addAggr("variables.{gVariableName, variableName}",
+						tileFoundVariableName, tileFoundVariableName);
+			}
 		}
 		st.addAggr("kernels.{functionName, allocations, rsOperationName}",
 				commonDefinitions.getOperationName(operation), "", "invoke");
@@ -395,7 +335,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 				commonDefinitions.getOperationAllocationFunctionName(operation),
 				"", "invoke");
 		// 4. Build if body
-		ST stIfBody = new ST(templateFilterOperationCall);
+		ST stIfBody = templates.getInstanceOf("filterOperationCall");
 		String ifSizeVar = commonDefinitions.getPrefix() + "size";
 		stIfBody.add("kernelName", commonDefinitions.getKernelName(className));
 		stIfBody.add("sizeVarName", ifSizeVar);
@@ -437,16 +377,32 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 * this runtime.
 	 */
 	private String translateParallelForeachMap(Operation operation) {
-		ST st = new ST(templateParallelForeachMapFunction);
+		ST st = templates.getInstanceOf("parallelForeachMapFunction");
+		String userFunctionCall = getUserFunctionCall(operation,
+				operation.getUserFunctionData().arguments.get(0).name);
+		// Fused operations' user functions are applied over the element
+		// returned by the previous user function
+		for (Operation fusedOperation : operation.getFusedOperations())
+			userFunctionCall = getUserFunctionCall(fusedOperation,
+					userFunctionCall);
+		st.add("userFunctionCall", userFunctionCall);
+		return createKernelFunction(operation, st.render(),
+				FunctionType.BaseOperation);
+	}
+
+	/**
+	 * Creates a call to the user function of a given operation.
+	 */
+	private String getUserFunctionCall(Operation operation, String argument) {
+		ST st = templates.getInstanceOf("userFunctionCall");
 		st.add("userFunction",
 				commonDefinitions.getOperationUserFunctionName(operation));
-		st.add("varName", operation.getUserFunctionData().arguments.get(0));
+		st.add("argument", argument);
 		st.add("isImage", null);
 		if (commonDefinitions.isImage(operation.variable)) {
 			st.add("isImage", "");
 		}
-		return createKernelFunction(operation, st.render(),
-				FunctionType.BaseOperation);
+		return st.render();
 	}
 
 	/**
@@ -454,7 +410,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 * this runtime.
 	 */
 	private String translateSequentialForeachMap(Operation operation) {
-		ST st = new ST(templateSequentialFunction);
+		ST st = templates.getInstanceOf("sequentialFunction");
 		setCommonParameters(operation, st);
 		setExternalVariables(operation, st);
 		String cType = commonDefinitions
@@ -484,7 +440,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 
 	private String getSetValuesInAllocations(Operation operation,
 			String typeSet, String typeGet) {
-		ST st = new ST(templateSetValues);
+		ST st = templates.getInstanceOf("setValues");
 		st.add("userFunction",
 				commonDefinitions.getOperationUserFunctionName(operation));
 		st.add("typeSet", typeSet);
@@ -546,6 +502,25 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 		return typeName;
 	}
 
+	/**
+	 * Configure how elements are read in a String Template with "readType"
+	 * and "mapFunction" parameters. In case a fused producer operation is
+	 * informed, elements are read with the producer's input type and its
+	 * user function is applied on each one. Otherwise they are read with
+	 * varType.
+	 */
+	protected void setElementRead(ST st, Operation producer, String varType) {
+		st.add("mapFunction", null);
+		if (producer == null) {
+			st.add("readType", varType);
+		} else {
+			st.add("readType", commonDefinitions.translateToCType(producer
+					.getUserFunctionData().arguments.get(0).typeName));
+			st.addAggr("mapFunction.{name}",
+					commonDefinitions.getOperationUserFunctionName(producer));
+		}
+	}
+
 	/**
 	 * Configure external variables in a given String Template that has the
 	 * following pattern:
@@ -571,7 +546,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateParallelReduceTile(Operation operation) {
-		ST st = new ST(templateParallelReduceTile);
+		ST st = templates.getInstanceOf("parallelReduceTile");
 		st.add("xVar", commonDefinitions.getPrefix() + "x");
 		Variable inputVar1 = operation.getUserFunctionData().arguments.get(0);
 		Variable inputVar2 = operation.getUserFunctionData().arguments.get(1);
@@ -579,8 +554,9 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 		st.add("inputVar2", inputVar2.name);
 		// Takes the first var, since they must be the same for reduce
 		// operations
-		st.add("varType",
-				commonDefinitions.translateToCType(inputVar1.typeName));
+		String varType = commonDefinitions.translateToCType(inputVar1.typeName);
+		st.add("varType", varType);
+		setElementRead(st, operation.getProducerOperation(), varType);
 		st.add("userFunctionName",
 				commonDefinitions.getOperationUserFunctionName(operation));
 		st.add("dataVar", getInputDataVariableName(operation));
@@ -619,15 +595,22 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateFilter(Operation operation) {
-		ST st = new ST(templateFilter);
+		ST st = templates.getInstanceOf("filter");
 		String prefix = this.commonDefinitions.getPrefix();
 		st.add("varCount", prefix + "count");
 		st.add("xVar", prefix + "x");
 		st.add("tileAllocation", getOutputTileVariableName(operation));
 		st.add("outputAllocation", getOutputDataVariableName(operation));
-		st.add("inputAllocation", getInputDataVariableName(operation));
-		st.add("type",
-				commonDefinitions.translateToCType(getReturnType(operation)));
+		String type = commonDefinitions
+				.translateToCType(getReturnType(operation));
+		st.add("type", type);
+		String element = String.format("rsGetElementAt_%s(%s, PM_value)",
+				type, getInputDataVariableName(operation));
+		// Foreach operations fused into the filter are applied on each
+		// element kept while it is copied to the output allocation
+		for (Operation fusedOperation : operation.getFusedOperations())
+			element = getUserFunctionCall(fusedOperation, element);
+		st.add("element", element);
 		st.add("isImage", null);
 		if (commonDefinitions.isImage(operation.variable)) {
 			st.add("isImage", "");
@@ -653,8 +636,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 				FunctionType.Tile));
 		// Set allocation function
 		ret.append("\n\n");
-		ST st = new ST(
-				"\trsSetElementAt_int(<allocationValue>, <intValue>, 0);\n");
+		ST st = templates.getInstanceOf("setAllocation");
 		st.add("allocationValue",
 				getOutputXSizeAllocationVariableName(operation));
 		st.add("intValue", getOutputXSizeVariableName(operation));
@@ -665,7 +647,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	}
 
 	private String translateParallelFilterTile(Operation operation) {
-		ST st = new ST(templateParallelFilterTile);
+		ST st = templates.getInstanceOf("parallelFilterTile");
 		Variable userFunctionVariable = operation.getUserFunctionData().arguments
 				.get(0);
 		st.add("userFunctionName",
@@ -683,11 +665,11 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	}
 
 	private String translateSequentialFilterTile(Operation operation) {
-		ST st = new ST(templateSequentialFunction);
+		ST st = templates.getInstanceOf("sequentialFunction");
 		st.add("countVar", null);
 		setCommonParameters(operation, st);
 		setExternalVariables(operation, st);
-		ST stBody = new ST(templateSequentialFilterTile);
+		ST stBody = templates.getInstanceOf("sequentialFilterTile");
 		boolean isImage = commonDefinitions.isImage(operation.variable);
 		stBody.add("isImage", isImage ? "" : null);
 		stBody.add("userFunction",
@@ -710,35 +692,48 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateUserFunction(Operation operation) {
-		String userCode = commonDefinitions.removeCurlyBraces(operation
-				.getUserFunctionData().Code.trim());
-		userCode = userCode.replaceAll("[\t]", "");
-		for (Variable userFunctionVariable : operation.getUserFunctionData().arguments) {
-			userCode = translateVariable(userFunctionVariable,
-					cCodeTranslator.translate(userCode));
-		}
-		// Insert external variables as global variables
-		StringBuffer externalVariables = new StringBuffer();
+		return createAllocationRSFile(operation)
+				+ translateUserCode(operation, operation);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String translateFusedUserFunction(Operation operation,
+			Operation fusedOperation) {
+		// Global variables were all declared for the operation that owns the
+		// kernel
+		return translateUserCode(fusedOperation, operation);
+	}
+
+	/**
+	 * Translates the user function of a given operation, renaming its
+	 * external variables to the global variables declared for
+	 * globalsOperation.
+	 */
+	private String translateUserCode(Operation operation,
+			Operation globalsOperation) {
+		Map<String, String> renamedVariables = new HashMap<>();
 		for (Variable variable : operation.getExternalVariables()) {
-			String gVariableName = getGlobalVariableName(variable, operation);
-			externalVariables.append(variable.typeName + " " + gVariableName
-					+ ";\n");
-			userCode = userCode.replaceAll(variable.name, gVariableName);
+			renamedVariables.put(variable.name,
+					getGlobalVariableName(variable, globalsOperation));
 		}
-		if (!operation.getExternalVariables().isEmpty())
-			externalVariables.append("\n");
+		String userCode = commonDefinitions.removeCurlyBraces(cCodeTranslator
+				.translate(operation.getUserFunctionData(), renamedVariables)
+				.trim());
+		userCode = userCode.replaceAll("[\t]", "");
 		// Foreach operations must add a return statements.
 		if (operation.operationType == OperationType.Foreach) {
 			userCode += String.format("\treturn %s;\n",
 					operation.getUserFunctionData().arguments.get(0));
 		}
-		return createAllocationRSFile(operation)
-				+ createKernelFunction(operation, userCode,
-						FunctionType.UserCode);
+		return createKernelFunction(operation, userCode,
+				FunctionType.UserCode);
 	}
 
 	private String createAllocationRSFile(Operation operation) {
-		ST st = new ST(templateAllocationRSFile);
+		ST st = templates.getInstanceOf("allocationRSFile");
 		st.add("sizeVar", null);
 		st.add("allocation", null);
 		if (operation.operationType == OperationType.Foreach) {
@@ -772,6 +767,9 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 		st.addAggr("allocation.{name}", getInputDataVariableName(operation));
 		if (operation.getExecutionType() == ExecutionType.Parallel) {
 			st.addAggr("allocation.{name}", getTileVariableName(operation));
+			if (operation.getProducerOperation(OperationType.Filter) != null)
+				st.addAggr("allocation.{name}",
+						getTileFoundVariableName(operation));
 		}
 		st.addAggr("allocation.{name}",
 				getOutputVariableName(operation.destinationVariable, operation));
@@ -799,7 +797,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String initializeUserFunctionSignature(Operation operation) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("functionName",
 				commonDefinitions.getOperationUserFunctionName(operation));
 		st.add("returnType", commonDefinitions.getCReturnType(operation));
@@ -836,7 +834,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	private ST initializeSingleParameterFunction(Operation operation,
 			String returnType, String functionName) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		st.add("functionName", functionName);
 		if (operation.getExecutionType() == ExecutionType.Parallel) {
@@ -863,7 +861,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeReduceSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		st.add("isKernel", null);
 		st.add("params", null);
@@ -903,7 +901,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeFilterSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		st.add("isKernel", null);
 		st.add("params", null);
@@ -930,7 +928,7 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 	 */
 	private String createAllocation(Operation operation, String expression,
 			String allocationName, String javaType, boolean declareAllocation) {
-		ST st = new ST(templateAllocation);
+		ST st = templates.getInstanceOf("allocation");
 		st.add("rsVarName", getRSVariableName());
 		st.add("rsType", getRenderScriptJavaType(javaType));
 		st.add("XYZ", "X");
@@ -975,6 +973,10 @@ public abstract class RSTranslator extends BaseUserLibraryTranslator {
 		return getGlobalVariableName(variable.name + "Tile", operation);
 	}
 
+	protected String getTileFoundVariableName(Operation operation) {
+		return getGlobalVariableName("TileFound", operation);
+	}
+
 	protected String getTileSizeVariableName(Operation operation) {
 		return getGlobalVariableName("TileSize", operation);
 	}
@@ -15,7 +15,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 import org.parallelme.compiler.RuntimeCommonDefinitions;
 import org.parallelme.compiler.RuntimeDefinitionImpl;
 import org.parallelme.compiler.intermediate.*;
@@ -29,10 +31,8 @@ import org.parallelme.compiler.util.FileWriter;
  * @author Wilson de Carvalho, Pedro Caldeira
  */
 public class RenderScriptRuntimeDefinition extends RuntimeDefinitionImpl {
-	private static final String templateRSFile = "<introductoryMsg>\n\n<header>\n\n<functions:{functionName|<functionName>}; separator=\"\n\n\">";
-	private static final String templateKernels = "private ScriptC_<originalClassName> <kernelName>;\n\n";
-	private static final String templateConstructor = "public <javaClassName>(RenderScript PM_mRS) {\n\tthis.PM_mRS = PM_mRS;\n"
-			+ "\tthis.<kernelName> = new ScriptC_<originalClassName>(PM_mRS);\n\\}\n";
+	private static final STGroup templates = Templates
+			.load(RenderScriptRuntimeDefinition.class);
 
 	public RenderScriptRuntimeDefinition(CTranslator cCodeTranslator,
 			String outputDestinationFolder) {
@@ -77,8 +77,8 @@ public class RenderScriptRuntimeDefinition extends RuntimeDefinitionImpl {
 			OperationsAndBinds operationsAndBinds, List<MethodCall> methodCalls) {
 		StringBuilder init = new StringBuilder();
 		init.append("private RenderScript PM_mRS;\n");
-		ST st1 = new ST(templateKernels);
-		ST st2 = new ST(templateConstructor);
+		ST st1 = templates.getInstanceOf("kernels");
+		ST st2 = templates.getInstanceOf("constructor");
 		String javaClassName = RuntimeCommonDefinitions.getInstance()
 				.getJavaWrapperClassName(className, getTargetRuntime());
 		st1.add("originalClassName", className);
@@ -114,7 +114,7 @@ public class RenderScriptRuntimeDefinition extends RuntimeDefinitionImpl {
 	public void translateOperationsAndBinds(String packageName,
 			String className, OperationsAndBinds operationsAndBinds) {
 		// 1. Add file header
-		ST st = new ST(templateRSFile);
+		ST st = templates.getInstanceOf("rSFile");
 		st.add("introductoryMsg", RuntimeCommonDefinitions.getInstance()
 				.getHeaderComment());
 		st.add("header", "#pragma version(1)\n#pragma rs java_package_name("
@@ -148,7 +148,7 @@ public class RenderScriptRuntimeDefinition extends RuntimeDefinitionImpl {
 		FileWriter.writeFile(
 				className + ".rs",
 				RuntimeCommonDefinitions.getInstance().getRSDestinationFolder(
-						outputDestinationFolder, packageName), st.render());
+						outputDestinationFolder, packageName), st);
 	}
 
 	/**
@@ -16,11 +16,14 @@ import org.parallelme.compiler.intermediate.MethodCall;
 import org.parallelme.compiler.intermediate.Operation;
 import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.intermediate.Operation.ExecutionType;
+import org.parallelme.compiler.intermediate.Operation.OperationType;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.ArrayTranslator;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for Array translation to RenderScript runtime.
@@ -28,13 +31,8 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
-	private static final String templateInputBindObjCreation = "<arrayPointer> = ParallelMERuntime.getInstance().createArray(<arrayName>);";
-	private static final String templateOutputBindCall1 = "int <size> = ParallelMERuntime.getInstance().getLength(<arrayPointer>);\n"
-			+ "<size> = <fromImageVar> ? <size> * 4 : <size>;\n"
-			+ "<baseType>[] <name> = new <baseType>[<size>];\n"
-			+ "ParallelMERuntime.getInstance().toArray(<arrayPointer>, <name>);\n"
-			+ "return <name>;";
-	private static final String templateOutputBindCall2 = "ParallelMERuntime.getInstance().toArray(<arrayPointer>, <arrayName>);";
+	private static final STGroup templates = Templates
+			.load(PMArrayTranslator.class);
 
 	public PMArrayTranslator(CTranslator cCodeTranslator) {
 		super(cCodeTranslator);
@@ -54,7 +52,7 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 	@Override
 	public String translateInputBindObjCreation(String className,
 			InputBind inputBind) {
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		st.add("arrayPointer",
 				this.commonDefinitions.getPointerName(inputBind.variable));
 		Variable variable = (Variable) inputBind.parameters.get(0);
@@ -82,7 +80,7 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 		// object type and name.
 		ST st;
 		if (outputBind.outputBindType != OutputBindType.None) {
-			st = new ST(templateOutputBindCall1);
+			st = templates.getInstanceOf("outputBindCall1");
 			st.add("name", commonDefinitions.getPrefix() + "javaArray");
 			st.add("size", commonDefinitions.getPrefix() + "size");
 			st.add("fromImageVar", commonDefinitions
@@ -93,7 +91,7 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 			st.add("type", outputBind.destinationObject.typeName);
 			st.add("arrayPointer", arrayPointer);
 		} else {
-			st = new ST(templateOutputBindCall2);
+			st = templates.getInstanceOf("outputBindCall2");
 			st.add("arrayPointer", arrayPointer);
 			st.add("arrayName", outputBind.destinationObject.name);
 		}
@@ -112,9 +110,11 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 	 */
 	@Override
 	protected String translateReduce(Operation operation) {
-		ST st = new ST(templateReduce);
-		ST stForLoop = new ST(templateForLoop);
-		ST stForBody = new ST(templateReduceForBody);
+		if (operation.getProducerOperation(OperationType.Filter) != null)
+			return translateFilteredReduce(operation);
+		ST st = templates.getInstanceOf("reduce");
+		ST stForLoop = templates.getInstanceOf("forLoop");
+		ST stForBody = templates.getInstanceOf("reduceForBody");
 		String xVar = this.commonDefinitions.getPrefix() + "x";
 		stForLoop.add("varName", xVar);
 		stForBody.add("xVar", xVar);
@@ -134,6 +134,7 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 				: getTileVariableName();
 		st.add("destinationVar", commonDefinitions.getDataReturnVarName());
 		stForBody.add("dataVar", dataVar);
+		setElementRead(stForBody, null);
 		st.addAggr("decl.{expression}",
 				getExpression(varType, inputVar1.name, dataVar + "[0]"));
 		st.addAggr("decl.{expression}",
@@ -146,8 +147,10 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 		st.addAggr("forLoop.{loop}", stForLoop.render());
 		stForBody.remove("dataVar");
 		stForBody.add("dataVar", commonDefinitions.getDataVarName());
+		stForBody.remove("mapFunction");
+		setElementRead(stForBody, operation.getProducerOperation());
 		if (!isSequential) {
-			ST stForLoop2 = new ST(templateForLoop);
+			ST stForLoop2 = templates.getInstanceOf("forLoop");
 			stForLoop2.add("initValue", String.format(
 					"(int) pow(floor(sqrt((float)%s)), 2)",
 					getLengthVariableName()));
@@ -160,6 +163,81 @@ public class PMArrayTranslator extends PMTranslator implements ArrayTranslator {
 				FunctionType.BaseOperation);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String translateParallelReduceTile(Operation operation) {
+		if (operation.getProducerOperation(OperationType.Filter) == null)
+			return super.translateParallelReduceTile(operation);
+		ST st = templates.getInstanceOf("filteredReduceTile");
+		String prefix = commonDefinitions.getPrefix();
+		st.add("gidVar", prefix + "gid");
+		st.add("baseVar", getBaseVariableName());
+		st.add("forBody", getFilteredReduceForBody(operation,
+				getBaseVariableName() + " + " + prefix + "x"));
+		setFilteredReduceVariables(operation, st);
+		return createKernelFunction(operation, st.render(), FunctionType.Tile);
+	}
+
+	/**
+	 * Translates a parallel reduce whose input is filtered by a fused filter
+	 * operation. Each tile informs if any of its elements was kept by the
+	 * filter, so empty tiles are skipped when their results are reduced. The
+	 * result is zero in case no element is kept at all.
+	 */
+	private String translateFilteredReduce(Operation operation) {
+		ST st = templates.getInstanceOf("filteredReduce");
+		st.add("lengthVar", getLengthVariableName());
+		st.add("forBody", getFilteredReduceForBody(operation,
+				commonDefinitions.getPrefix() + "x"));
+		st.add("destinationVar", commonDefinitions.getDataReturnVarName());
+		setFilteredReduceVariables(operation, st);
+		return createKernelFunction(operation, st.render(),
+				FunctionType.BaseOperation);
+	}
+
+	/**
+	 * Creates the loop body that reads an input element of a filtered reduce
+	 * and, in case the filter keeps it, accumulates it with the map user
+	 * function applied, if there is a fused map.
+	 */
+	private String getFilteredReduceForBody(Operation operation, String index) {
+		ST st = templates.getInstanceOf("filteredReduceForBody");
+		Operation filter = operation.getProducerOperation(OperationType.Filter);
+		Operation map = operation.getProducerOperation(OperationType.Map);
+		String elementVar = commonDefinitions.getPrefix() + "element";
+		st.add("readType", commonDefinitions.translateToCType(filter
+				.getUserFunctionData().arguments.get(0).typeName));
+		st.add("elementVar", elementVar);
+		st.add("dataVar", commonDefinitions.getDataVarName());
+		st.add("index", index);
+		st.add("filterFunctionCall", getUserFunctionCall(filter, elementVar));
+		st.add("mapFunctionCall",
+				map != null ? getUserFunctionCall(map, elementVar)
+						: elementVar);
+		setFilteredReduceVariables(operation, st);
+		return st.render();
+	}
+
+	/**
+	 * Sets the attributes shared by all filtered reduce templates.
+	 */
+	private void setFilteredReduceVariables(Operation operation, ST st) {
+		Variable inputVar1 = operation.getUserFunctionData().arguments.get(0);
+		Variable inputVar2 = operation.getUserFunctionData().arguments.get(1);
+		st.add("inputVar1", inputVar1.name);
+		st.add("inputVar2", inputVar2.name);
+		st.add("varType", commonDefinitions.getCReturnType(operation));
+		st.add("xVar", commonDefinitions.getPrefix() + "x");
+		st.add("foundVar", commonDefinitions.getPrefix() + "found");
+		st.add("tileVar", getTileVariableName());
+		st.add("tileFoundVar", getTileFoundVariableName());
+		st.add("tileSizeVar", getTileSizeVariableName());
+		st.add("userFunctionCall", getUserFunctionCall(operation,
+				inputVar1.name + ", " + inputVar2.name));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -16,7 +16,9 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.BitmapImageTranslator;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for HDRImage translation to ParallelME runtime.
@@ -25,7 +27,8 @@ import org.stringtemplate.v4.ST;
  */
 public class PMBitmapImageTranslator extends PMImageTranslator implements
 		BitmapImageTranslator {
-	private static final String templateInputBindObjCreation = "<imagePointer> = ParallelMERuntime.getInstance().createBitmapImage(<bitmapName>);";
+	private static final STGroup templates = Templates
+			.load(PMBitmapImageTranslator.class);
 	private static final String templateKernelToFloat = "__kernel void toFloatBitmapImage(__global uchar4 *PM_dataIn, __global float4 *PM_dataOut) {\n"
 			+ "\tint PM_gid = get_global_id(0);\n"
 			+ "\tuchar4 PM_in = PM_dataIn[PM_gid];\n"
@@ -64,7 +67,7 @@ public class PMBitmapImageTranslator extends PMImageTranslator implements
 	@Override
 	public String translateInputBindObjCreation(String className,
 			InputBind inputBind) {
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		st.add("imagePointer",
 				this.commonDefinitions.getPointerName(inputBind.variable));
 		Variable variable = (Variable) inputBind.parameters.get(0);
@@ -15,7 +15,9 @@ import org.parallelme.compiler.intermediate.InputBind;
 import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.HDRImageTranslator;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for HDRImage translation to ParallelME runtime.
@@ -24,7 +26,8 @@ import org.stringtemplate.v4.ST;
  */
 public class PMHDRImageTranslator extends PMImageTranslator implements
 		HDRImageTranslator {
-	private static final String templateInputBindObjCreation = "<imagePointer> = ParallelMERuntime.getInstance().createHDRImage(data, width, height);";
+	private static final STGroup templates = Templates
+			.load(PMHDRImageTranslator.class);
 	private static final String templateKernelToFloat = "__kernel void toFloatHDRImage(__global uchar4 *PM_dataIn, __global float4 *PM_dataOut) {\n"
 			+ "\tint PM_gid = get_global_id(0);\n"
 			+ "\tuchar4 PM_in = PM_dataIn[PM_gid];\n"
@@ -72,7 +75,7 @@ public class PMHDRImageTranslator extends PMImageTranslator implements
 	@Override
 	public String translateInputBindObjCreation(String className,
 			InputBind inputBind) {
-		ST st = new ST(templateInputBindObjCreation);
+		ST st = templates.getInstanceOf("inputBindObjCreation");
 		st.add("imagePointer",
 				this.commonDefinitions.getPointerName(inputBind.variable));
 		return st.render();
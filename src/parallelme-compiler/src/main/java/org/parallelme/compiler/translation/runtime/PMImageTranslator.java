@@ -18,7 +18,9 @@ import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.userlibrary.HDRImageTranslator;
 import org.parallelme.compiler.userlibrary.classes.BitmapImage;
 import org.parallelme.compiler.userlibrary.classes.HDRImage;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Definitions for Image translation to ParallelME runtime.
@@ -27,12 +29,8 @@ import org.stringtemplate.v4.ST;
  */
 public abstract class PMImageTranslator extends PMTranslator implements
 		HDRImageTranslator {
-	private static final String templateMethodCall = "return ParallelMERuntime.getInstance().<methodName>(<params:{var|<var.name>}; separator=\", \">);";
-	private static final String templateOutputBindCall1 = "<bitmapVar> = Bitmap.createBitmap(\n"
-			+ "\tParallelMERuntime.getInstance().getWidth(<imagePointer>),\n"
-			+ "\tParallelMERuntime.getInstance().getHeight(<imagePointer>),\n"
-			+ "\tBitmap.Config.ARGB_8888);\n";
-	private static final String templateOutputBindCall2 = "ParallelMERuntime.getInstance().toBitmap<className>(<imagePointer>, <bitmapName>);";
+	private static final STGroup templates = Templates
+			.load(PMImageTranslator.class);
 
 	public PMImageTranslator(CTranslator cCodeTranslator) {
 		super(cCodeTranslator);
@@ -48,13 +46,13 @@ public abstract class PMImageTranslator extends PMTranslator implements
 		// If it is an object assignment, must declare the destination
 		// object type and name.
 		if (outputBind.outputBindType != OutputBindType.None) {
-			ST st = new ST(templateOutputBindCall1);
+			ST st = templates.getInstanceOf("outputBindCall1");
 			st.add("bitmapVar", outputBind.destinationObject.name);
 			st.add("imagePointer",
 					this.commonDefinitions.getPointerName(outputBind.variable));
 			ret.append(st.render());
 		}
-		ST st = new ST(templateOutputBindCall2);
+		ST st = templates.getInstanceOf("outputBindCall2");
 		st.add("imagePointer",
 				this.commonDefinitions.getPointerName(outputBind.variable));
 		st.add("className", outputBind.variable.typeName);
@@ -75,7 +73,7 @@ public abstract class PMImageTranslator extends PMTranslator implements
 						.getHeightMethodName())
 				|| methodCall.methodName.equals(BitmapImage.getInstance()
 						.getWidthMethodName())) {
-			ST st = new ST(templateMethodCall);
+			ST st = templates.getInstanceOf("methodCall");
 			st.add("methodName", methodCall.methodName);
 			st.addAggr("params.{name}",
 					this.commonDefinitions.getPointerName(methodCall.variable));
@@ -89,9 +87,9 @@ public abstract class PMImageTranslator extends PMTranslator implements
 	 */
 	@Override
 	protected String translateReduce(Operation operation) {
-		ST st = new ST(templateReduce);
-		ST stForLoop = new ST(templateForLoop);
-		ST stForBody = new ST(templateReduceForBody);
+		ST st = templates.getInstanceOf("reduce");
+		ST stForLoop = templates.getInstanceOf("forLoop");
+		ST stForBody = templates.getInstanceOf("reduceForBody");
 		String xVar = this.commonDefinitions.getPrefix() + "x";
 		stForLoop.add("varName", xVar);
 		stForBody.add("xVar", xVar);
@@ -111,6 +109,7 @@ public abstract class PMImageTranslator extends PMTranslator implements
 		String dataVar = isSequential ? commonDefinitions.getDataVarName()
 				: getTileVariableName();
 		stForBody.add("dataVar", dataVar);
+		setElementRead(stForBody, null);
 		st.addAggr("decl.{expression}",
 				getExpression(varType, inputVar1.name, dataVar + "[0]"));
 		st.addAggr("decl.{expression}",
@@ -8,6 +8,9 @@
 
 package org.parallelme.compiler.translation.runtime;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.parallelme.compiler.intermediate.InputBind;
 import org.parallelme.compiler.intermediate.Operation;
 import org.parallelme.compiler.intermediate.Variable;
@@ -17,7 +20,9 @@ import org.parallelme.compiler.translation.CTranslator;
 import org.parallelme.compiler.translation.PrimitiveTypes;
 import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
 import org.parallelme.compiler.userlibrary.classes.Pixel;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Base class for ParallelME runtime translators.
@@ -25,58 +30,7 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public abstract class PMTranslator extends BaseUserLibraryTranslator {
-	protected static final String templateCallJNIFunction = "<jniJavaClassName>.getInstance().<functionName>(<params:{var|<var.name>}; separator=\", \">)";
-	private static final String templateFunctionDecl = "<modifier:{var|<var.value> }><isKernel:{var|__kernel }><returnType> "
-			+ "<functionName>(<params:{var|<var.type> <var.name>}; separator=\", \">)";
-	protected static final String templateForLoop = "for (int <varName>=<initValue>; <varName> \\< <varMaxVal>; ++<varName>) {\n\t<body>}\n";
-	private static String templateParallelForeachMapFunction = "<isImage:{var|\tint <xVar> = get_global_id(0);\n"
-			+ "\tint <yVar> = get_global_id(1);\n"
-			+ "\tint <varGID> = <yVar> * <xSizeVar> + <xVar>;\n}>"
-			+ "<isArray:{var|\tint <varGID> = get_global_id(0);\n}>"
-			+ "\t<destVarName>[<varGID>] = <userFunction>(<varName>[<varGID>]<isImage:{var|, <xVar>, <yVar>}><params:{var|, <var.name>}>);\n";
-	private static final String templateParallelReduceTile = "\tint <gidVar> = get_global_id(0);\n"
-			+ "\tint <baseVar> = <gidVar> * <sizeVar>;\n"
-			+ "\t<varType> <inputVar1> = <dataVar>[<baseVar>];\n"
-			+ "\t<varType> <inputVar2>;\n"
-			+ "\tfor (int <xVar>=1; <xVar>\\<<sizeVar>; ++<xVar>) {\n"
-			+ "\t\t<inputVar2> = <dataVar>[<baseVar> + <xVar>];\n"
-			+ "\t\t<inputVar1> = <userFunctionName>(<inputVar1>, <inputVar2><params:{var|, <var.name>}>);\n"
-			+ "\t}\n" + "\t<destinationVar>[<gidVar>] = <inputVar1>;\n";
-	protected static final String templateReduce = "<decl:{var|\t\t<var.expression>;\n}>"
-			+ "\t<forLoop:{var|<var.loop>}>"
-			+ "\t*<destinationVar> = <inputVar1>;\n";
-	protected static final String templateReduceForBody = "<inputVar2> = <dataVar>[<xVar>];\n"
-			+ "<inputVar1> = <userFunctionName>(<inputVar1>, <inputVar2><params:{var|, <var.name>}>);\n";
-	private static String templateSequentialFunction = "\tfor (int <xVar>=0; <xVar>\\<<xSizeVar>; ++<xVar>) {\n"
-			+ "<isImage:{var|\tfor (int <yVar>=0; <yVar>\\<<ySizeVar>; ++<yVar>) {\n}>"
-			+ "\t\t\t<body>\n" + "<isImage:{var|\t\\}\n}>" + "\t}\n";
-	private static String templateCallUserFunction = "<isImage:{var|int <varGID> = <xVar>+<yVar>*<xSizeVar>;\n}>"
-			+ "<destVarName>[<isArray:{var|<xVar>}><isImage:{var|<varGID>}>] = "
-			+ "<userFunction>(<varName>[<isArray:{var|<xVar>}><isImage:{var|<varGID>}>]<isImage:{var|, <xVar>, <yVar>}><params:{var|, <var.name>}>);";
-	private static final String templateOperationCall = "<destinationVariable:{var|<var.nativeReturnType>[] <var.name> = new <var.nativeReturnType>[<var.size>];\n}>"
-			+ "<initPointer:{var|<var.destName> = ParallelMERuntime.getInstance().createArray(<var.mapClassType>.class, \n\t<var.sizeExpression>);\n}>"
-			+ "<result:{var|<var.name> = }><operationName>(<params:{var|<var.name>}; separator=\", \">);"
-			+ "<fromImage:{var|\n\n<var.name> = <var.value>;}>"
-			+ "<destinationVariable:{var|\n\nreturn new <var.methodReturnType>(<var.expression>);}>";
-	private static final String templateFilter = "\tint <varCount> = 0;\n"
-			+ "\tfor (int <xVar>=0; <xVar>\\<<xSize><isImage:{var| * <ySize>}>; ++<xVar>) {\n"
-			+ "\t\tint PM_value = <dataTileVar>[<xVar>];\n"
-			+ "\t\tif (PM_value >= 0) {\n"
-			+ "\t\t\t<dataRetVar>[<varCount>++] = <dataVar>[PM_value];\n"
-			+ "\t\t}\n" + "\t}\n";
-	private static final String templateFilterTile = "<isParallelImage:{var|\tint <xVar> = get_global_id(0);\n"
-			+ "\tint <yVar> = get_global_id(1);\n"
-			+ "\tint <varGID> = <yVar> * <xSizeVar> + <xVar>;\n}>"
-			+ "<isParallelArray:{var|\tint <varGID> = get_global_id(0);\n}>"
-			+ "<forX:{var|\tfor (int <xVar>=0; <xVar>\\<<xSizeVar>; ++<xVar>) {\n}>"
-			+ "<forY:{var|\tfor (int <yVar>=0; <yVar>\\<<ySizeVar>; ++<yVar>) {\n}>"
-			+ "<forX:{var|int <varGID> = <xVar><forY:{var| + <xSizeVar> * <yVar>}>;}>"
-			+ "\tif (<userFunction>(<dataVar>[PM_gid]<isImage:{var|, <xVar>, <yVar>}><params:{var|<var.type>, <var.name>}>)) {\n"
-			+ "\t\t<dataTileVar>[PM_gid] = PM_gid;\n"
-			+ "\t} else {\n"
-			+ "\t\t<dataTileVar>[PM_gid] = -1;\n"
-			+ "\t}\n"
-			+ "<forX:{var|\t\\}\n}>" + "<forY:{var|\t\\}\n}>";
+	private static final STGroup templates = Templates.load(PMTranslator.class);
 
 	protected CTranslator cCodeTranslator;
 
@@ -88,7 +42,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 * {@inheritDoc}
 	 */
 	public String translateOperationCall(String className, Operation operation) {
-		ST st = new ST(templateOperationCall);
+		ST st = templates.getInstanceOf("operationCall");
 		st.add("fromImage", null);
 		st.add("initPointer", null);
 		st.add("destinationVariable", null);
@@ -96,8 +50,9 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 		st.add("operationName", commonDefinitions.getOperationName(operation));
 		st.addAggr("params.{name}",
 				"ParallelMERuntime.getInstance().runtimePointer");
-		st.addAggr("params.{name}",
-				commonDefinitions.getPointerName(operation.variable));
+		// Passes the producer's input in case it was fused into this operation
+		st.addAggr("params.{name}", commonDefinitions
+				.getPointerName(operation.getInputVariable()));
 		if (operation.operationType == OperationType.Reduce) {
 			fillReduceOperationCall(st, operation);
 		} else if (operation.operationType == OperationType.Foreach) {
@@ -126,7 +81,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 		String size = isImage ? "4" : "1";
 		String methodReturnType = commonDefinitions
 				.getUserLibraryReturnType(operation);
-		ST stExpression = new ST("<params:{var|<var.value>}; separator=\", \">");
+		ST stExpression = templates.getInstanceOf("valueList");
 		stExpression.addAggr("params.{value}", variableName + "[0]");
 		if (isImage) {
 			stExpression.addAggr("params.{value}", variableName + "[1]");
@@ -248,11 +203,17 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 * compatible with this runtime.
 	 */
 	private String translateParallelForeachMap(Operation operation) {
-		ST st = new ST(templateParallelForeachMapFunction);
-		st.add("userFunction",
-				commonDefinitions.getOperationUserFunctionName(operation));
+		ST st = templates.getInstanceOf("parallelForeachMapFunction");
 		st.add("varGID", getGIDVariableName());
-		st.add("varName", commonDefinitions.getDataVarName());
+		String userFunctionCall = getUserFunctionCall(operation,
+				commonDefinitions.getDataVarName() + "["
+						+ getGIDVariableName() + "]");
+		// Fused operations' user functions are applied over the element
+		// returned by the previous user function
+		for (Operation fusedOperation : operation.getFusedOperations())
+			userFunctionCall = getUserFunctionCall(fusedOperation,
+					userFunctionCall);
+		st.add("userFunctionCall", userFunctionCall);
 		if (operation.operationType == OperationType.Map) {
 			st.add("destVarName", commonDefinitions.getDataReturnVarName());
 		} else {
@@ -269,19 +230,39 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 			st.add("isImage", null);
 			st.add("isArray", "");
 		}
-		setExternalVariables(st, operation, false);
 		return createKernelFunction(operation, st.render(),
 				FunctionType.BaseOperation);
 	}
 
+	/**
+	 * Creates a call to the user function of a given operation, passing its
+	 * external variables.
+	 */
+	protected String getUserFunctionCall(Operation operation, String argument) {
+		ST st = templates.getInstanceOf("userFunctionCall");
+		st.add("userFunction",
+				commonDefinitions.getOperationUserFunctionName(operation));
+		st.add("argument", argument);
+		if (commonDefinitions.isImage(operation.variable)) {
+			st.add("isImage", "");
+			String prefix = commonDefinitions.getPrefix();
+			st.add("xVar", prefix + "x");
+			st.add("yVar", prefix + "y");
+		} else {
+			st.add("isImage", null);
+		}
+		setExternalVariables(st, operation, false);
+		return st.render();
+	}
+
 	/**
 	 * Translates a sequential foreach or map operation returning a C code
 	 * compatible with this runtime.
 	 */
 	private String translateSequentialForeachMap(Operation operation) {
-		ST st = new ST(templateSequentialFunction);
+		ST st = templates.getInstanceOf("sequentialFunction");
 		setCommonParameters(operation, st);
-		ST stBody = new ST(templateCallUserFunction);
+		ST stBody = templates.getInstanceOf("callUserFunction");
 		setCommonParameters(operation, stBody);
 		stBody.add("userFunction",
 				commonDefinitions.getOperationUserFunctionName(operation));
@@ -320,7 +301,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 
 	protected String getExpression(String varType, String varName,
 			String attributedVar) {
-		ST st = new ST("<type> <name><attr:{var| = <var.expression>}>");
+		ST st = templates.getInstanceOf("variableDeclaration");
 		st.add("type", varType);
 		st.add("name", varName);
 		st.add("attr", null);
@@ -335,7 +316,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateParallelReduceTile(Operation operation) {
-		ST st = new ST(templateParallelReduceTile);
+		ST st = templates.getInstanceOf("parallelReduceTile");
 		String prefix = commonDefinitions.getPrefix();
 		st.add("xVar", prefix + "x");
 		st.add("gidVar", prefix + "gid");
@@ -349,6 +330,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 		st.add("userFunctionName",
 				commonDefinitions.getOperationUserFunctionName(operation));
 		st.add("dataVar", commonDefinitions.getDataVarName());
+		setElementRead(st, operation.getProducerOperation());
 		st.add("baseVar", getBaseVariableName());
 		if (commonDefinitions.isImage(operation.variable)) {
 			st.add("sizeVar", getWidthVariableName());
@@ -380,13 +362,18 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateFilter(Operation operation) {
-		ST st = new ST(templateFilter);
+		ST st = templates.getInstanceOf("filter");
 		String prefix = this.commonDefinitions.getPrefix();
 		st.add("varCount", prefix + "count");
 		st.add("xVar", prefix + "x");
-		st.add("dataVar", commonDefinitions.getDataVarName());
 		st.add("dataTileVar", commonDefinitions.getDataTileVarName());
 		st.add("dataRetVar", commonDefinitions.getDataReturnVarName());
+		String element = commonDefinitions.getDataVarName() + "[PM_value]";
+		// Foreach operations fused into the filter are applied on each
+		// element kept while it is copied to the destination array
+		for (Operation fusedOperation : operation.getFusedOperations())
+			element = getUserFunctionCall(fusedOperation, element);
+		st.add("element", element);
 		if (commonDefinitions.isImage(operation.variable)) {
 			st.add("xSize", getWidthVariableName());
 			st.add("ySize", getHeightVariableName());
@@ -405,7 +392,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateFilterTile(Operation operation) {
-		ST st = new ST(templateFilterTile);
+		ST st = templates.getInstanceOf("filterTile");
 		st.add("varGID", getGIDVariableName());
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		boolean isImage = commonDefinitions.isImage(operation.variable);
@@ -444,19 +431,18 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	 */
 	@Override
 	protected String translateUserFunction(Operation operation) {
-		String userCode = commonDefinitions.removeCurlyBraces(operation
-				.getUserFunctionData().Code.trim());
-		for (Variable userFunctionVariable : operation.getUserFunctionData().arguments) {
-			userCode = this.translateVariable(userFunctionVariable,
-					this.cCodeTranslator.translate(userCode));
-		}
 		// Replace non-final variables by its equivalent pointer
+		Map<String, String> renamedVariables = new HashMap<>();
 		for (Variable variable : operation.getExternalVariables()) {
 			if (!variable.isFinal()) {
-				userCode = userCode.replaceAll(variable.name, "*"
-						+ commonDefinitions.getPrefix() + variable.name);
+				renamedVariables.put(variable.name,
+						"*" + commonDefinitions.getPrefix() + variable.name);
 			}
 		}
+		String userCode = commonDefinitions
+				.removeCurlyBraces(this.cCodeTranslator.translate(
+						operation.getUserFunctionData(), renamedVariables)
+						.trim());
 		// Foreach operations must add a return statements.
 		if (operation.operationType == OperationType.Foreach) {
 			userCode += String.format("\treturn %s;\n",
@@ -466,12 +452,23 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 				FunctionType.UserCode);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected String translateFusedUserFunction(Operation operation,
+			Operation fusedOperation) {
+		// External variables are passed as parameters, so the fused user
+		// function is translated just like the ones of other operations
+		return translateUserFunction(fusedOperation);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	protected String initializeUserFunctionSignature(Operation operation) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("functionName",
 				commonDefinitions.getOperationUserFunctionName(operation));
 		st.add("returnType", commonDefinitions.getCReturnType(operation));
@@ -498,7 +495,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeForeachSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		st.add("returnType", "void");
 		st.add("isKernel", "");
@@ -519,11 +516,15 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeReduceSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		boolean isImage = commonDefinitions.isImage(operation.variable);
 		String reduceType = commonDefinitions.getCReturnType(operation);
+		String inputType = getInputCType(operation, reduceType);
+		// Filtered reduces inform which tiles kept any element
+		boolean isFiltered = operation
+				.getProducerOperation(OperationType.Filter) != null;
 		if (functionType == FunctionType.BaseOperation) {
 			st.add("returnType", "void");
 			st.add("isKernel", "");
@@ -536,7 +537,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 					&& isImage ? getTileVariableName() : commonDefinitions
 					.getDataVarName();
 			st.addAggr("params.{type, name}",
-					String.format("__global %s*", reduceType), dataVar);
+					String.format("__global %s*", inputType), dataVar);
 			if (!isSequential) {
 				if (isImage) {
 					st.addAggr("params.{type, name}", "int",
@@ -545,6 +546,9 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 					st.addAggr("params.{type, name}",
 							String.format("__global %s*", reduceType),
 							getTileVariableName());
+					if (isFiltered)
+						st.addAggr("params.{type, name}", "__global int*",
+								getTileFoundVariableName());
 					st.addAggr("params.{type, name}", "int",
 							getLengthVariableName());
 					st.addAggr("params.{type, name}", "int",
@@ -559,11 +563,14 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 			st.add("functionName",
 					commonDefinitions.getOperationTileFunctionName(operation));
 			st.addAggr("params.{type, name}",
-					String.format("__global %s*", reduceType),
+					String.format("__global %s*", inputType),
 					commonDefinitions.getDataVarName());
 			st.addAggr("params.{type, name}",
 					String.format("__global %s*", reduceType),
 					this.getTileVariableName());
+			if (isFiltered)
+				st.addAggr("params.{type, name}", "__global int*",
+						getTileFoundVariableName());
 			if (isImage) {
 				st.addAggr("params.{type, name}", "int", getWidthVariableName());
 			} else {
@@ -598,7 +605,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeMapSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		st.add("modifier", null);
 		st.add("returnType", "void");
 		st.add("isKernel", "");
@@ -631,7 +638,7 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	@Override
 	protected String initializeFilterSignature(Operation operation,
 			FunctionType functionType) {
-		ST st = new ST(templateFunctionDecl);
+		ST st = templates.getInstanceOf("functionDecl");
 		boolean isImage = commonDefinitions.isImage(operation.variable);
 		String filterType = commonDefinitions.translateToCType(operation
 				.getUserFunctionData().arguments.get(0).typeName);
@@ -658,6 +665,9 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 				st.addAggr("params.{type, name}", "int",
 						getLengthVariableName());
 			}
+			// Fused foreach operations are called while copying elements
+			if (!operation.getFusedOperations().isEmpty())
+				setExternalVariables(st, operation, true);
 		} else if (functionType == FunctionType.Tile) {
 			st.add("isKernel", "");
 			st.add("modifier", null);
@@ -696,6 +706,35 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 		return st.render();
 	}
 
+	/**
+	 * Returns the C type of the elements read from the input of a given
+	 * operation: the producer's input type in case there is a fused producer
+	 * operation, or varType otherwise.
+	 */
+	protected String getInputCType(Operation operation, String varType) {
+		Operation producer = operation.getProducerOperation();
+		if (producer == null)
+			return varType;
+		return commonDefinitions.translateToCType(producer
+				.getUserFunctionData().arguments.get(0).typeName);
+	}
+
+	/**
+	 * Configure how elements are read in a String Template with a
+	 * "mapFunction" parameter. In case a fused producer operation is
+	 * informed, its user function is applied on each element read.
+	 */
+	protected void setElementRead(ST st, Operation producer) {
+		st.add("mapFunction", null);
+		if (producer != null) {
+			ST stParams = templates.getInstanceOf("externalParams");
+			setExternalVariables(stParams, producer, false);
+			st.addAggr("mapFunction.{name, params}",
+					commonDefinitions.getOperationUserFunctionName(producer),
+					stParams.render());
+		}
+	}
+
 	/**
 	 * Set external variables to a given method call or signature. In case
 	 * 'includeVariableType' is true, it will include external variables' types,
@@ -797,6 +836,10 @@ public abstract class PMTranslator extends BaseUserLibraryTranslator {
 	/**
 	 * Name for worksize variable that is used in C kernel code.
 	 */
+	protected String getTileFoundVariableName() {
+		return commonDefinitions.getPrefix() + "tileFound";
+	}
+
 	protected String getTileSizeVariableName() {
 		return commonDefinitions.getPrefix() + "tileSize";
 	}
@@ -23,7 +23,9 @@ import org.parallelme.compiler.intermediate.Operation.ExecutionType;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.translation.userlibrary.UserLibraryTranslatorDefinition;
 import org.parallelme.compiler.util.FileWriter;
+import org.parallelme.compiler.util.Templates;
 import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
 
 /**
  * Class responsible for all C-related translations.
@@ -31,72 +33,8 @@ import org.stringtemplate.v4.ST;
  * @author Wilson de Carvalho
  */
 public class ParallelMERuntimeCTranslation {
-	private static final String templateCPPFile = "<introductoryMsg>\n\n"
-			+ "#include \"<cClassName>.h\"\n\n" + "#include \\<memory>\n"
-			+ "#include \\<stdexcept>\n" + "#include \\<android/log.h>\n"
-			+ "#include \\<parallelme/ParallelME.hpp>\n"
-			+ "#include \\<parallelme/SchedulerHEFT.hpp>\n"
-			+ "#include \"ParallelMEData.hpp\"\n"
-			+ "#include \"org_parallelme_ParallelMERuntime.h\"\n\n"
-			+ "using namespace parallelme;\n\n"
-			+ "<operation:{var|<var.body>}; separator=\"\n\n\">";
-	private static final String templateHFile = "<introductoryMsg>\n\n"
-			+ "#include \\<jni.h>\n\n" + "#ifndef _Included_<cClassName>\n"
-			+ "#define _Included_<cClassName>\n" + "#ifdef __cplusplus\n"
-			+ "extern \"C\" {\n" + "#endif\n\n"
-			+ "<operation:{var|<var.decl>;}; separator=\"\n\n\">"
-			+ "\n\n#ifdef __cplusplus\n" + "}\n" + "#endif\n" + "#endif\n";
-	private static final String templateOperationFunctionDecl = "JNIEXPORT <returnType> JNICALL Java_<cClassName>_<operationName>\n"
-			+ "\t\t(JNIEnv *<varName:{var|env}>, jobject <varName:{var|self}>, jlong <varName:{var|PM_runtime}>, jlong <varName:{var|PM_data}><params:{var|, <var.decl>}>)";
-	private static final String templateKernelHash = "kernelHash[\"<operationName>\"]\n"
-			+ "<setArgs:{var|\t\t->setArg(<var.index>, <var.name>)\n}>"
-			+ "\t->setWorkSize(<workSize>);";
-	private static final String templateParallelOperationBody = "\tauto PM_runtimePtr = (ParallelMERuntimeData *) PM_runtime;\n"
-			+ "\tauto PM_dataPtr = (<objectType> *) PM_data;\n"
-			+ "<returnPointer:{var|\t\tauto PM_dataRetPtr = (<var.objectType> *) <var.name>;\n}>"
-			+ "\tauto <taskName> = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
-			+ "<tileData:{var|\t\tint <var.name> = <var.expression>;\n}>"
-			+ "<buffers:{var|\t\tauto <var.bufferName> = std::make_shared\\<Buffer>(<var.expression>);\n}>"
-			+ "<destinationVariable:{var|\t\tauto <var.bufferName> = std::make_shared\\<Buffer>(<var.expression>);\n}>"
-			+ "<task:{var|\t\t<taskName>->addKernel(\"<var.operationName>\");\n}>"
-			+ "\t<taskName>->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
-			+ "\t\t<kernelHash:{var|<var.body>}; separator=\"\n\">"
-			+ "\n\t\\});\n"
-			+ "\tPM_runtimePtr->runtime->submitTask(std::move(<taskName>));\n"
-			+ "\tPM_runtimePtr->runtime->finish();\n"
-			+ "<destinationVariable:{var|\t\t<var.bufferName>->copyToJArray(env, <var.name>);\n}>";
-	private static final String templateSequentialOperationBody = "\tauto PM_runtimePtr = (ParallelMERuntimeData *) PM_runtime;\n"
-			+ "\tauto PM_dataPtr = (<objectType> *) PM_data;\n"
-			+ "<returnPointer:{var|\t\tauto PM_dataRetPtr = (<var.objectType> *) <var.name>;\n}>"
-			+ "\tauto <taskName> = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f, 2.0f));\n"
-			+ "<destinationVariable:{var|\t\tauto <var.bufferName> = std::make_shared\\<Buffer>(<var.expression>);\n}>"
-			+ "<buffers:{var|\t\tauto <var.bufferName> = std::make_shared\\<Buffer>(<var.expression>);\n"
-			+ "<var.setArrayBuffer:{var2|\t\t<var.bufferName>->setJArraySource(env, <var.arrName>);\n}>}>"
-			+ "<task:{var|\t\t<taskName>->addKernel(\"<var.operationName>\");\n}>"
-			+ "\t<taskName>->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
-			+ "\t\t<kernelHash:{var|<var.body>}; separator=\"\n\">"
-			+ "\n\t\\});\n"
-			+ "\tPM_runtimePtr->runtime->submitTask(std::move(<taskName>));\n"
-			+ "\tPM_runtimePtr->runtime->finish();\n"
-			+ "<buffers:{var|<var.setArrayBuffer:{var2|\t\t<var.bufferName>->copyToJArray(env, <var.arrName>);\n}>}>"
-			+ "<destinationVariable:{var|\t\t<var.bufferName>->copyToJArray(env, <var.name>);\n}>";
-	private final static String templateKernelFile = "<introductoryMsg>\n\n"
-			+ "#ifndef USERKERNELS_HPP\n" + "#define USERKERNELS_HPP\n\n"
-			+ "const char userKernels[] =\n"
-			+ "\t<kernels:{var|\"<var.line>\"}; separator=\"\n\">;\n"
-			+ "#endif\n";
-	private final static String templateFilter = "\tjintArray PM_tileArray = env->NewIntArray(<tileSize>);\n"
-			+ "\t<bufferName>->copyToJArray(env, PM_tileArray);\n"
-			+ "\tauto <taskName> = std::make_unique\\<Task>(PM_runtimePtr->program<isSequential:{var|, Task::Score(1.0f,2.0f)}>);\n"
-			+ "\tint PM_length = getFilterArrayLength(env, PM_tileArray);\n"
-			+ "\tauto <retVar> = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
-			+ "<task:{var|\t\t<taskName>->addKernel(\"<var.operationName>\");\n}>"
-			+ "\t<taskName>->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
-			+ "\t\t<kernelHash:{var|<var.body>}; separator=\"\n\">"
-			+ "\n\t\\});\n"
-			+ "\tPM_runtimePtr->runtime->submitTask(std::move(<taskName>));\n"
-			+ "\tPM_runtimePtr->runtime->finish();\n"
-			+ "\treturn (jlong)<retVar>;\n";
+	private static final STGroup templates = Templates
+			.load(ParallelMERuntimeCTranslation.class);
 
 	private RuntimeCommonDefinitions commonDefinitions = RuntimeCommonDefinitions
 			.getInstance();
@@ -109,7 +47,7 @@ public class ParallelMERuntimeCTranslation {
 			OperationsAndBinds operationsAndBinds,
 			Map<String, UserLibraryTranslatorDefinition> translators,
 			String outputDestinationFolder) {
-		ST st = new ST(templateKernelFile);
+		ST st = templates.getInstanceOf("kernelFile");
 		// 1. Add header comment
 		st.add("introductoryMsg", commonDefinitions.getHeaderComment());
 		// 2. Translate input binds
@@ -140,7 +78,7 @@ public class ParallelMERuntimeCTranslation {
 			}
 		}
 		FileWriter.writeFile("userKernels.hpp", commonDefinitions
-				.getJNIDestinationFolder(outputDestinationFolder), st.render());
+				.getJNIDestinationFolder(outputDestinationFolder), st);
 	}
 
 	/**
@@ -173,7 +111,7 @@ public class ParallelMERuntimeCTranslation {
 	 */
 	public void createCPPFile(String packageName, String className,
 			List<Operation> operations, String outputDestinationFolder) {
-		ST st = new ST(templateCPPFile);
+		ST st = templates.getInstanceOf("cPPFile");
 		st.add("introductoryMsg", commonDefinitions.getHeaderComment());
 		String cClassName = commonDefinitions.getCClassName(packageName,
 				className);
@@ -189,7 +127,7 @@ public class ParallelMERuntimeCTranslation {
 			}
 		}
 		FileWriter.writeFile(cClassName + ".cpp", commonDefinitions
-				.getJNIDestinationFolder(outputDestinationFolder), st.render());
+				.getJNIDestinationFolder(outputDestinationFolder), st);
 	}
 
 	/**
@@ -227,7 +165,7 @@ public class ParallelMERuntimeCTranslation {
 	private String createParallelForeach(Operation operation) {
 		ST st = initializeParallelOperationBody(operation);
 		int argIndex = 0;
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		stKernelHash.add("setArgs", null);
 		stKernelHash.add("operationName",
 				commonDefinitions.getOperationName(operation));
@@ -253,7 +191,7 @@ public class ParallelMERuntimeCTranslation {
 	private String createParallelMap(Operation operation) {
 		ST st = initializeParallelOperationBody(operation);
 		int argIndex = 0;
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		stKernelHash.add("setArgs", null);
 		stKernelHash.add("operationName",
 				commonDefinitions.getOperationName(operation));
@@ -291,7 +229,7 @@ public class ParallelMERuntimeCTranslation {
 		String operationTileName = commonDefinitions
 				.getOperationTileFunctionName(operation);
 		// Kernel hash for tile function
-		ST stKernelHashTile = new ST(templateKernelHash);
+		ST stKernelHashTile = templates.getInstanceOf("kernelHash");
 		int argIndex = 0;
 		String tileVarBuffer = getTileBufferName();
 		String pointerVarBuffer = commonDefinitions.getDataVarName() + "Ptr->"
@@ -301,6 +239,13 @@ public class ParallelMERuntimeCTranslation {
 				pointerVarBuffer);
 		stKernelHashTile.addAggr("setArgs.{index, name}", argIndex++,
 				tileVarBuffer);
+		// Filtered reduces inform which tiles kept any element
+		boolean isFiltered = operation
+				.getProducerOperation(OperationType.Filter) != null;
+		String tileFoundVarBuffer = getTileFoundBufferName();
+		if (isFiltered)
+			stKernelHashTile.addAggr("setArgs.{index, name}", argIndex++,
+					tileFoundVarBuffer);
 		String tileSizeVar = isImage ? commonDefinitions.getPrefix()
 				+ "tileElemSize" : commonDefinitions.getPrefix() + "tileSize";
 		if (isImage) {
@@ -315,7 +260,7 @@ public class ParallelMERuntimeCTranslation {
 		setExternalVariables(stKernelHashTile, operation, argIndex);
 		st.addAggr("kernelHash.{body}", stKernelHashTile.render());
 		// Kernel hash for base function
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		argIndex = 0;
 		String destVarName = operation.destinationVariable.name;
 		String destVarBuffer = commonDefinitions.getPrefix() + destVarName
@@ -334,6 +279,9 @@ public class ParallelMERuntimeCTranslation {
 					pointerVarBuffer);
 			stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
 					tileVarBuffer);
+			if (isFiltered)
+				stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
+						tileFoundVarBuffer);
 			stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
 					getDataPointerLength());
 			stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
@@ -362,8 +310,13 @@ public class ParallelMERuntimeCTranslation {
 				tileSizeVar, expression);
 		st.addAggr("buffers.{bufferName, expression}", tileVarBuffer,
 				expression2);
+		if (isFiltered)
+			st.addAggr("buffers.{bufferName, expression}", tileFoundVarBuffer,
+					String.format("sizeof(int) * %s", tileSizeVar));
 		st.addAggr("destinationVariable.{bufferName, name, type, expression}",
 				destVarBuffer, destVarName, returnType, expression3);
+		// The reduced value is read on the host
+		st.add("synchronize", true);
 		st.addAggr("kernelHash.{body}", stKernelHash.render());
 		st.addAggr("task.{operationName}",
 				commonDefinitions.getOperationName(operation));
@@ -371,13 +324,13 @@ public class ParallelMERuntimeCTranslation {
 	}
 
 	protected String createFilter(Operation operation) {
-		ST st = new ST(templateFilter);
+		ST st = templates.getInstanceOf("filter");
 		st.add("bufferName", getTileBufferName());
 		st.add("taskName", getTaskName() + "2");
 		st.add("retVar", commonDefinitions.getDataReturnVarName() + "Ptr");
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		st.add("isSequential", isSequential ? "" : null);
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		int argIndex = 0;
 		String pointerRetVarBuffer = commonDefinitions.getDataReturnVarName()
 				+ "Ptr->buffer";
@@ -403,6 +356,9 @@ public class ParallelMERuntimeCTranslation {
 			stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
 					getDataPointerLength());
 		}
+		// Fused foreach operations are called while copying elements
+		if (!operation.getFusedOperations().isEmpty())
+			setExternalVariables(stKernelHash, operation, argIndex);
 		stKernelHash.add("workSize", "1");
 		st.addAggr("task.{operationName}", operationName);
 		st.addAggr("kernelHash.{body}", stKernelHash.render());
@@ -415,7 +371,7 @@ public class ParallelMERuntimeCTranslation {
 		boolean isSequential = operation.getExecutionType() == ExecutionType.Sequential;
 		ST st = isSequential ? initializeSequentialOperationBody(operation)
 				: initializeParallelOperationBody(operation);
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		int argIndex = 0;
 		String tileVarBuffer = getTileBufferName();
 		String pointerVarBuffer = commonDefinitions.getDataVarName() + "Ptr->"
@@ -458,13 +414,16 @@ public class ParallelMERuntimeCTranslation {
 		}
 		st.addAggr("buffers.{bufferName, expression, setArrayBuffer}",
 				tileVarBuffer, bufferExpression, null);
+		// The tile is read on the host to size the filtered array
+		st.add("synchronize", true);
 		st.addAggr("task.{operationName}", operationTileName);
 		st.addAggr("kernelHash.{body}", stKernelHash.render());
 		return st.render();
 	}
 
 	private ST initializeParallelOperationBody(Operation operation) {
-		ST st = new ST(templateParallelOperationBody);
+		ST st = templates.getInstanceOf("parallelOperationBody");
+		st.add("synchronize", null);
 		st.add("returnPointer", null);
 		st.add("objectType", getObjectType(operation));
 		st.add("tileData", null);
@@ -475,7 +434,8 @@ public class ParallelMERuntimeCTranslation {
 	}
 
 	private ST initializeSequentialOperationBody(Operation operation) {
-		ST st = new ST(templateSequentialOperationBody);
+		ST st = templates.getInstanceOf("sequentialOperationBody");
+		st.add("synchronize", null);
 		st.add("returnPointer", null);
 		st.add("objectType", getObjectType(operation));
 		st.add("tileData", null);
@@ -526,7 +486,7 @@ public class ParallelMERuntimeCTranslation {
 		ST st = initializeSequentialOperationBody(operation);
 		String operationName = commonDefinitions.getOperationName(operation);
 		st.addAggr("task.{operationName}", operationName);
-		ST stKernelHash = new ST(templateKernelHash);
+		ST stKernelHash = templates.getInstanceOf("kernelHash");
 		stKernelHash.add("workSize", "1");
 		stKernelHash.add("operationName", operationName);
 		stKernelHash.add("setArgs", null);
@@ -541,6 +501,7 @@ public class ParallelMERuntimeCTranslation {
 					"sizeof(%s) * env->GetArrayLength(%s)", type, destVarName);
 			st.addAggr("destinationVariable.{bufferName, name, expression}",
 					bufferName, destVarName, expression);
+			st.add("synchronize", true);
 			stKernelHash.addAggr("setArgs.{index, name}", argIndex++,
 					bufferName);
 		} else if (operation.operationType == OperationType.Map) {
@@ -584,6 +545,8 @@ public class ParallelMERuntimeCTranslation {
 								commonDefinitions
 										.translateToCType(variable.typeName)),
 						prefixedVarName, "");
+				// Non-final variables are copied back to the host
+				st.add("synchronize", true);
 			}
 		}
 	}
@@ -602,7 +565,7 @@ public class ParallelMERuntimeCTranslation {
 	 */
 	public void createHFile(String packageName, String className,
 			List<Operation> operations, String outputDestinationFolder) {
-		ST st = new ST(templateHFile);
+		ST st = templates.getInstanceOf("hFile");
 		st.add("introductoryMsg", commonDefinitions.getHeaderComment());
 		String cClassName = commonDefinitions.getCClassName(packageName,
 				className);
@@ -613,12 +576,12 @@ public class ParallelMERuntimeCTranslation {
 					createOperationSignature(operation, cClassName, false));
 		}
 		FileWriter.writeFile(cClassName + ".h", commonDefinitions
-				.getJNIDestinationFolder(outputDestinationFolder), st.render());
+				.getJNIDestinationFolder(outputDestinationFolder), st);
 	}
 
 	private String createOperationSignature(Operation operation,
 			String cClassName, boolean declareVarNames) {
-		ST st = new ST(templateOperationFunctionDecl);
+		ST st = templates.getInstanceOf("operationFunctionDecl");
 		st.add("cClassName", cClassName);
 		st.add("operationName", commonDefinitions.getOperationName(operation));
 		st.add("params", null);
@@ -717,4 +680,8 @@ public class ParallelMERuntimeCTranslation {
 	private String getTileBufferName() {
 		return commonDefinitions.getPrefix() + "tileBuffer";
 	}
+
+	private String getTileFoundBufferName() {
+		return commonDefinitions.getPrefix() + "tileFoundBuffer";
+	}
 }
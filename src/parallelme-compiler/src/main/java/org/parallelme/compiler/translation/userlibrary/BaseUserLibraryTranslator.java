@@ -16,13 +16,7 @@ import org.parallelme.compiler.intermediate.Operation;
 import org.parallelme.compiler.intermediate.Operation.OperationType;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.intermediate.Operation.ExecutionType;
-import org.parallelme.compiler.translation.BoxedTypes;
-import org.parallelme.compiler.translation.PrimitiveTypes;
 import org.parallelme.compiler.translation.userlibrary.UserLibraryTranslatorDefinition;
-import org.parallelme.compiler.userlibrary.classes.Float32;
-import org.parallelme.compiler.userlibrary.classes.Int16;
-import org.parallelme.compiler.userlibrary.classes.Int32;
-import org.parallelme.compiler.userlibrary.classes.Pixel;
 
 /**
  * Base class for translators containing code that is shared between different
@@ -55,58 +49,6 @@ public abstract class BaseUserLibraryTranslator implements
 		BaseOperation, Tile, UserCode, SetAllocation;
 	}
 
-	/**
-	 * Translates variables on the give code to a correspondent runtime-specific
-	 * type. Example: replaces all RGB objects by float3 on RenderScript.
-	 * 
-	 * @param variable
-	 *            Variable that must be translated.
-	 * @param code
-	 *            Original code that must have the reference replaced.
-	 * @return A string with the new code with the variable replaced.
-	 */
-	public String translateVariable(Variable variable, String code) {
-		String translatedCode = "";
-		if (variable.typeName.equals(Pixel.getInstance().getClassName())) {
-			translatedCode = this.translatePixelVariable(variable, code);
-		} else if (variable.typeName.equals(Int16.getInstance().getClassName())
-				|| variable.typeName.equals(Int32.getInstance().getClassName())
-				|| variable.typeName.equals(Float32.getInstance()
-						.getClassName())) {
-			translatedCode = this.translateNumericVariable(variable, code);
-		} else if (PrimitiveTypes.isPrimitive(variable.typeName)) {
-			translatedCode = code.replaceAll(variable.typeName,
-					PrimitiveTypes.getCType(variable.typeName));
-		} else if (BoxedTypes.isBoxed(variable.typeName)) {
-			translatedCode = code.replaceAll(variable.typeName,
-					BoxedTypes.getCType(variable.typeName));
-		}
-		return translatedCode;
-	}
-
-	public String translatePixelVariable(Variable variable, String code) {
-		String ret = code.replaceAll(variable.typeName,
-				this.commonDefinitions.translateToCType(variable.typeName));
-		ret = ret.replaceAll(variable.name + ".x", "x");
-		ret = ret.replaceAll(variable.name + ".y", "y");
-		ret = ret
-				.replaceAll(variable.name + ".rgba.red", variable.name + ".s0");
-		ret = ret.replaceAll(variable.name + ".rgba.green", variable.name
-				+ ".s1");
-		ret = ret.replaceAll(variable.name + ".rgba.blue", variable.name
-				+ ".s2");
-		ret = ret.replaceAll(variable.name + ".rgba.alpha", variable.name
-				+ ".s3");
-		return ret;
-	}
-
-	public String translateNumericVariable(Variable variable, String code) {
-		String ret = code.replaceAll(variable.typeName,
-				this.commonDefinitions.translateToCType(variable.typeName));
-		ret = ret.replaceAll(variable.name + ".value", variable.name);
-		return ret;
-	}
-
 	/**
 	 * {@inheritDoc}
 	 */
@@ -124,6 +66,13 @@ public abstract class BaseUserLibraryTranslator implements
 		// C functions must be declared before used, so user function
 		// must be the first
 		ret.add(translateUserFunction(operation));
+		for (Operation fusedOperation : operation.getFusedOperations())
+			ret.add(translateFusedUserFunction(operation, fusedOperation));
+		Operation producer = operation.getProducerOperation();
+		while (producer != null) {
+			ret.add(translateFusedUserFunction(operation, producer));
+			producer = producer.getProducerOperation();
+		}
 		if (operation.operationType == OperationType.Foreach) {
 			ret.add(translateForeach(operation));
 		} else {
@@ -189,6 +138,21 @@ public abstract class BaseUserLibraryTranslator implements
 	 */
 	abstract protected String translateUserFunction(Operation operation);
 
+	/**
+	 * Translates the user code of an operation that was fused into another
+	 * one, either as a fused operation or as its producer. Its user function
+	 * is called by the kernels of the operation it was fused into.
+	 * 
+	 * @param operation
+	 *            Operation that owns the kernel.
+	 * @param fusedOperation
+	 *            Operation fused into the first one.
+	 * @return C code with fused operation's user code compatible with this
+	 *         runtime.
+	 */
+	abstract protected String translateFusedUserFunction(Operation operation,
+			Operation fusedOperation);
+
 	/**
 	 * Given an operation and its body, creates a String with the equivalent
 	 * kernelF function.
@@ -8,20 +8,82 @@
 
 package org.parallelme.compiler.util;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.parallelme.compiler.SimpleLogger;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
 
 /**
  * Offers support for writing translated code.
  * 
+ * Files are first written to a temporary file in the destination folder. If
+ * the destination file already has the same contents, the temporary file is
+ * discarded and the destination file is left untouched, so its timestamp does
+ * not trigger new builds of the generated code. Otherwise the temporary file
+ * atomically replaces the destination file.
+ * 
+ * A thread may instead direct its files to memory, which is how the compiler
+ * returns generated code to build tools and IDEs without touching the disk.
+ * 
  * @author Wilson de Carvalho
  */
 public class FileWriter {
+	private static final AtomicInteger writtenFiles = new AtomicInteger();
+	private static final AtomicInteger skippedFiles = new AtomicInteger();
+	private static final AtomicLong writtenBytes = new AtomicLong();
+	// Absolute paths of the files written or left untouched on disk
+	private static final Set<String> outputFiles = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private static final ThreadLocal<MemoryOutput> memoryOutput = new ThreadLocal<>();
+
+	/**
+	 * Files written to memory by a thread, indexed by their path relative to
+	 * a root folder.
+	 */
+	private static class MemoryOutput {
+		final File rootFolder;
+		final Map<String, byte[]> files;
+
+		MemoryOutput(File rootFolder, Map<String, byte[]> files) {
+			this.rootFolder = rootFolder;
+			this.files = files;
+		}
+	}
+
+	/**
+	 * Contents that can be written to a file.
+	 */
+	private interface Contents {
+		void write(OutputStream os) throws IOException;
+	}
+
 	/**
 	 * Write a given file to disk.
 	 * 
@@ -33,23 +95,218 @@ public class FileWriter {
 	 *            String with the file contents.
 	 */
 	public static void writeFile(String fileName, String destinationFolder,
-			String fileContents) {
-		PrintWriter writer = null;
+			final String fileContents) {
+		writeFile(fileName, destinationFolder, new Contents() {
+			@Override
+			public void write(OutputStream os) throws IOException {
+				Writer writer = new OutputStreamWriter(os, "UTF-8");
+				writer.write(fileContents);
+				writer.flush();
+			}
+		});
+	}
+
+	/**
+	 * Renders a given template straight to disk.
+	 * 
+	 * @param fileName
+	 *            File name (including the desired extension).
+	 * @param destinationFolder
+	 *            Destination folder.
+	 * @param template
+	 *            Template with the file contents.
+	 */
+	public static void writeFile(String fileName, String destinationFolder,
+			final ST template) {
+		writeFile(fileName, destinationFolder, new Contents() {
+			@Override
+			public void write(OutputStream os) throws IOException {
+				Writer writer = new OutputStreamWriter(os, "UTF-8");
+				template.write(new AutoIndentWriter(writer));
+				writer.flush();
+			}
+		});
+	}
+
+	/**
+	 * Copies the contents of a given stream to disk. The stream is not
+	 * closed.
+	 * 
+	 * @param fileName
+	 *            File name (including the desired extension).
+	 * @param destinationFolder
+	 *            Destination folder.
+	 * @param is
+	 *            Stream with the file contents.
+	 */
+	public static void writeFile(String fileName, String destinationFolder,
+			final InputStream is) {
+		writeFile(fileName, destinationFolder, new Contents() {
+			@Override
+			public void write(OutputStream os) throws IOException {
+				IOUtils.copy(is, os);
+			}
+		});
+	}
+
+	/**
+	 * Makes the files written by the current thread be stored in the map
+	 * informed instead of on disk. Each file is indexed by its path relative
+	 * to the root folder informed, with '/' as separator.
+	 * 
+	 * @param rootFolder
+	 *            Folder that destination folders are relative to.
+	 * @param files
+	 *            Map that will hold the files written, or null to write files
+	 *            to disk again.
+	 */
+	public static void setMemoryOutput(String rootFolder,
+			Map<String, byte[]> files) {
+		if (files == null)
+			memoryOutput.remove();
+		else
+			memoryOutput.set(new MemoryOutput(new File(rootFolder)
+					.getAbsoluteFile(), files));
+	}
+
+	private static void writeFile(String fileName, String destinationFolder,
+			Contents contents) {
+		MemoryOutput memory = memoryOutput.get();
+		if (memory != null) {
+			writeFile(fileName, destinationFolder, contents, memory);
+			return;
+		}
+		File temporaryFile = null;
+		Profiler.enter("output");
 		try {
+			File destinationFolderStructure = new File(destinationFolder);
+			if (!destinationFolderStructure.exists())
+				FileUtils.forceMkdir(destinationFolderStructure);
+			File file = new File(destinationFolder, fileName);
+			outputFiles.add(file.getAbsolutePath());
+			temporaryFile = File.createTempFile("." + fileName + "-", ".tmp",
+					destinationFolderStructure);
+			MessageDigest digest = createDigest();
+			OutputStream os = new DigestOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temporaryFile)), digest);
 			try {
-				File destinationFolderStructure = new File(destinationFolder);
-				if (!destinationFolderStructure.exists())
-					FileUtils.forceMkdir(destinationFolderStructure);
-				writer = new PrintWriter(destinationFolder + File.separator
-						+ fileName, "UTF-8");
-				writer.print(fileContents);
-			} catch (IOException e) {
-				SimpleLogger
-						.error("Error while saving file: " + e.getMessage());
+				contents.write(os);
+			} finally {
+				os.close();
 			}
+			if (file.isFile() && file.length() == temporaryFile.length()
+					&& Arrays.equals(digest.digest(), hash(file))) {
+				skippedFiles.incrementAndGet();
+			} else {
+				writtenBytes.addAndGet(temporaryFile.length());
+				move(temporaryFile, file);
+				writtenFiles.incrementAndGet();
+			}
+		} catch (IOException e) {
+			SimpleLogger.error("Error while saving file: " + e.getMessage());
+		} finally {
+			if (temporaryFile != null)
+				temporaryFile.delete();
+			Profiler.exit();
+		}
+	}
+
+	private static void writeFile(String fileName, String destinationFolder,
+			Contents contents, MemoryOutput memory) {
+		Profiler.enter("output");
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			contents.write(os);
+			String path = memory.rootFolder.toURI()
+					.relativize(new File(destinationFolder, fileName)
+					.getAbsoluteFile().toURI()).getPath();
+			memory.files.put(path, os.toByteArray());
+			writtenBytes.addAndGet(os.size());
+			writtenFiles.incrementAndGet();
+		} catch (IOException e) {
+			SimpleLogger.error("Error while saving file: " + e.getMessage());
 		} finally {
-			if (writer != null)
-				writer.close();
+			Profiler.exit();
+		}
+	}
+
+	/**
+	 * Replaces a file with another one, atomically if the file system
+	 * supports it.
+	 */
+	private static void move(File source, File destination)
+			throws IOException {
+		try {
+			Files.move(source.toPath(), destination.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), destination.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Calculates the content hash of a given file.
+	 */
+	private static byte[] hash(File file) throws IOException {
+		MessageDigest digest = createDigest();
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int length;
+			while ((length = is.read(buffer)) != -1)
+				digest.update(buffer, 0, length);
+		} finally {
+			is.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Resets the statistics of written and skipped files.
+	 */
+	public static void resetStatistics() {
+		writtenFiles.set(0);
+		skippedFiles.set(0);
+		writtenBytes.set(0);
+		outputFiles.clear();
+	}
+
+	/**
+	 * Number of files written since the last statistics reset.
+	 */
+	public static int getWrittenFileCount() {
+		return writtenFiles.get();
+	}
+
+	/**
+	 * Number of files left untouched since the last statistics reset because
+	 * their contents did not change.
+	 */
+	public static int getSkippedFileCount() {
+		return skippedFiles.get();
+	}
+
+	/**
+	 * Absolute paths of the files written to disk, or left untouched because
+	 * their contents did not change, since the last statistics reset.
+	 */
+	public static Set<String> getOutputFiles() {
+		return new HashSet<>(outputFiles);
+	}
+
+	/**
+	 * Number of bytes written since the last statistics reset.
+	 */
+	public static long getWrittenBytes() {
+		return writtenBytes.get();
+	}
 }
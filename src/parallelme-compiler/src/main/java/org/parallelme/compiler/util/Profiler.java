@@ -0,0 +1,317 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects wall time, CPU time and allocated bytes spent by the compiler on
+ * each phase and input file.
+ * 
+ * Phases are delimited by calls to enter and exit, which may be nested. Each
+ * measurement is exclusive: time spent on a nested phase is only accounted to
+ * it, so the sum of all phases is the total time spent on phases. Measurements
+ * are kept by thread, so phases may run concurrently on different threads.
+ * When the profiler is not started, enter and exit do nothing.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Profiler {
+	private static final String noFile = "";
+	private static final int slowestFilesCount = 10;
+	private static volatile boolean enabled = false;
+	private static long startTime, wallTime;
+	private static final Map<String, Map<String, Measurement>> measurements = new LinkedHashMap<>();
+	private static final ThreadLocal<String> currentFile = new ThreadLocal<>();
+	private static final ThreadLocal<Deque<Frame>> frames = new ThreadLocal<Deque<Frame>>() {
+		@Override
+		protected Deque<Frame> initialValue() {
+			return new ArrayDeque<>();
+		}
+	};
+	private static final ThreadMXBean threadMXBean = ManagementFactory
+			.getThreadMXBean();
+
+	/**
+	 * Totals measured for a phase.
+	 */
+	private static class Measurement {
+		long calls, wallTime, cpuTime, allocatedBytes;
+
+		void add(Measurement other) {
+			this.calls += other.calls;
+			this.wallTime += other.wallTime;
+			this.cpuTime += other.cpuTime;
+			this.allocatedBytes += other.allocatedBytes;
+		}
+	}
+
+	/**
+	 * A phase currently being executed on a thread.
+	 */
+	private static class Frame {
+		final String phase, file;
+		final long wallTime, cpuTime, allocatedBytes;
+		// Totals of nested phases, which are not accounted to this one.
+		long nestedWallTime, nestedCpuTime, nestedAllocatedBytes;
+
+		Frame(String phase, String file) {
+			this.phase = phase;
+			this.file = file;
+			this.wallTime = System.nanoTime();
+			this.cpuTime = getCpuTime();
+			this.allocatedBytes = getAllocatedBytes();
+		}
+	}
+
+	/**
+	 * Discards previous measurements and starts profiling.
+	 */
+	public static synchronized void start() {
+		measurements.clear();
+		startTime = System.nanoTime();
+		wallTime = 0;
+		enabled = true;
+	}
+
+	/**
+	 * Stops profiling, keeping the measurements for the report.
+	 */
+	public static synchronized void stop() {
+		if (enabled)
+			wallTime = System.nanoTime() - startTime;
+		enabled = false;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets the input file whose phases are executed by the current thread.
+	 * 
+	 * @param file
+	 *            File name or null for phases that do not belong to a single
+	 *            file.
+	 */
+	public static void setFile(String file) {
+		if (enabled)
+			currentFile.set(file);
+	}
+
+	/**
+	 * Marks the beginning of a phase in the current thread. Every call must be
+	 * followed by a call to exit, usually in a finally block.
+	 */
+	public static void enter(String phase) {
+		if (!enabled)
+			return;
+		String file = currentFile.get();
+		frames.get().push(new Frame(phase, file == null ? noFile : file));
+	}
+
+	/**
+	 * Marks the end of the phase most recently entered in the current thread.
+	 */
+	public static void exit() {
+		if (!enabled)
+			return;
+		Deque<Frame> stack = frames.get();
+		Frame frame = stack.poll();
+		if (frame == null)
+			return;
+		long wallTime = System.nanoTime() - frame.wallTime;
+		long cpuTime = getCpuTime() - frame.cpuTime;
+		long allocatedBytes = getAllocatedBytes() - frame.allocatedBytes;
+		Frame parent = stack.peek();
+		if (parent != null) {
+			parent.nestedWallTime += wallTime;
+			parent.nestedCpuTime += cpuTime;
+			parent.nestedAllocatedBytes += allocatedBytes;
+		}
+		Measurement measurement = new Measurement();
+		measurement.calls = 1;
+		measurement.wallTime = wallTime - frame.nestedWallTime;
+		measurement.cpuTime = cpuTime - frame.nestedCpuTime;
+		measurement.allocatedBytes = allocatedBytes
+				- frame.nestedAllocatedBytes;
+		synchronized (Profiler.class) {
+			Map<String, Measurement> phases = measurements.get(frame.file);
+			if (phases == null) {
+				phases = new LinkedHashMap<>();
+				measurements.put(frame.file, phases);
+			}
+			Measurement total = phases.get(frame.phase);
+			if (total == null)
+				phases.put(frame.phase, measurement);
+			else
+				total.add(measurement);
+		}
+	}
+
+	private static long getCpuTime() {
+		return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean
+				.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long getAllocatedBytes() {
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if (bean.isThreadAllocatedMemorySupported()
+					&& bean.isThreadAllocatedMemoryEnabled())
+				return bean.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Writes the report of the last profiling session. The report is written
+	 * in CSV if the file name ends with ".csv", and in JSON otherwise.
+	 * 
+	 * @param reportFile
+	 *            Report file name.
+	 */
+	public static synchronized void writeReport(String reportFile) {
+		File file = new File(reportFile).getAbsoluteFile();
+		String contents = reportFile.toLowerCase().endsWith(".csv") ? createCSVReport()
+				: createJSONReport();
+		FileWriter.writeFile(file.getName(), file.getParent(), contents);
+	}
+
+	/**
+	 * Creates a CSV report with one line for each file and phase. Totals by
+	 * phase are listed with an empty file name.
+	 */
+	static synchronized String createCSVReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("file,phase,calls,wallTimeNs,cpuTimeNs,allocatedBytes\n");
+		for (Map.Entry<String, Measurement> phase : getPhaseTotals()
+				.entrySet())
+			appendCSVLine(sb, noFile, phase.getKey(), phase.getValue());
+		for (Map.Entry<String, Map<String, Measurement>> file : measurements
+				.entrySet()) {
+			if (file.getKey().equals(noFile))
+				continue;
+			for (Map.Entry<String, Measurement> phase : file.getValue()
+					.entrySet())
+				appendCSVLine(sb, file.getKey(), phase.getKey(),
+						phase.getValue());
+		}
+		return sb.toString();
+	}
+
+	private static void appendCSVLine(StringBuilder sb, String file,
+			String phase, Measurement measurement) {
+		sb.append("\"").append(file.replace("\"", "\"\"")).append("\",")
+				.append(phase).append(",").append(measurement.calls)
+				.append(",").append(measurement.wallTime).append(",")
+				.append(measurement.cpuTime).append(",")
+				.append(measurement.allocatedBytes).append("\n");
+	}
+
+	/**
+	 * Creates a JSON report with totals by phase, measurements by file and
+	 * the files that took longer to compile.
+	 */
+	static synchronized String createJSONReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"wallTimeNs\": ").append(wallTime).append(",\n");
+		sb.append("  \"phases\": ");
+		appendJSONPhases(sb, getPhaseTotals(), "  ");
+		sb.append(",\n  \"files\": [");
+		List<Map.Entry<String, Long>> files = new ArrayList<>();
+		for (Map.Entry<String, Map<String, Measurement>> file : measurements
+				.entrySet()) {
+			if (file.getKey().equals(noFile))
+				continue;
+			Measurement total = new Measurement();
+			for (Measurement measurement : file.getValue().values())
+				total.add(measurement);
+			files.add(new AbstractMap.SimpleEntry<>(file.getKey(),
+					total.wallTime));
+			sb.append(files.size() > 1 ? ",\n" : "\n");
+			sb.append("    {\"file\": ").append(quote(file.getKey()))
+					.append(", \"wallTimeNs\": ").append(total.wallTime)
+					.append(", \"cpuTimeNs\": ").append(total.cpuTime)
+					.append(", \"allocatedBytes\": ")
+					.append(total.allocatedBytes).append(", \"phases\": ");
+			appendJSONPhases(sb, file.getValue(), "    ");
+			sb.append("}");
+		}
+		sb.append(files.isEmpty() ? "],\n" : "\n  ],\n");
+		Collections.sort(files, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> o1,
+					Map.Entry<String, Long> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		sb.append("  \"slowestFiles\": [");
+		for (int i = 0; i < Math.min(files.size(), slowestFilesCount); i++) {
+			sb.append(i > 0 ? ", " : "").append("{\"file\": ")
+					.append(quote(files.get(i).getKey()))
+					.append(", \"wallTimeNs\": ")
+					.append(files.get(i).getValue()).append("}");
+		}
+		sb.append("]\n}\n");
+		return sb.toString();
+	}
+
+	private static void appendJSONPhases(StringBuilder sb,
+			Map<String, Measurement> phases, String indentation) {
+		sb.append("[");
+		boolean first = true;
+		for (Map.Entry<String, Measurement> phase : phases.entrySet()) {
+			Measurement measurement = phase.getValue();
+			sb.append(first ? "\n" : ",\n").append(indentation)
+					.append("  {\"phase\": ").append(quote(phase.getKey()))
+					.append(", \"calls\": ").append(measurement.calls)
+					.append(", \"wallTimeNs\": ").append(measurement.wallTime)
+					.append(", \"cpuTimeNs\": ").append(measurement.cpuTime)
+					.append(", \"allocatedBytes\": ")
+					.append(measurement.allocatedBytes).append("}");
+			first = false;
+		}
+		sb.append(first ? "]" : "\n" + indentation + "]");
+	}
+
+	private static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * Sums the measurements of all files by phase.
+	 */
+	private static Map<String, Measurement> getPhaseTotals() {
+		Map<String, Measurement> totals = new LinkedHashMap<>();
+		for (Map<String, Measurement> phases : measurements.values()) {
+			for (Map.Entry<String, Measurement> phase : phases.entrySet()) {
+				Measurement total = totals.get(phase.getKey());
+				if (total == null) {
+					total = new Measurement();
+					totals.put(phase.getKey(), total);
+				}
+				total.add(phase.getValue());
+			}
+		}
+		return totals;
+	}
+}
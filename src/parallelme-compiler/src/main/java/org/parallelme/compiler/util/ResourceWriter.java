@@ -10,7 +10,14 @@ package org.parallelme.compiler.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import org.apache.commons.io.FileUtils;
 import org.parallelme.compiler.SimpleLogger;
@@ -18,6 +25,10 @@ import org.parallelme.compiler.SimpleLogger;
 /**
  * Offers support for exporting resources' files.
  * 
+ * Resources are copied from the compiler JAR or, when running from an
+ * exploded class folder, from the file system. Files are written with
+ * FileWriter, so those that already have the same contents are not touched.
+ * 
  * @author Wilson de Carvalho
  */
 public class ResourceWriter {
@@ -28,7 +39,7 @@ public class ResourceWriter {
 	 */
 	public static void exportResource(String resourceName,
 			String destinationFolder) throws IOException {
-		URL resource = ClassLoader.getSystemClassLoader().getResource(
+		URL resource = ResourceWriter.class.getClassLoader().getResource(
 				resourceName);
 		if (resource == null) {
 			String msg = resourceName
@@ -36,23 +47,71 @@ public class ResourceWriter {
 			SimpleLogger.error(msg);
 			throw new RuntimeException(msg);
 		}
-		File resourceDir = null;
-		resourceDir = new File(resource.getPath());
-		if (resourceDir != null && resourceDir.exists()) {
-			// Get the list of the files contained in the package
-			String[] list = resourceDir.list();
-			for (int i = 0; i < list.length; i++) {
-				String fileOrDirName = list[i];
-				File source = new File(resourceDir.getAbsolutePath()
-						+ File.separator + fileOrDirName);
-				File destiny = new File(destinationFolder + File.separator
-						+ fileOrDirName);
-				if (source.isDirectory()) {
-					FileUtils.copyDirectory(source, destiny);
-				} else if (source.isFile()) {
-					FileUtils.copyFile(source, destiny);
+		exportResource(resource, destinationFolder);
+	}
+
+	/**
+	 * Exports all the contents of a resource folder found in a given URL.
+	 */
+	static void exportResource(URL resource, String destinationFolder)
+			throws IOException {
+		if (resource.getProtocol().equals("jar")) {
+			URLConnection connection = resource.openConnection();
+			// Avoids keeping the JAR open after the export.
+			connection.setUseCaches(false);
+			JarURLConnection jarConnection = (JarURLConnection) connection;
+			String prefix = jarConnection.getEntryName() + "/";
+			JarFile jarFile = jarConnection.getJarFile();
+			try {
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while (entries.hasMoreElements()) {
+					JarEntry entry = entries.nextElement();
+					if (entry.isDirectory()
+							|| !entry.getName().startsWith(prefix))
+						continue;
+					InputStream is = jarFile.getInputStream(entry);
+					try {
+						writeFile(entry.getName().substring(prefix.length()),
+								destinationFolder, is);
+					} finally {
+						is.close();
+					}
+				}
+			} finally {
+				jarFile.close();
+			}
+		} else {
+			File resourceDir;
+			try {
+				resourceDir = new File(resource.toURI());
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+			String prefix = resourceDir.getAbsolutePath() + File.separator;
+			for (File file : FileUtils.listFiles(resourceDir, null, true)) {
+				InputStream is = FileUtils.openInputStream(file);
+				try {
+					writeFile(
+							file.getAbsolutePath().substring(prefix.length())
+									.replace(File.separatorChar, '/'),
+							destinationFolder, is);
+				} finally {
+					is.close();
 				}
 			}
 		}
 	}
+
+	/**
+	 * Writes a resource file given its path relative to the resource folder.
+	 */
+	private static void writeFile(String path, String destinationFolder,
+			InputStream is) {
+		int index = path.lastIndexOf('/');
+		String folder = destinationFolder;
+		if (index != -1)
+			folder += File.separator
+					+ path.substring(0, index).replace('/', File.separatorChar);
+		FileWriter.writeFile(path.substring(index + 1), folder, is);
+	}
 }
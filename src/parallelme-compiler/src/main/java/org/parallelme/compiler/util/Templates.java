@@ -0,0 +1,63 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import java.net.URL;
+
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupFile;
+
+/**
+ * Loads the template groups of the translators.
+ *
+ * Creating templates with <b>new ST(template)</b> lexes, parses and compiles
+ * the template text every time, though translators use the same few templates
+ * over and over. Each translator class keeps its templates in a group file
+ * with the class name and the .stg extension, next to the class in the
+ * resources. Groups are compiled once, when loaded, and
+ * <b>group.getInstanceOf(name)</b> creates new instances that reuse the
+ * compiled code.
+ *
+ * Templates are written as <b>name(args) ::= &lt;&lt;...&gt;&gt;</b>. The
+ * first newline after &lt;&lt; and the last newline before &gt;&gt; are not
+ * part of the template, so a template that must end with a newline has an
+ * empty line before &gt;&gt;.
+ *
+ * @author Wilson de Carvalho
+ */
+public class Templates {
+	/**
+	 * Loads the template group of a given class. The group imports the
+	 * group of the nearest superclass that has one, so subclasses may use
+	 * and override the templates of their superclasses.
+	 *
+	 * @param c
+	 *            Class whose templates are in the same package, in a group
+	 *            file named after the class.
+	 * @return The loaded group.
+	 */
+	public static synchronized STGroup load(Class<?> c) {
+		URL url = c.getResource(c.getSimpleName() + ".stg");
+		if (url == null)
+			throw new RuntimeException("Template group not found for class "
+					+ c.getName());
+		STGroupFile group = new STGroupFile(url, "UTF-8", '<', '>');
+		for (Class<?> superclass = c.getSuperclass(); superclass != null; superclass = superclass
+				.getSuperclass()) {
+			if (superclass.getResource(superclass.getSimpleName() + ".stg") != null) {
+				group.importTemplates(load(superclass));
+				break;
+			}
+		}
+		// Compiled templates are numbered with a static counter, so groups
+		// must be loaded eagerly and one at a time.
+		group.load();
+		return group;
+	}
+}
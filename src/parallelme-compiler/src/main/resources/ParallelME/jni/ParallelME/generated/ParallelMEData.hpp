@@ -9,8 +9,16 @@
 #ifndef PARALLELMEDATA_HPP
 #define PARALLELMEDATA_HPP
 
+#include <future>
+#include <vector>
 #include <parallelme/ParallelME.hpp>
 
+/**
+ * Completion of a submitted task. Data that was never used by a task holds an
+ * invalid (default constructed) completion.
+ */
+typedef std::shared_future<void> TaskCompletion;
+
 struct ParallelMERuntimeData {
     std::shared_ptr<parallelme::Runtime> runtime;
     std::shared_ptr<parallelme::Program> program;
@@ -21,12 +29,56 @@ struct ImageData {
     jint width;
     jint height;
     jint workSize;
+    // Completion of the last task submitted with this image.
+    TaskCompletion task;
 };
 
 struct ArrayData {
     std::shared_ptr<parallelme::Buffer> buffer;
     jint length;
     jint workSize;
+    // Completion of the last task submitted with this array.
+    TaskCompletion task;
 };
 
+/**
+ * Submits a task without waiting for it to finish. The scheduler may run
+ * tasks on different devices at the same time, so the task is only
+ * configured by the worker that runs it once the tasks it depends on are
+ * done. Operations chained on the same data thus run in order without
+ * blocking the caller. Returns the completion of the new task, which must be
+ * stored in the data used by it.
+ */
+inline TaskCompletion submitAsyncTask(ParallelMERuntimeData *runtimePtr,
+        std::unique_ptr<parallelme::Task> task,
+        std::vector<TaskCompletion> dependencies,
+        parallelme::Task::KernelFunction configFunction) {
+    auto done = std::make_shared<std::promise<void>>();
+    TaskCompletion completion = done->get_future().share();
+    task->setConfigFunction([=](parallelme::DevicePtr &device,
+            parallelme::KernelHash &kernelHash) {
+        for (auto &dependency : dependencies) {
+            if (dependency.valid())
+                dependency.wait();
+        }
+        configFunction(device, kernelHash);
+    });
+    task->setFinishFunction([=](parallelme::DevicePtr &device,
+            parallelme::KernelHash &kernelHash) {
+        device->finish();
+        done->set_value();
+    });
+    runtimePtr->runtime->submitTask(std::move(task));
+    return completion;
+}
+
+/**
+ * Waits for a submitted task in case it was not finished yet. Must only be
+ * called before data used by the task is read on the host.
+ */
+inline void waitTask(const TaskCompletion &task) {
+    if (task.valid())
+        task.wait();
+}
+
 #endif // !PARALLELMEDATA_HPP
\ No newline at end of file
@@ -64,6 +64,7 @@ JNIEXPORT jlong JNICALL Java_org_parallelme_ParallelMERuntime_nativeCreateArray_
 
 JNIEXPORT void JNICALL Java_org_parallelme_ParallelMERuntime_nativeToArray(JNIEnv *env, jobject self, jlong arrPtr, jobject data) {
 	auto arrayPtr = (ArrayData *) arrPtr;
+	waitTask(arrayPtr->task);
 	jarray *arr = reinterpret_cast<jarray*>(&data);
 	arrayPtr->buffer->copyToJArray(env, *arr);
 	delete arrayPtr;
@@ -83,14 +84,13 @@ JNIEXPORT jlong JNICALL Java_org_parallelme_ParallelMERuntime_nativeCreateBitmap
 
 	auto task = std::make_unique<Task>(runtimePtr->program);
 	task->addKernel("toFloatBitmapImage");
-	task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {
+	imagePtr->task = submitAsyncTask(runtimePtr, std::move(task), {},
+			[=](DevicePtr &device, KernelHash &kernelHash) {
 		kernelHash["toFloatBitmapImage"]
 			->setArg(0, imagePtr->inputBuffer)
 			->setArg(1, imagePtr->outputBuffer)
 			->setWorkSize(imagePtr->workSize);
 	});
-	runtimePtr->runtime->submitTask(std::move(task));
-	runtimePtr->runtime->finish();
 	return (jlong) imagePtr;
 }
 
@@ -100,14 +100,13 @@ JNIEXPORT void JNICALL Java_org_parallelme_ParallelMERuntime_nativeToBitmapBitma
 
 	auto task = std::make_unique<Task>(runtimePtr->program);
 	task->addKernel("toBitmapBitmapImage");
-	task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {
+	waitTask(submitAsyncTask(runtimePtr, std::move(task), {imagePtr->task},
+			[=](DevicePtr &device, KernelHash &kernelHash) {
 		kernelHash["toBitmapBitmapImage"]
 			->setArg(0, imagePtr->outputBuffer)
 			->setArg(1, imagePtr->inputBuffer)
 			->setWorkSize(imagePtr->workSize);
-	});
-	runtimePtr->runtime->submitTask(std::move(task));
-	runtimePtr->runtime->finish();
+	}));
 	imagePtr->inputBuffer->copyToAndroidBitmap(env, bitmap);
 
 	delete imagePtr;
@@ -127,14 +126,13 @@ JNIEXPORT jlong JNICALL Java_org_parallelme_ParallelMERuntime_nativeCreateHDRIma
 
 	auto task = std::make_unique<Task>(runtimePtr->program);
 	task->addKernel("toFloatHDRImage");
-	task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {
+	imagePtr->task = submitAsyncTask(runtimePtr, std::move(task), {},
+			[=](DevicePtr &device, KernelHash &kernelHash) {
 		kernelHash["toFloatHDRImage"]
 			->setArg(0, imagePtr->inputBuffer)
 			->setArg(1, imagePtr->outputBuffer)
 			->setWorkSize(imagePtr->workSize);
 	});
-	runtimePtr->runtime->submitTask(std::move(task));
-	runtimePtr->runtime->finish();
 	return (jlong) imagePtr;
 }
 
@@ -144,14 +142,13 @@ JNIEXPORT void JNICALL Java_org_parallelme_ParallelMERuntime_nativeToBitmapHDRIm
 
 	auto task = std::make_unique<Task>(runtimePtr->program);
 	task->addKernel("toBitmapHDRImage");
-	task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {
+	waitTask(submitAsyncTask(runtimePtr, std::move(task), {imagePtr->task},
+			[=](DevicePtr &device, KernelHash &kernelHash) {
 		kernelHash["toBitmapHDRImage"]
 			->setArg(0, imagePtr->outputBuffer)
 			->setArg(1, imagePtr->inputBuffer)
 			->setWorkSize(imagePtr->workSize);
-	});
-	runtimePtr->runtime->submitTask(std::move(task));
-	runtimePtr->runtime->finish();
+	}));
 	imagePtr->inputBuffer->copyToAndroidBitmap(env, bitmap);
 
 	delete imagePtr;
@@ -0,0 +1,88 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Performs tests to validate BuildManifest class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class BuildManifestTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests if a saved manifest is loaded with the same contents.
+	 */
+	@Test
+	public void saveAndLoad() throws Exception {
+		String destinationFolder = folder.getRoot().getPath();
+		BuildManifest manifest = new BuildManifest();
+		BuildManifest.Entry entry = new BuildManifest.Entry("A.java", "aaa");
+		entry.packageName = "org.foo";
+		entry.className = "A";
+		entry.artifacts.add("./java/org/foo/A.java");
+		manifest.put(entry);
+		manifest.put(new BuildManifest.Entry("B.java", "bbb"));
+		manifest.getSharedArtifacts().add("./jni/Android.mk");
+		manifest.save(destinationFolder);
+		BuildManifest loaded = BuildManifest.load(destinationFolder);
+		assertEquals(2, loaded.getEntries().size());
+		assertEquals("A.java", loaded.getEntries().get(0).file);
+		BuildManifest.Entry loadedEntry = loaded.get("A.java");
+		assertEquals("aaa", loadedEntry.hash);
+		assertEquals("org.foo", loadedEntry.packageName);
+		assertEquals("A", loadedEntry.className);
+		assertEquals(entry.artifacts, loadedEntry.artifacts);
+		assertFalse(loaded.get("B.java").hasCompiledClass());
+		assertEquals(manifest.getSharedArtifacts(),
+				loaded.getSharedArtifacts());
+	}
+
+	/**
+	 * Tests if files are only up to date when their hash is the same and all
+	 * their artifacts exist.
+	 */
+	@Test
+	public void upToDate() throws Exception {
+		String destinationFolder = folder.getRoot().getPath();
+		BuildManifest manifest = new BuildManifest();
+		BuildManifest.Entry entry = new BuildManifest.Entry("A.java", "aaa");
+		entry.artifacts.add("./java/A.java");
+		manifest.put(entry);
+		assertFalse(manifest.isUpToDate("A.java", "aaa", destinationFolder));
+		FileUtils.write(new File(destinationFolder, "java/A.java"), "");
+		assertTrue(manifest.isUpToDate("A.java", "aaa", destinationFolder));
+		assertFalse(manifest.isUpToDate("A.java", "bbb", destinationFolder));
+		assertFalse(manifest.isUpToDate("B.java", "aaa", destinationFolder));
+	}
+
+	/**
+	 * Tests that a missing or unknown manifest results in an empty one.
+	 */
+	@Test
+	public void invalidManifest() throws Exception {
+		String destinationFolder = folder.getRoot().getPath();
+		assertTrue(BuildManifest.load(destinationFolder).getEntries()
+				.isEmpty());
+		FileUtils.write(new File(destinationFolder,
+				BuildManifest.fileName), "version\t0\nfile\tA.java\taaa\n");
+		assertTrue(BuildManifest.load(destinationFolder).getEntries()
+				.isEmpty());
+	}
+}
@@ -12,6 +12,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 import org.parallelme.compiler.CompilerArgsVerification.CompilerParameters;
+import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
 
 /**
  * Performs all tests to validate CompilerArgsVerification class and simulate
@@ -148,4 +149,84 @@ public class CompilerArgsVerificationTest {
 		args[3] = destinationFolder;
 		(new CompilerArgsVerification()).checkArgs(args);
 	}
+
+	/**
+	 * Testing the number of compilation threads.
+	 */
+	@Test
+	public void checkThreadsArg() throws Exception {
+		String file = "../samples/BitmapUserLibraryTest.java";
+		String destinationFolder = "./";
+		String args[] = new String[] { "-f", file, "-o", destinationFolder };
+		assertEquals(1, (new CompilerArgsVerification()).checkArgs(args).threads);
+		args = new String[] { "-j", "4", "-f", file, "-o", destinationFolder };
+		CompilerParameters cp = (new CompilerArgsVerification())
+				.checkArgs(args);
+		this.assertParameters(cp, destinationFolder, file);
+		assertEquals(4, cp.threads);
+	}
+
+	/**
+	 * Testing invalid number of compilation threads.
+	 */
+	@Test(expected = Exception.class)
+	public void checkInvalidThreadsArg() throws Exception {
+		String args[] = new String[] { "-f",
+				"../samples/BitmapUserLibraryTest.java", "-o", "./", "-j", "0" };
+		(new CompilerArgsVerification()).checkArgs(args);
+	}
+
+	/**
+	 * Testing the target runtimes.
+	 */
+	@Test
+	public void checkTargetsArg() throws Exception {
+		String file = "../samples/BitmapUserLibraryTest.java";
+		String destinationFolder = "./";
+		String args[] = new String[] { "-f", file, "-o", destinationFolder };
+		assertEquals(2, (new CompilerArgsVerification()).checkArgs(args).targets
+				.size());
+		args = new String[] { "--targets", "pm", "-f", file, "-o",
+				destinationFolder };
+		CompilerParameters cp = (new CompilerArgsVerification())
+				.checkArgs(args);
+		this.assertParameters(cp, destinationFolder, file);
+		assertEquals(1, cp.targets.size());
+		assertTrue(cp.targets.contains(TargetRuntime.ParallelME));
+	}
+
+	/**
+	 * Testing invalid target runtimes.
+	 */
+	@Test(expected = Exception.class)
+	public void checkInvalidTargetsArg() throws Exception {
+		String args[] = new String[] { "-f",
+				"../samples/BitmapUserLibraryTest.java", "-o", "./",
+				"--targets", "opencl" };
+		(new CompilerArgsVerification()).checkArgs(args);
+	}
+
+	/**
+	 * Testing the dataflow graph dump format.
+	 */
+	@Test
+	public void checkDataflowArg() throws Exception {
+		String file = "../samples/BitmapUserLibraryTest.java";
+		String args[] = new String[] { "-f", file, "-o", "./" };
+		assertNull((new CompilerArgsVerification()).checkArgs(args).dataflowFormat);
+		args = new String[] { "-f", file, "-o", "./", "--dataflow", "dot" };
+		assertEquals("dot",
+				(new CompilerArgsVerification()).checkArgs(args).dataflowFormat);
+	}
+
+	/**
+	 * Testing invalid dataflow graph dump format.
+	 */
+	@Test(expected = Exception.class)
+	public void checkInvalidDataflowArg() throws Exception {
+		String args[] = new String[] { "-f",
+				"../samples/BitmapUserLibraryTest.java", "-o", "./",
+				"--dataflow", "xml" };
+		(new CompilerArgsVerification()).checkArgs(args);
+	}
 }
@@ -0,0 +1,109 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Performs tests to validate CompilerDaemon class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilerDaemonTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests if relative input and output paths are resolved against the
+	 * client working directory, leaving other arguments untouched.
+	 */
+	@Test
+	public void resolvePaths() {
+		String workingDirectory = new File("/home/user/app").getAbsolutePath();
+		String absoluteFile = new File("/tmp/B.java").getAbsolutePath();
+		String[] args = new String[] { "-j", "2", "-f",
+				"\"src/A.java;" + absoluteFile + "\"", "-o", "out" };
+		String[] resolved = CompilerDaemon.resolvePaths(args,
+				workingDirectory);
+		assertEquals("-j", resolved[0]);
+		assertEquals("2", resolved[1]);
+		assertEquals("-f", resolved[2]);
+		assertEquals(new File(workingDirectory, "src/A.java").getPath() + ";"
+				+ absoluteFile, resolved[3]);
+		assertEquals("-o", resolved[4]);
+		assertEquals(new File(workingDirectory, "out").getPath(), resolved[5]);
+	}
+
+	/**
+	 * Tests a compile request sent by the client to a running daemon: the
+	 * daemon must compile relative paths against the client working directory
+	 * and return the compiler exit status and output, until it is stopped.
+	 */
+	@Test(timeout = 60000)
+	public void roundTrip() throws Exception {
+		ServerSocket freePort = new ServerSocket(0);
+		final int port = freePort.getLocalPort();
+		freePort.close();
+		Thread daemon = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					new CompilerDaemon(port).serve();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		daemon.start();
+		File destinationFolder = folder.newFolder("out");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int status = send(port, new String[] { "-f",
+				"../samples/BitmapUserLibraryTest.java", "-o",
+				destinationFolder.getPath() }, output);
+		assertEquals(0, status);
+		assertTrue(new File(destinationFolder,
+				"java/org/parallelme/samples/bitmaptest/BitmapUserLibraryTest.java")
+				.isFile());
+		output.reset();
+		status = send(port, new String[] { "-o" }, output);
+		assertEquals(1, status);
+		assertTrue(output.toString("UTF-8").contains(
+				"accepts the following arguments"));
+		assertEquals(0, send(port, new String[] { CompilerDaemon.stopCommand },
+				output));
+		daemon.join();
+	}
+
+	/**
+	 * Sends a request, retrying while the daemon is not listening yet.
+	 */
+	private int send(int port, String[] args, ByteArrayOutputStream output)
+			throws Exception {
+		PrintStream out = new PrintStream(output, true, "UTF-8");
+		for (int i = 0;; i++) {
+			try {
+				return CompilerClient.send(port, args, out);
+			} catch (IOException e) {
+				if (i == 100)
+					throw e;
+				Thread.sleep(100);
+			}
+		}
+	}
+}
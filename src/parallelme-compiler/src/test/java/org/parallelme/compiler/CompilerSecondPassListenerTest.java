@@ -0,0 +1,127 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import static org.junit.Assert.*;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.junit.Test;
+import org.parallelme.compiler.antlr.JavaLexer;
+import org.parallelme.compiler.antlr.JavaParser;
+import org.parallelme.compiler.intermediate.Operation;
+import org.parallelme.compiler.intermediate.OutputBind;
+import org.parallelme.compiler.symboltable.RootSymbol;
+
+/**
+ * Performs tests to validate the second pass listener.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilerSecondPassListenerTest {
+	private CompilerSecondPassListener secondPass(String code) {
+		CommonTokenStream tokenStream = new CommonTokenStream(new JavaLexer(
+				new ANTLRInputStream(code)));
+		ParseTree tree = new JavaParser(tokenStream).compilationUnit();
+		RootSymbol symbolTable = new RootSymbol();
+		new ParseTreeWalker().walk(new CompilerFirstPassListener(symbolTable),
+				tree);
+		CompilerSecondPassListener listener = new CompilerSecondPassListener(
+				tokenStream, symbolTable);
+		new ParseTreeWalker().walk(listener, tree);
+		return listener;
+	}
+
+	/**
+	 * Tests that user library fields declared after the methods that use them
+	 * are found by the second pass.
+	 */
+	@Test
+	public void forwardReference() {
+		CompilerSecondPassListener listener = this.secondPass("package foo;\n"
+				+ "class Foo {\n"
+				+ "  Bitmap process(Bitmap bitmap) {\n"
+				+ "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        pixel.rgba.red = factor * pixel.rgba.green;\n"
+				+ "      }\n"
+				+ "    });\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n"
+				+ "  }\n"
+				+ "  private float factor;\n"
+				+ "  private BitmapImage image;\n"
+				+ "}");
+		assertEquals("foo", listener.getPackageName());
+		assertEquals(2, listener.getOperationsAndBinds().size());
+		Operation operation = (Operation) listener.getOperationsAndBinds()
+				.get(0);
+		assertEquals("image", operation.variable.name);
+		assertEquals(1, operation.getExternalVariables().size());
+		assertEquals("factor", operation.getExternalVariables().get(0).name);
+		assertTrue(listener.getOperationsAndBinds().get(1) instanceof OutputBind);
+	}
+
+	/**
+	 * Tests that the pruned walk skips members and statements that do not
+	 * refer to user library variables and finds the same data as a full walk.
+	 */
+	@Test
+	public void prunedWalk() {
+		String code = "package foo;\n"
+				+ "class Foo {\n"
+				+ "  private int counter;\n"
+				+ "  int plain(int x) {\n"
+				+ "    return x * 2;\n"
+				+ "  }\n"
+				+ "  Bitmap process(Bitmap bitmap) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    int y = plain(1);\n"
+				+ "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        if (pixel.rgba.red > 0) {\n"
+				+ "          pixel.rgba.red = factor * pixel.rgba.green;\n"
+				+ "        }\n"
+				+ "      }\n"
+				+ "    });\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n"
+				+ "  }\n"
+				+ "  private float factor;\n"
+				+ "}";
+		CommonTokenStream tokenStream = new CommonTokenStream(new JavaLexer(
+				new ANTLRInputStream(code)));
+		ParseTree tree = new JavaParser(tokenStream).compilationUnit();
+		RootSymbol symbolTable = new RootSymbol();
+		new ParseTreeWalker().walk(new CompilerFirstPassListener(symbolTable),
+				tree);
+		CompilerSecondPassListener listener = new CompilerSecondPassListener(
+				tokenStream, symbolTable);
+		UserLibraryTreeWalker walker = new UserLibraryTreeWalker(tokenStream,
+				symbolTable);
+		walker.walk(listener, tree);
+		// The counter and factor fields, the plain method and the statements
+		// that declare y and return bitmap.
+		assertEquals(5, walker.getSkippedSubtreeCount());
+		CompilerSecondPassListener fullWalkListener = this.secondPass(code);
+		assertEquals(fullWalkListener.getOperationsAndBinds().size(), listener
+				.getOperationsAndBinds().size());
+		Operation operation = (Operation) listener.getOperationsAndBinds()
+				.get(0);
+		assertEquals(1, operation.getExternalVariables().size());
+		assertEquals("factor", operation.getExternalVariables().get(0).name);
+		assertEquals(
+				((Operation) fullWalkListener.getOperationsAndBinds().get(0))
+						.getUserFunctionData().Code, operation
+						.getUserFunctionData().Code);
+		assertTrue(listener.getOperationsAndBinds().get(1) instanceof OutputBind);
+	}
+}
@@ -0,0 +1,596 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
+
+/**
+ * Performs tests to validate the Compiler class front end.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CompilerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that valid code is parsed by the SLL stage alone.
+	 */
+	@Test
+	public void sllParse() throws Exception {
+		Compiler compiler = new Compiler();
+		compiler.compile(
+				new String[] { "../samples/BitmapUserLibraryTest.java" },
+				folder.newFolder("out").getPath());
+		assertEquals(1, compiler.getSLLParseCount());
+		assertEquals(0, compiler.getLLFallbackCount());
+	}
+
+	/**
+	 * Tests that code that the SLL stage cannot parse is parsed again with
+	 * full LL prediction.
+	 */
+	@Test
+	public void llFallback() throws Exception {
+		File file = new File(folder.getRoot(), "Foo.java");
+		FileUtils.write(file, "package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Foo { void bar() { int x = ; } }");
+		Compiler compiler = new Compiler();
+		compiler.compile(new String[] { file.getPath() },
+				folder.newFolder("out").getPath());
+		assertEquals(0, compiler.getSLLParseCount());
+		assertEquals(1, compiler.getLLFallbackCount());
+	}
+
+	/**
+	 * Tests that files that do not use the user library are skipped before
+	 * parsing.
+	 */
+	@Test
+	public void skipFilesWithoutUserLibrary() throws Exception {
+		File file = new File(folder.getRoot(), "Foo.java");
+		FileUtils.write(file, "package foo;\nclass Foo { }");
+		File destinationFolder = folder.newFolder("out");
+		Compiler compiler = new Compiler();
+		compiler.compile(new String[] { file.getPath(),
+				"../samples/BitmapUserLibraryTest.java" },
+				destinationFolder.getPath());
+		assertEquals(1, compiler.getSkippedFileCount());
+		assertEquals(1, compiler.getSLLParseCount());
+		assertFalse(new File(destinationFolder, "java/foo").exists());
+	}
+
+	/**
+	 * Tests that the streaming mode generates the same files as the default
+	 * mode.
+	 */
+	@Test
+	public void streaming() throws Exception {
+		File file = new File(folder.getRoot(), "Foo.java");
+		FileUtils.write(file, "package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Foo {\n"
+				+ "  Bitmap bar(Bitmap bitmap) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n"
+				+ "  }\n"
+				+ "}");
+		String[] files = new String[] { file.getPath(),
+				"../samples/BitmapUserLibraryTest.java" };
+		File defaultFolder = folder.newFolder("default");
+		new Compiler().compile(files, defaultFolder.getPath());
+		File streamingFolder = folder.newFolder("streaming");
+		Compiler compiler = new Compiler(2, false, true);
+		compiler.compile(files, streamingFolder.getPath());
+		assertEquals(2, compiler.getSLLParseCount());
+		assertTrue(compiler.getFirstPassPeakHeap() > 0);
+		assertTrue(compiler.getSecondPassPeakHeap() > 0);
+		Collection<File> generatedFiles = FileUtils.listFiles(defaultFolder,
+				null, true);
+		assertEquals(generatedFiles.size(),
+				FileUtils.listFiles(streamingFolder, null, true).size());
+		for (File generatedFile : generatedFiles) {
+			String path = defaultFolder.toURI()
+					.relativize(generatedFile.toURI()).getPath();
+			assertTrue(path, FileUtils.contentEquals(generatedFile, new File(
+					streamingFolder, path)));
+		}
+	}
+
+	private File writeClass(String fileName, String className, String factor)
+			throws Exception {
+		File file = new File(folder.getRoot(), "src/" + fileName);
+		FileUtils.write(file, "package foo;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "import org.parallelme.userlibrary.image.Pixel;\n"
+				+ "class " + className + " {\n"
+				+ "  Bitmap bar(Bitmap bitmap) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      @Override\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        pixel.rgba.red = pixel.rgba.red * " + factor
+				+ ";\n" + "      }\n" + "    });\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n" + "  }\n" + "}");
+		return file;
+	}
+
+	/**
+	 * Compiles the files informed incrementally to a given folder, checking
+	 * that the output is the same as the one of a clean build of the same
+	 * files.
+	 * 
+	 * @return Number of files that were up to date.
+	 */
+	private int compileIncrementally(File[] files, File destinationFolder,
+			Set<TargetRuntime> targets) throws Exception {
+		String[] fileNames = new String[files.length];
+		for (int i = 0; i < files.length; i++)
+			fileNames[i] = files[i].getPath();
+		Compiler compiler = new Compiler(1, true);
+		compiler.setTargets(targets);
+		compiler.compile(fileNames, destinationFolder.getPath());
+		File cleanFolder = new File(folder.getRoot(), "clean");
+		FileUtils.deleteDirectory(cleanFolder);
+		Compiler cleanCompiler = new Compiler(1, true);
+		cleanCompiler.setTargets(targets);
+		cleanCompiler.compile(fileNames, cleanFolder.getPath());
+		assertEquals(0, cleanCompiler.getUpToDateFileCount());
+		Collection<File> generatedFiles = FileUtils.listFiles(cleanFolder,
+				null, true);
+		assertEquals(generatedFiles.size(),
+				FileUtils.listFiles(destinationFolder, null, true).size());
+		for (File generatedFile : generatedFiles) {
+			String path = cleanFolder.toURI()
+					.relativize(generatedFile.toURI()).getPath();
+			assertTrue(path, FileUtils.contentEquals(generatedFile, new File(
+					destinationFolder, path)));
+		}
+		return compiler.getUpToDateFileCount();
+	}
+
+	/**
+	 * Tests that incremental builds skip unchanged files, compile changed ones
+	 * along with the last class, which writes userKernels.hpp, remove the
+	 * files generated for deleted or renamed classes and compile everything
+	 * again when the target runtimes change. In all cases the output must be
+	 * the same as the one of a clean build.
+	 */
+	@Test
+	public void incremental() throws Exception {
+		File foo = this.writeClass("Foo.java", "Foo", "2");
+		File bar = this.writeClass("Bar.java", "Bar", "3");
+		File baz = this.writeClass("Baz.java", "Baz", "4");
+		File destinationFolder = folder.newFolder("out");
+		Set<TargetRuntime> both = EnumSet.allOf(TargetRuntime.class);
+		assertEquals(0, this.compileIncrementally(new File[] { foo, bar, baz },
+				destinationFolder, both));
+		assertEquals(3, this.compileIncrementally(new File[] { foo, bar, baz },
+				destinationFolder, both));
+		// Foo and the last class are compiled again
+		this.writeClass("Foo.java", "Foo", "5");
+		assertEquals(1, this.compileIncrementally(new File[] { foo, bar, baz },
+				destinationFolder, both));
+		// Deleted file
+		assertTrue(bar.delete());
+		assertEquals(1, this.compileIncrementally(new File[] { foo, baz },
+				destinationFolder, both));
+		assertFalse(new File(destinationFolder, "java/foo/Bar.java").exists());
+		// File that now declares another class. Foo is compiled again as
+		// well, since it is the last class that was up to date
+		this.writeClass("Baz.java", "Qux", "4");
+		assertEquals(0, this.compileIncrementally(new File[] { foo, baz },
+				destinationFolder, both));
+		assertFalse(new File(destinationFolder, "java/foo/Baz.java").exists());
+		assertTrue(new File(destinationFolder, "java/foo/Qux.java").exists());
+		// Target runtimes changed
+		assertEquals(0, this.compileIncrementally(new File[] { foo, baz },
+				destinationFolder, EnumSet.of(TargetRuntime.RenderScript)));
+	}
+
+	/**
+	 * Tests that sources held in memory are compiled to a virtual file tree
+	 * and that warnings are reported as diagnostics.
+	 */
+	@Test
+	public void inMemory() throws Exception {
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.Array;\n"
+				+ "import org.parallelme.userlibrary.datatype.Int32;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "class Foo {\n"
+				+ "  void bar(int[] data) {\n"
+				+ "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ "    int counter = 0;\n"
+				+ "    array.par().foreach(new Foreach<Int32>() {\n"
+				+ "      public void function(Int32 element) {\n"
+				+ "        counter += element.value;\n"
+				+ "      }\n"
+				+ "    });\n"
+				+ "    array.toJavaArray(data);\n"
+				+ "  }\n"
+				+ "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		assertTrue(result.getFiles().containsKey("java/foo/Foo.java"));
+		assertTrue(result.getFiles().containsKey("rs/foo/Foo.rs"));
+		assertTrue(result.getFiles().containsKey(
+				"jni/ParallelME/generated/Android.mk"));
+		assertTrue(result.getFileContents("java/foo/Foo.java").contains(
+				"class Foo"));
+		assertEquals(1, result.getDiagnostics().size());
+		Diagnostic warning = result.getDiagnostics().get(0);
+		assertEquals(Diagnostic.Kind.Warning, warning.kind);
+		assertEquals("Foo.java", warning.file);
+		assertEquals(9, warning.line);
+	}
+
+	/**
+	 * Tests that syntax errors of sources held in memory are reported as
+	 * diagnostics.
+	 */
+	@Test
+	public void inMemorySyntaxError() throws Exception {
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Foo { void bar() { int x = ; } }";
+		CompilationResult result = new Compiler().compile(Collections
+				.singletonMap("Foo.java", source));
+		assertFalse(result.isSuccessful());
+		Diagnostic error = result.getDiagnostics().get(0);
+		assertEquals(Diagnostic.Kind.Error, error.kind);
+		assertEquals("Foo.java", error.file);
+		assertEquals(3, error.line);
+	}
+
+	/**
+	 * Tests that syntax errors of files parsed concurrently are reported in
+	 * the input file order, as in a sequential compilation, even if the last
+	 * file is parsed first.
+	 */
+	@Test
+	public void parallelSyntaxErrorOrder() throws Exception {
+		StringBuilder first = new StringBuilder("package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Foo {\n");
+		for (int i = 0; i < 2000; i++)
+			first.append("  int bar" + i + "(int x) { return x * " + i
+					+ " + 1; }\n");
+		first.append("  void baz() { int x = ; }\n}");
+		Map<String, String> sources = new LinkedHashMap<>();
+		sources.put("Foo.java", first.toString());
+		sources.put("Bar.java", "package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Bar { void bar() { int x = ; } }");
+		List<Diagnostic> sequential = new Compiler().compile(sources)
+				.getDiagnostics();
+		List<Diagnostic> parallel = new Compiler(2).compile(sources)
+				.getDiagnostics();
+		assertEquals("Foo.java", parallel.get(0).file);
+		assertEquals(2004, parallel.get(0).line);
+		assertEquals(sequential.toString(), parallel.toString());
+		boolean bar = false;
+		for (Diagnostic diagnostic : parallel) {
+			if (diagnostic.kind == Diagnostic.Kind.Error) {
+				bar |= "Bar.java".equals(diagnostic.file);
+				assertFalse(bar && "Foo.java".equals(diagnostic.file));
+			}
+		}
+		assertTrue(bar);
+	}
+
+	/**
+	 * Tests that no code is generated for runtimes that are not targeted and
+	 * that the translated user code instantiates the single runtime targeted
+	 * directly.
+	 */
+	@Test
+	public void singleTarget() throws Exception {
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "class Foo {\n"
+				+ "  Bitmap bar(Bitmap bitmap) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n"
+				+ "  }\n"
+				+ "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		compiler.setTargets(EnumSet.of(TargetRuntime.ParallelME));
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.getFiles().containsKey(
+				"java/foo/FooWrapperImplPM.java"));
+		assertFalse(result.getFiles().containsKey(
+				"java/foo/FooWrapperImplRS.java"));
+		assertFalse(result.getFiles().containsKey("rs/foo/Foo.rs"));
+		String userCode = result.getFileContents("java/foo/Foo.java");
+		assertTrue(userCode.contains("public Foo() {"));
+		assertFalse(userCode.contains("RenderScript"));
+		compiler.setTargets(EnumSet.of(TargetRuntime.RenderScript));
+		result = compiler.compile(Collections.singletonMap("Foo.java",
+				source));
+		assertTrue(result.getFiles().containsKey("rs/foo/Foo.rs"));
+		assertFalse(result.getFiles().containsKey(
+				"java/foo/FooWrapperImplPM.java"));
+		assertFalse(result.getFiles().containsKey(
+				"jni/ParallelME/generated/Android.mk"));
+		userCode = result.getFileContents("java/foo/Foo.java");
+		assertTrue(userCode.contains("public Foo(RenderScript PM_mRS) {"));
+		assertFalse(userCode.contains("isValid()"));
+	}
+
+	/**
+	 * Tests that adjacent parallel foreach operations on the same image are
+	 * fused into a single kernel, while the ones separated by other
+	 * statements are not.
+	 */
+	@Test
+	public void fusedForeach() throws Exception {
+		String foreach = "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      @Override\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        pixel.rgba.red = pixel.rgba.red * factor;\n"
+				+ "      }\n" + "    });\n";
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "import org.parallelme.userlibrary.image.Pixel;\n"
+				+ "class Foo {\n"
+				+ "  Bitmap bar(Bitmap bitmap, final float factor) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ foreach + "    // comment\n" + foreach
+				+ "    bitmap = image.toBitmap();\n" + foreach
+				+ "    return bitmap;\n" + "  }\n" + "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		String userCode = result.getFileContents("java/foo/Foo.java");
+		assertTrue(userCode.contains("PM_parallelME.foreach1(factor);"));
+		assertFalse(userCode.contains("foreach2"));
+		assertTrue(userCode.contains("PM_parallelME.foreach3(factor);"));
+		String rs = result.getFileContents("rs/foo/Foo.rs");
+		assertTrue(rs.contains("return foreach2_func(foreach1_func(pixel, "
+				+ "x, y), x, y);"));
+		assertFalse(rs.contains("foreach2(float4"));
+		String kernels = result
+				.getFileContents("jni/ParallelME/generated/userKernels.hpp");
+		assertTrue(kernels.contains("foreach2_func(foreach1_func("));
+		assertFalse(kernels.contains("__kernel void foreach2("));
+	}
+
+	/**
+	 * Tests that consecutive operations on the same image are chained on the
+	 * pending task of the image in the ParallelME runtime, without waiting
+	 * for the first one on the host.
+	 */
+	@Test
+	public void chainedOperations() throws Exception {
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+				+ "import org.parallelme.userlibrary.image.Pixel;\n"
+				+ "class Foo {\n"
+				+ "  Bitmap bar(Bitmap bitmap, final float factor) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      @Override\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        pixel.rgba.red = pixel.rgba.red * factor;\n"
+				+ "      }\n" + "    });\n"
+				+ "    final float half = factor / 2;\n"
+				+ "    image.par().foreach(new Foreach<Pixel>() {\n"
+				+ "      @Override\n"
+				+ "      public void function(Pixel pixel) {\n"
+				+ "        pixel.rgba.green = pixel.rgba.green * half;\n"
+				+ "      }\n" + "    });\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n" + "  }\n" + "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		String userCode = result.getFileContents("java/foo/Foo.java");
+		assertTrue(userCode.contains("PM_parallelME.foreach1(factor);"));
+		assertTrue(userCode.contains("PM_parallelME.foreach2(half);"));
+		String cpp = result
+				.getFileContents("jni/ParallelME/generated/foo_FooWrapperImplPM.cpp");
+		String submit = "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, "
+				+ "std::move(PM_task),\n\t\t\t{PM_dataPtr->task},";
+		int first = cpp.indexOf(submit);
+		int second = cpp.indexOf(submit, first + 1);
+		assertTrue(first >= 0);
+		assertTrue(second > first);
+		assertFalse(cpp.contains("waitTask("));
+	}
+
+	/**
+	 * Tests that a parallel map is fused into the reduce that reads its
+	 * destination array, so the reduce kernels apply the map function to each
+	 * element they read, unless the mapped array is used elsewhere.
+	 */
+	@Test
+	public void fusedMapReduce() throws Exception {
+		String mapReduce = "    Array<Float32> mapped = array.par().map(Float32.class,\n"
+				+ "        new Map<Float32, Int32>() {\n"
+				+ "      @Override\n"
+				+ "      public Float32 function(Int32 element) {\n"
+				+ "        Float32 ret = new Float32();\n"
+				+ "        ret.value = element.value * factor;\n"
+				+ "        return ret;\n"
+				+ "      }\n"
+				+ "    });\n"
+				+ "    Float32 sum = mapped.par().reduce(new Reduce<Float32>() {\n"
+				+ "      @Override\n"
+				+ "      public Float32 function(Float32 a, Float32 b) {\n"
+				+ "        a.value = a.value + b.value;\n"
+				+ "        return a;\n" + "      }\n" + "    });\n";
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.Array;\n"
+				+ "import org.parallelme.userlibrary.datatype.Float32;\n"
+				+ "import org.parallelme.userlibrary.datatype.Int32;\n"
+				+ "import org.parallelme.userlibrary.function.Map;\n"
+				+ "import org.parallelme.userlibrary.function.Reduce;\n"
+				+ "class Foo {\n"
+				+ "  float bar(int[] data, final float factor) {\n"
+				+ "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ mapReduce + "    return sum.value;\n" + "  }\n"
+				+ "  float baz(int[] data, final float factor) {\n"
+				+ "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ mapReduce + "    mapped.toArray(new float[data.length]);\n"
+				+ "    return sum.value;\n" + "  }\n" + "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		String userCode = result.getFileContents("java/foo/Foo.java");
+		assertFalse(userCode.contains("map1("));
+		assertTrue(userCode.contains("Float32 sum = PM_parallelME.reduce2("));
+		assertTrue(userCode.contains("PM_parallelME.map3("));
+		String rs = result.getFileContents("rs/foo/Foo.rs");
+		assertTrue(rs.contains("map1_func(rsGetElementAt_int(PM_gInputReduce2"));
+		assertFalse(rs.contains("map1(int"));
+		assertTrue(rs.contains("rsGetElementAt_float(PM_gInputReduce4"));
+		String kernels = result
+				.getFileContents("jni/ParallelME/generated/userKernels.hpp");
+		assertTrue(kernels.contains("map1_func(PM_data[PM_base], factor)"));
+		assertFalse(kernels.contains("__kernel void map1("));
+		assertTrue(kernels.contains("__kernel void map3("));
+	}
+
+	/**
+	 * Tests that a parallel filter is fused into the reduce that reads its
+	 * destination array, so the reduce kernels skip the rejected elements,
+	 * and that a foreach on the filtered array is fused into the filter
+	 * kernels.
+	 */
+	@Test
+	public void fusedFilter() throws Exception {
+		String filter = "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ "    Array<Int32> filtered = array.par().filter(new Filter<Int32>() {\n"
+				+ "      @Override\n"
+				+ "      public boolean function(Int32 element) {\n"
+				+ "        return element.value > threshold;\n"
+				+ "      }\n" + "    });\n";
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.Array;\n"
+				+ "import org.parallelme.userlibrary.datatype.Int32;\n"
+				+ "import org.parallelme.userlibrary.function.Filter;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "import org.parallelme.userlibrary.function.Reduce;\n"
+				+ "class Foo {\n"
+				+ "  int sum(int[] data, final int threshold) {\n"
+				+ filter
+				+ "    Int32 sum = filtered.par().reduce(new Reduce<Int32>() {\n"
+				+ "      @Override\n"
+				+ "      public Int32 function(Int32 a, Int32 b) {\n"
+				+ "        a.value = a.value + b.value;\n"
+				+ "        return a;\n" + "      }\n" + "    });\n"
+				+ "    return sum.value;\n" + "  }\n"
+				+ "  void scale(int[] data, final int threshold) {\n"
+				+ filter
+				+ "    filtered.par().foreach(new Foreach<Int32>() {\n"
+				+ "      @Override\n"
+				+ "      public void function(Int32 element) {\n"
+				+ "        element.value = element.value * 2;\n"
+				+ "      }\n" + "    });\n"
+				+ "    filtered.toJavaArray(data);\n" + "  }\n" + "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		String userCode = result.getFileContents("java/foo/Foo.java");
+		assertFalse(userCode.contains("filter1("));
+		assertTrue(userCode.contains("Int32 sum = PM_parallelME.reduce2("));
+		assertTrue(userCode.contains("PM_parallelME.filter3(threshold);"));
+		assertFalse(userCode.contains("foreach4"));
+		String rs = result.getFileContents("rs/foo/Foo.rs");
+		assertTrue(rs.contains("if (filter1_func(PM_element)) {"));
+		assertTrue(rs.contains("rsSetElementAt_int(PM_gTileFoundReduce2, "
+				+ "PM_found, x);"));
+		assertTrue(rs.contains("foreach4_func(rsGetElementAt_int("
+				+ "PM_gInputFilter3, PM_value))"));
+		String kernels = result
+				.getFileContents("jni/ParallelME/generated/userKernels.hpp");
+		assertTrue(kernels.contains("if (filter1_func(PM_element, threshold))"));
+		assertTrue(kernels.contains("PM_tileFound[PM_gid] = PM_found;"));
+		assertTrue(kernels.contains("foreach4_func(PM_data[PM_value])"));
+		assertFalse(kernels.contains("__kernel void foreach4("));
+	}
+
+	/**
+	 * Tests that the dataflow graph links binds and operations of the same
+	 * method through the variables they define and use.
+	 */
+	@Test
+	public void dataflowGraph() throws Exception {
+		String source = "package foo;\n"
+				+ "import org.parallelme.userlibrary.Array;\n"
+				+ "import org.parallelme.userlibrary.datatype.Int32;\n"
+				+ "import org.parallelme.userlibrary.function.Foreach;\n"
+				+ "class Foo {\n"
+				+ "  void bar(int[] data, final int factor) {\n"
+				+ "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ "    array.par().foreach(new Foreach<Int32>() {\n"
+				+ "      public void function(Int32 element) {\n"
+				+ "        element.value = element.value * factor;\n"
+				+ "      }\n" + "    });\n"
+				+ "    array.toJavaArray(data);\n" + "  }\n"
+				+ "  void baz(int[] data) {\n"
+				+ "    Array<Int32> array = new Array<Int32>(data, Int32.class);\n"
+				+ "    array.toJavaArray(data);\n" + "  }\n" + "}";
+		Compiler compiler = new Compiler();
+		compiler.setExportInternalLibraries(false);
+		compiler.setDataflowFormat("json");
+		CompilationResult result = compiler.compile(Collections
+				.singletonMap("Foo.java", source));
+		assertTrue(result.isSuccessful());
+		String graph = result.getFileContents("dataflow/foo/Foo.json");
+		assertTrue(graph.contains("{\"id\": 1, \"type\": \"Operation\", "
+				+ "\"operation\": \"Foreach\", \"fused\": [], "
+				+ "\"producers\": [], \"number\": 1, \"variable\": "
+				+ "\"array\", \"method\": \"bar(int[], int)\", "
+				+ "\"line\": 8}"));
+		assertTrue(graph.contains("{\"source\": 0, \"target\": 1, "
+				+ "\"variable\": \"array\", \"type\": \"UserLibrary\"}"));
+		assertTrue(graph.contains("{\"source\": 1, \"target\": 2, "
+				+ "\"variable\": \"array\", \"type\": \"UserLibrary\"}"));
+		assertTrue(graph.contains("{\"source\": 3, \"target\": 4, "
+				+ "\"variable\": \"array\", \"type\": \"UserLibrary\"}"));
+		assertFalse(graph.contains("\"target\": 3"));
+	}
+}
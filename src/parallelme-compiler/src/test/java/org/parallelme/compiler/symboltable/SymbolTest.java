@@ -0,0 +1,125 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.symboltable;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Performs tests to validate the indexes and caches kept by Symbol class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class SymbolTest {
+	private int identifier = 0;
+
+	private VariableSymbol createVariable(String name, Symbol scope) {
+		VariableSymbol variable = new VariableSymbol(name, "int",
+				new ArrayList<String>(), "", scope, null, null, identifier++);
+		scope.addSymbol(variable);
+		return variable;
+	}
+
+	private UserLibraryVariableSymbol createUserLibraryVariable(String name,
+			Symbol scope) {
+		UserLibraryVariableSymbol variable = new UserLibraryVariableSymbol(
+				name, "BitmapImage", new ArrayList<String>(), "", scope, null,
+				null, identifier++);
+		scope.addSymbol(variable);
+		return variable;
+	}
+
+	private ClassSymbol createClass(String name, Symbol scope) {
+		ClassSymbol classSymbol = new ClassSymbol(name, null, scope, null,
+				null, identifier++);
+		scope.addSymbol(classSymbol);
+		return classSymbol;
+	}
+
+	/**
+	 * Tests that symbols visible under a scope reflect symbols added after a
+	 * previous search, both in the scope and in its enclosing scopes.
+	 */
+	@Test
+	public void symbolsUnderScope() {
+		RootSymbol root = new RootSymbol();
+		ClassSymbol classSymbol = createClass("Foo", root);
+		createUserLibraryVariable("image", classSymbol);
+		ClassSymbol innerClass = createClass("Bar", classSymbol);
+		createVariable("x", innerClass);
+		Map<String, Symbol> symbols = innerClass
+				.getSymbolsUnderScope(UserLibraryVariableSymbol.class);
+		assertEquals(1, symbols.size());
+		assertTrue(symbols.containsKey("image"));
+		assertSame(symbols, innerClass
+				.getSymbolsUnderScope(UserLibraryVariableSymbol.class));
+		createUserLibraryVariable("other", innerClass);
+		assertEquals(2,
+				innerClass.getSymbolsUnderScope(UserLibraryVariableSymbol.class)
+						.size());
+		createUserLibraryVariable("third", classSymbol);
+		assertEquals(3,
+				innerClass.getSymbolsUnderScope(UserLibraryVariableSymbol.class)
+						.size());
+		assertEquals(2,
+				classSymbol
+						.getSymbolsUnderScope(UserLibraryVariableSymbol.class)
+						.size());
+	}
+
+	/**
+	 * Tests that symbols of a given class are listed in depth-first order,
+	 * that repeated searches return the same cached list and that they
+	 * reflect symbols added to inner scopes after a previous search.
+	 */
+	@Test
+	public void symbols() {
+		RootSymbol root = new RootSymbol();
+		ClassSymbol classSymbol = createClass("Foo", root);
+		VariableSymbol a = createVariable("a", classSymbol);
+		ClassSymbol innerClass = createClass("Bar", classSymbol);
+		VariableSymbol b = createVariable("b", innerClass);
+		VariableSymbol c = createVariable("c", classSymbol);
+		List<Symbol> variables = root.getSymbols(VariableSymbol.class);
+		assertEquals(3, variables.size());
+		assertSame(a, variables.get(0));
+		assertSame(b, variables.get(1));
+		assertSame(c, variables.get(2));
+		assertSame(variables, root.getSymbols(VariableSymbol.class));
+		VariableSymbol d = createVariable("d", innerClass);
+		variables = root.getSymbols(VariableSymbol.class);
+		assertEquals(4, variables.size());
+		assertSame(d, variables.get(2));
+		assertEquals(2, root.getSymbols(ClassSymbol.class).size());
+	}
+
+	/**
+	 * Tests searches by name and class, including replaced symbols.
+	 */
+	@Test
+	public void symbolByNameAndClass() {
+		RootSymbol root = new RootSymbol();
+		ClassSymbol classSymbol = createClass("Foo", root);
+		createVariable("image", classSymbol);
+		assertNotNull(classSymbol.getInnerSymbol("image", VariableSymbol.class));
+		assertNull(classSymbol.getInnerSymbol("image",
+				UserLibraryVariableSymbol.class));
+		UserLibraryVariableSymbol image = createUserLibraryVariable("image",
+				classSymbol);
+		assertNull(classSymbol.getInnerSymbol("image", VariableSymbol.class));
+		assertSame(image, classSymbol.getSymbolUnderScope("image",
+				UserLibraryVariableSymbol.class));
+		assertSame(image.name, new String("image").intern());
+	}
+}
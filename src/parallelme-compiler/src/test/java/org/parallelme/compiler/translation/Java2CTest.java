@@ -0,0 +1,154 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.translation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.junit.Test;
+import org.parallelme.compiler.Diagnostic;
+import org.parallelme.compiler.intermediate.UserFunction;
+import org.parallelme.compiler.intermediate.Variable;
+import org.parallelme.compiler.symboltable.TokenAddress;
+
+/**
+ * Performs tests to validate Java2C class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Java2CTest {
+	private Map<String, String> renamedVariables = new HashMap<>();
+
+	private String translate(String code, String... arguments) {
+		List<Variable> variables = new ArrayList<>();
+		for (int i = 0; i < arguments.length; i += 2)
+			variables.add(new Variable(arguments[i + 1], arguments[i], null,
+					"", i));
+		return new Java2C().translate(new UserFunction(code, variables),
+				this.renamedVariables);
+	}
+
+	/**
+	 * Tests translation of Pixel fields and coordinates.
+	 */
+	@Test
+	public void pixel() {
+		assertEquals(
+				"{\n\tfloat4 other = pixel;\n"
+						+ "\tother.s0 = pixel.s1 * x + y;\n"
+						+ "\tpixel.s3 = other.s2;\n}",
+				this.translate("{\n\tPixel other = pixel;\n"
+						+ "\tother.rgba.red = pixel.rgba.green * pixel.x + pixel.y;\n"
+						+ "\tpixel.rgba.alpha = other.rgba.blue;\n}", "Pixel",
+						"pixel"));
+	}
+
+	/**
+	 * Tests translation of numeric user library objects.
+	 */
+	@Test
+	public void numeric() {
+		assertEquals("{ float ret = 0; int copy = (element); "
+				+ "ret = element * 0.5f + copy; return ret; }",
+				this.translate("{ Float32 ret = new Float32(); "
+						+ "Int32 copy = new Int32(element.value); "
+						+ "ret.value = element.value * 0.5f + copy.value; "
+						+ "return ret; }", "Int32", "element"));
+	}
+
+	/**
+	 * Tests translation of Math calls and primitive types.
+	 */
+	@Test
+	public void math() {
+		assertEquals("{ bool b = fabs(a) > M_PI; a = sqrt(max(a, 1.0f)); }",
+				this.translate("{ boolean b = Math.abs(a) > Math.PI; "
+						+ "a = Math.sqrt(Math.max(a, 1.0f)); }", "float", "a"));
+	}
+
+	/**
+	 * Tests that only references to renamed variables are replaced, and that
+	 * identifiers containing type or variable names are kept.
+	 */
+	@Test
+	public void renamedVariables() {
+		this.renamedVariables.put("count", "*PM_count");
+		this.renamedVariables.put("factor", "PM_gFactor");
+		assertEquals("{ int Int32Count = 0; (*PM_count)++; "
+				+ "*PM_count += e.s0 * PM_gFactor + factorial; }",
+				this.translate("{ int Int32Count = 0; count++; "
+						+ "count += e.rgba.red * factor + factorial; }",
+						"Pixel", "e"));
+	}
+
+	/**
+	 * Tests that a user function translated more than once, with different
+	 * renamed variables, is translated from the same parse.
+	 */
+	@Test
+	public void repeatedTranslation() {
+		Java2C translator = new Java2C();
+		UserFunction userFunction = new UserFunction(
+				"{ count += e.value * factor; }", new ArrayList<Variable>());
+		this.renamedVariables.put("count", "*PM_count");
+		assertEquals("{ *PM_count += e.value * factor; }",
+				translator.translate(userFunction, this.renamedVariables));
+		this.renamedVariables.put("factor", "PM_gFactor");
+		assertEquals("{ *PM_count += e.value * PM_gFactor; }",
+				translator.translate(userFunction, this.renamedVariables));
+	}
+
+	/**
+	 * Tests that syntax errors in user functions are recorded as diagnostics
+	 * instead of aborting the translation.
+	 */
+	@Test
+	public void syntaxError() {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		Java2C translator = new Java2C(diagnostics);
+		UserFunction userFunction = new UserFunction("{\n\tint x = ;\n}",
+				new ArrayList<Variable>());
+		assertNotNull(translator.translate(userFunction,
+				this.renamedVariables));
+		assertEquals(1, diagnostics.size());
+		assertEquals(Diagnostic.Kind.Error, diagnostics.get(0).kind);
+		assertTrue(diagnostics.get(0).message,
+				diagnostics.get(0).message
+						.startsWith("Invalid user function code, line 2:9 "));
+		translator.translate(userFunction, this.renamedVariables);
+		assertEquals(1, diagnostics.size());
+	}
+
+	/**
+	 * Tests that syntax errors in user functions are reported with the
+	 * source file and their line in that file.
+	 */
+	@Test
+	public void syntaxErrorPosition() {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		Java2C translator = new Java2C(diagnostics);
+		translator.setFile("Foo.java");
+		CommonToken start = new CommonToken(0, "{");
+		start.setLine(10);
+		UserFunction userFunction = new UserFunction("{\n\tint x = ;\n}",
+				new ArrayList<Variable>(), new TokenAddress(start, start));
+		translator.translate(userFunction, this.renamedVariables);
+		assertEquals(1, diagnostics.size());
+		assertEquals("Foo.java", diagnostics.get(0).file);
+		assertEquals(11, diagnostics.get(0).line);
+		assertTrue(diagnostics.get(0).message,
+				diagnostics.get(0).message
+						.startsWith("Invalid user function code: "));
+	}
+}
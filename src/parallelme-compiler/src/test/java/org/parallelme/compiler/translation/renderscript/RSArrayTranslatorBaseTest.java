@@ -18,7 +18,7 @@ import org.parallelme.compiler.intermediate.Operation.ExecutionType;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.translation.ArrayTranslatorTest;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
 import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
 import org.stringtemplate.v4.ST;
 
@@ -38,7 +38,7 @@ public abstract class RSArrayTranslatorBaseTest extends ArrayTranslatorTest {
 
 	@Override
 	protected BaseUserLibraryTranslator getTranslator() {
-		return new RSArrayTranslator(new SimpleTranslator());
+		return new RSArrayTranslator(new Java2C());
 	}
 
 	/**
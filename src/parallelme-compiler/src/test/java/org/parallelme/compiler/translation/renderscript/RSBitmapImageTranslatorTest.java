@@ -17,7 +17,7 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Parameter;
 import org.parallelme.compiler.intermediate.Variable;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
 import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
 import org.stringtemplate.v4.ST;
 
@@ -37,7 +37,7 @@ public class RSBitmapImageTranslatorTest extends RSImageTranslatorTest {
 
 	@Override
 	protected BaseUserLibraryTranslator getTranslator() {
-		return new RSBitmapImageTranslator(new SimpleTranslator());
+		return new RSBitmapImageTranslator(new Java2C());
 	}
 
 	@Override
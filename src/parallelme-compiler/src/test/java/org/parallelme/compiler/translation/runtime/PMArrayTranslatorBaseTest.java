@@ -18,7 +18,7 @@ import org.parallelme.compiler.intermediate.Operation.ExecutionType;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Variable;
 import org.parallelme.compiler.translation.ArrayTranslatorTest;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
 import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
 import org.stringtemplate.v4.ST;
 
@@ -30,7 +30,7 @@ import org.stringtemplate.v4.ST;
 public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 	@Override
 	protected BaseUserLibraryTranslator getTranslator() {
-		return new PMArrayTranslator(new SimpleTranslator());
+		return new PMArrayTranslator(new Java2C());
 	}
 
 	/**
@@ -306,13 +306,14 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 				+ "auto PM_dataPtr = (ArrayData *) PM_data;\n"
 				+ "auto PM_task = std::make_unique<Task>(PM_runtimePtr->program);\n"
 				+ "PM_task->addKernel(\"foreach123\");\n"
-				+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+				+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+				+ "{PM_dataPtr->task},\n"
+				+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 				+ "kernelHash[\"foreach123\"]\n"
 				+ "->setArg(0, PM_dataPtr->buffer)\n"
 				+ "->setWorkSize(PM_dataPtr->length);\n"
 				+ "});\n"
-				+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-				+ "PM_runtimePtr->runtime->finish();\n" + "}";
+				+ "}";
 		this.validateTranslation(expectedTranslation, translatedFunction);
 		// Parallel with final external variable
 		operation = this.createForeachOperation(ExecutionType.Parallel);
@@ -326,14 +327,15 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_dataPtr = (ArrayData *) PM_data;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->length);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
 		expectedTranslation = st.render();
@@ -354,7 +356,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->length)\n"
@@ -362,8 +366,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("finalVarType", finalVar.typeName);
@@ -383,15 +386,16 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_dataPtr = (ArrayData *) PM_data;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->length)\n"
 						+ "->setArg(2, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
 		expectedTranslation = st.render();
@@ -410,15 +414,16 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->length)\n"
 						+ "->setArg(2, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
@@ -652,7 +657,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(sizeof(<type>));\n"
 						+ "PM_task->addKernel(\"reduce123_tile\");\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -666,8 +673,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(4, PM_tileSize)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -691,7 +697,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(sizeof(<type>));\n"
 						+ "PM_task->addKernel(\"reduce123_tile\");\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -707,8 +715,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(5, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -734,7 +741,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -743,8 +752,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
@@ -769,7 +777,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(sizeof(<type>)*env->GetArrayLength(<destName>));\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -777,8 +787,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -802,7 +811,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -810,8 +821,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
@@ -999,14 +1009,15 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
 						+ "->setWorkSize(PM_dataPtr->length);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		String expectedTranslation = st.render();
@@ -1025,15 +1036,16 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
 						+ "->setArg(2, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->length);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		st.add("finalVarType", finalVar.typeName);
@@ -1057,7 +1069,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1066,8 +1080,8 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -1091,7 +1105,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1099,8 +1115,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		st.add("finalVarType", finalVar.typeName);
@@ -1122,7 +1137,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1130,8 +1147,8 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -1377,21 +1394,23 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->length);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
 						+ "->setWorkSize(PM_dataPtr->length);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->length);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1399,8 +1418,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->length)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		String expectedTranslation = st.render();
 		this.validateTranslation(expectedTranslation, translatedFunction);
@@ -1417,22 +1435,24 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->length);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
 						+ "->setArg(2, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->length);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->length);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1440,8 +1460,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->length)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
@@ -1464,7 +1483,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->length);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1473,8 +1494,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->length);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
@@ -1482,7 +1502,8 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1490,8 +1511,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->length)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
 		st.add("nonFinalVar", nonFinalVar.name);
@@ -1511,7 +1531,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->length);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1519,15 +1541,15 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->length);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1535,8 +1557,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->length)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
@@ -1556,7 +1577,9 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->length);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->buffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1564,8 +1587,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->length);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
@@ -1573,7 +1595,8 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->buffer)\n"
@@ -1581,8 +1604,7 @@ public abstract class PMArrayTranslatorBaseTest extends ArrayTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->length)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
 		st.add("nonFinalVar", nonFinalVar.name);
@@ -17,7 +17,7 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Parameter;
 import org.parallelme.compiler.intermediate.Variable;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
 import org.parallelme.compiler.translation.userlibrary.BaseUserLibraryTranslator;
 
 /**
@@ -36,7 +36,7 @@ public class PMBitmapImageTranslatorTest extends PMImageTranslatorTest {
 
 	@Override
 	protected BaseUserLibraryTranslator getTranslator() {
-		return new PMBitmapImageTranslator(new SimpleTranslator());
+		return new PMBitmapImageTranslator(new Java2C());
 	}
 
 	@Override
@@ -17,7 +17,7 @@ import org.parallelme.compiler.intermediate.OutputBind;
 import org.parallelme.compiler.intermediate.OutputBind.OutputBindType;
 import org.parallelme.compiler.intermediate.Parameter;
 import org.parallelme.compiler.intermediate.Variable;
-import org.parallelme.compiler.translation.SimpleTranslator;
+import org.parallelme.compiler.translation.Java2C;
 
 /**
  * Performs tests to validate PMHDRImageTranslator class.
@@ -35,7 +35,7 @@ public class PMHDRImageTranslatorTest extends PMImageTranslatorTest {
 
 	@Override
 	protected PMTranslator getTranslator() {
-		return new PMHDRImageTranslator(new SimpleTranslator());
+		return new PMHDRImageTranslator(new Java2C());
 	}
 
 	@Override
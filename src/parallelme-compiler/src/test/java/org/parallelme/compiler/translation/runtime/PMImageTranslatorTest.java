@@ -261,14 +261,15 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 				+ "auto PM_dataPtr = (ImageData *) PM_data;\n"
 				+ "auto PM_task = std::make_unique<Task>(PM_runtimePtr->program);\n"
 				+ "PM_task->addKernel(\"foreach123\");\n"
-				+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+				+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+				+ "{PM_dataPtr->task},\n"
+				+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 				+ "kernelHash[\"foreach123\"]\n"
 				+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 				+ "->setArg(1, PM_dataPtr->width)\n"
 				+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 				+ "});\n"
-				+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-				+ "PM_runtimePtr->runtime->finish();\n" + "}";
+				+ "}";
 		this.validateTranslation(expectedTranslation, translatedFunction);
 		// Parallel with final external variable
 		operation = this.createForeachOperation(ExecutionType.Parallel);
@@ -282,15 +283,16 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_dataPtr = (ImageData *) PM_data;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_dataPtr->width)\n"
 						+ "->setArg(2, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
 		expectedTranslation = st.render();
@@ -311,7 +313,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_dataPtr->width)\n"
@@ -320,8 +324,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("finalVarType", finalVar.typeName);
@@ -341,7 +344,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_dataPtr = (ImageData *) PM_data;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_dataPtr->width)\n"
@@ -349,8 +354,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
 		expectedTranslation = st.render();
@@ -369,7 +373,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"foreach123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"foreach123\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_dataPtr->width)\n"
@@ -377,8 +383,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
@@ -591,7 +596,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(PM_tileElemSize);\n"
 						+ "PM_task->addKernel(\"reduce123_tile\");\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -603,8 +610,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(2, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -627,7 +633,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(PM_tileElemSize);\n"
 						+ "PM_task->addKernel(\"reduce123_tile\");\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -641,8 +649,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -661,7 +668,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(sizeof(float)*env->GetArrayLength(<destName>));\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -669,8 +678,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -688,7 +696,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "auto PM_<destName>Buffer = std::make_shared\\<Buffer>(sizeof(float)*env->GetArrayLength(<destName>));\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -697,8 +707,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -722,7 +731,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"reduce123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"reduce123\"]\n"
 						+ "->setArg(0, PM_<destName>Buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -731,8 +742,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "PM_<destName>Buffer->copyToJArray(env, <destName>);\n"
 						+ "}");
@@ -933,15 +943,16 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(2, PM_dataPtr->width)\n"
 						+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		String expectedTranslation = st.render();
@@ -960,7 +971,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -968,8 +981,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		st.add("finalVarType", finalVar.typeName);
@@ -993,7 +1005,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1003,8 +1017,8 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(5, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -1028,7 +1042,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_dataRetPtr = (ArrayData *) PM_dataRet;\n"
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1037,8 +1053,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n" + "}");
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n" + "}");
 		st.add("destName", operation.destinationVariable.name);
 		st.add("type", getTranslatedMapType());
 		st.add("finalVarType", finalVar.typeName);
@@ -1060,7 +1075,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_<nonFinalVar>Buffer = std::make_shared\\<Buffer>(sizeof(<nonFinalVarType>));\n"
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "PM_task->addKernel(\"map123\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task, PM_dataRetPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"map123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1069,8 +1086,8 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);"
 						+ "}");
 		st.add("destName", operation.destinationVariable.name);
@@ -1330,22 +1347,24 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->width*PM_dataPtr->height);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
 						+ "->setArg(2, PM_dataPtr->width)\n"
 						+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1354,8 +1373,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		String expectedTranslation = st.render();
 		this.validateTranslation(expectedTranslation, translatedFunction);
@@ -1372,7 +1390,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->width*PM_dataPtr->height);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1380,15 +1400,15 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(3, <finalVar>)\n"
 						+ "->setWorkSize(PM_dataPtr->width, PM_dataPtr->height);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program);\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1397,8 +1417,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
@@ -1421,7 +1440,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1431,8 +1452,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(5, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
@@ -1440,7 +1460,8 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1449,8 +1470,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
 		st.add("nonFinalVar", nonFinalVar.name);
@@ -1470,7 +1490,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "auto PM_task = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1479,15 +1501,15 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, <finalVar>)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
 						+ "auto PM_task2 = std::make_unique\\<Task>(PM_runtimePtr->program, Task::Score(1.0f,2.0f));\n"
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1496,8 +1518,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("finalVarType", finalVar.typeName);
 		st.add("finalVar", finalVar.name);
@@ -1517,7 +1538,9 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "PM_<nonFinalVar>Buffer->setJArraySource(env, PM_<nonFinalVar>);\n"
 						+ "auto PM_tileBuffer = std::make_shared\\<Buffer>(sizeof(int) * PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_task->addKernel(\"filter123_tile\");\n"
-						+ "PM_task->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task),\n"
+						+ "{PM_dataPtr->task},\n"
+						+ "[=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123_tile\"]\n"
 						+ "->setArg(0, PM_dataPtr->outputBuffer)\n"
 						+ "->setArg(1, PM_tileBuffer)\n"
@@ -1526,8 +1549,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_<nonFinalVar>Buffer)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "waitTask(PM_dataPtr->task);\n"
 						+ "PM_<nonFinalVar>Buffer->copyToJArray(env, PM_<nonFinalVar>);\n"
 						+ "jintArray PM_tileArray = env->NewIntArray(PM_dataPtr->width * PM_dataPtr->height);\n"
 						+ "PM_tileBuffer->copyToJArray(env, PM_tileArray);\n"
@@ -1535,7 +1557,8 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "int PM_length = getFilterArrayLength(env, PM_tileArray);\n"
 						+ "auto PM_dataRetPtr = (ArrayData *)Java_org_parallelme_ParallelMERuntime_nativeCreateArray__II(env, self, PM_length, 2);\n"
 						+ "PM_task2->addKernel(\"filter123\");\n"
-						+ "PM_task2->setConfigFunction([=](DevicePtr &device, KernelHash &kernelHash) {\n"
+						+ "PM_dataPtr->task = submitAsyncTask(PM_runtimePtr, std::move(PM_task2),\n"
+						+ "{PM_dataPtr->task}, [=](DevicePtr &device, KernelHash &kernelHash) {\n"
 						+ "kernelHash[\"filter123\"]\n"
 						+ "->setArg(0, PM_dataRetPtr->buffer)\n"
 						+ "->setArg(1, PM_dataPtr->outputBuffer)\n"
@@ -1544,8 +1567,7 @@ public abstract class PMImageTranslatorTest extends ImageTranslatorTest {
 						+ "->setArg(4, PM_dataPtr->height)\n"
 						+ "->setWorkSize(1);\n"
 						+ "});\n"
-						+ "PM_runtimePtr->runtime->submitTask(std::move(PM_task2));\n"
-						+ "PM_runtimePtr->runtime->finish();\n"
+						+ "PM_dataRetPtr->task = PM_dataPtr->task;\n"
 						+ "return (jlong)PM_dataRetPtr;\n" + "}");
 		st.add("nonFinalVarType", nonFinalVar.typeName);
 		st.add("nonFinalVar", nonFinalVar.name);
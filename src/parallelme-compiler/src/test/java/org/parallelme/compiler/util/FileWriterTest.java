@@ -0,0 +1,68 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stringtemplate.v4.ST;
+
+/**
+ * Performs tests to validate the FileWriter class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class FileWriterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that files are only written when their contents change.
+	 */
+	@Test
+	public void skipUnchangedFiles() throws Exception {
+		String destinationFolder = new File(folder.getRoot(), "out").getPath();
+		File file = new File(destinationFolder, "Foo.java");
+		FileWriter.resetStatistics();
+		FileWriter.writeFile("Foo.java", destinationFolder, "class Foo {}");
+		assertEquals("class Foo {}", FileUtils.readFileToString(file, "UTF-8"));
+		assertEquals(1, FileWriter.getWrittenFileCount());
+		assertEquals(12, FileWriter.getWrittenBytes());
+		file.setLastModified(0);
+		FileWriter.writeFile("Foo.java", destinationFolder, "class Foo {}");
+		assertEquals(1, FileWriter.getWrittenFileCount());
+		assertEquals(1, FileWriter.getSkippedFileCount());
+		assertEquals(0, file.lastModified());
+		FileWriter.writeFile("Foo.java", destinationFolder, "class Bar {}");
+		assertEquals("class Bar {}", FileUtils.readFileToString(file, "UTF-8"));
+		assertEquals(2, FileWriter.getWrittenFileCount());
+		// No temporary files must be left behind.
+		assertEquals(1, new File(destinationFolder).list().length);
+	}
+
+	/**
+	 * Tests that templates are rendered to disk as they would be rendered to
+	 * a string.
+	 */
+	@Test
+	public void writeTemplate() throws Exception {
+		ST st = new ST("class <name> {\n\t<body; separator=\"\\n\">\n}");
+		st.add("name", "Foo");
+		st.add("body", "int x;");
+		st.add("body", "int y;");
+		FileWriter.writeFile("Foo.java", folder.getRoot().getPath(), st);
+		assertEquals(st.render(), FileUtils.readFileToString(new File(
+				folder.getRoot(), "Foo.java"), "UTF-8"));
+	}
+}
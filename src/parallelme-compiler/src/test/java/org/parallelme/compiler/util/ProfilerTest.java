@@ -0,0 +1,83 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Performs tests to validate the Profiler class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class ProfilerTest {
+	@After
+	public void tearDown() {
+		Profiler.stop();
+		Profiler.setFile(null);
+	}
+
+	/**
+	 * Tests that phases are reported by file and that nested phases are not
+	 * accounted twice.
+	 */
+	@Test
+	public void nestedPhases() throws Exception {
+		Profiler.start();
+		Profiler.setFile("Foo.java");
+		Profiler.enter("translation");
+		Profiler.enter("output");
+		Thread.sleep(100);
+		Profiler.exit();
+		Profiler.exit();
+		Profiler.enter("output");
+		Profiler.exit();
+		Profiler.setFile(null);
+		Profiler.enter("runtimeExport");
+		Profiler.exit();
+		Profiler.stop();
+		String csv = Profiler.createCSVReport();
+		String[] lines = csv.split("\n");
+		assertEquals("file,phase,calls,wallTimeNs,cpuTimeNs,allocatedBytes",
+				lines[0]);
+		assertEquals(6, lines.length);
+		assertTrue(csv.contains("\n\"\",translation,1,"));
+		assertTrue(csv.contains("\n\"\",output,2,"));
+		assertTrue(csv.contains("\n\"\",runtimeExport,1,"));
+		long translationTime = wallTime(lines, "\"Foo.java\",translation,1,");
+		long outputTime = wallTime(lines, "\"Foo.java\",output,2,");
+		assertTrue(outputTime >= 100000000);
+		assertTrue(translationTime < outputTime);
+		String json = Profiler.createJSONReport();
+		assertTrue(json.contains("\"slowestFiles\": [{\"file\": \"Foo.java\""));
+	}
+
+	/**
+	 * Tests that nothing is measured while the profiler is stopped.
+	 */
+	@Test
+	public void stopped() {
+		Profiler.start();
+		Profiler.stop();
+		Profiler.enter("output");
+		Profiler.exit();
+		assertEquals(1, Profiler.createCSVReport().split("\n").length);
+	}
+
+	private long wallTime(String[] lines, String prefix) {
+		for (String line : lines) {
+			if (line.startsWith(prefix))
+				return Long.parseLong(line.split(",")[3]);
+		}
+		fail("Line not found: " + prefix);
+		return 0;
+	}
+}
@@ -0,0 +1,83 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Performs tests to validate the ResourceWriter class.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class ResourceWriterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests the export of a resource folder from the file system.
+	 */
+	@Test
+	public void exportFromFolder() throws Exception {
+		File resource = folder.newFolder("resource");
+		FileUtils.write(new File(resource, "jni/a.h"), "a");
+		FileUtils.write(new File(resource, "b.txt"), "b");
+		File destinationFolder = folder.newFolder("out");
+		ResourceWriter.exportResource(resource.toURI().toURL(),
+				destinationFolder.getPath());
+		assertEquals("a", FileUtils.readFileToString(new File(
+				destinationFolder, "jni/a.h")));
+		assertEquals("b", FileUtils.readFileToString(new File(
+				destinationFolder, "b.txt")));
+	}
+
+	/**
+	 * Tests the export of a resource folder from a JAR, leaving files with the
+	 * same contents untouched.
+	 */
+	@Test
+	public void exportFromJar() throws Exception {
+		File jar = new File(folder.getRoot(), "resources.jar");
+		JarOutputStream os = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			os.putNextEntry(new JarEntry("Foo/"));
+			os.putNextEntry(new JarEntry("Foo/jni/a.h"));
+			os.write("a".getBytes("UTF-8"));
+			os.putNextEntry(new JarEntry("Foo/b.txt"));
+			os.write("b".getBytes("UTF-8"));
+			os.putNextEntry(new JarEntry("Bar/c.txt"));
+			os.write("c".getBytes("UTF-8"));
+		} finally {
+			os.close();
+		}
+		URL resource = new URL("jar:" + jar.toURI().toURL() + "!/Foo");
+		File destinationFolder = folder.newFolder("out");
+		FileWriter.resetStatistics();
+		ResourceWriter.exportResource(resource, destinationFolder.getPath());
+		assertEquals(2, FileWriter.getWrittenFileCount());
+		assertEquals("a", FileUtils.readFileToString(new File(
+				destinationFolder, "jni/a.h")));
+		assertEquals("b", FileUtils.readFileToString(new File(
+				destinationFolder, "b.txt")));
+		assertFalse(new File(destinationFolder, "c.txt").exists());
+		ResourceWriter.exportResource(resource, destinationFolder.getPath());
+		assertEquals(2, FileWriter.getWrittenFileCount());
+		assertEquals(2, FileWriter.getSkippedFileCount());
+	}
+}
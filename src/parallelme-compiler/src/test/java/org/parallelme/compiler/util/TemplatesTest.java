@@ -0,0 +1,128 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.parallelme.compiler.translation.runtime.PMArrayTranslator;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+
+/**
+ * Performs tests to validate the template groups of the translators.
+ *
+ * @author Wilson de Carvalho
+ */
+public class TemplatesTest {
+	private static final STGroup templates = Templates
+			.load(TemplatesTest.class);
+
+	/**
+	 * Tests that instances render the same code as templates created with
+	 * their constructor.
+	 */
+	@Test
+	public void sameOutput() {
+		ST st1 = new ST(
+				"<returnType> <name>(<params:{var|<var.type> <var.name>}; separator=\", \">)");
+		ST st2 = templates.getInstanceOf("function");
+		for (ST st : new ST[] { st1, st2 }) {
+			st.add("returnType", "void");
+			st.add("name", "foo");
+			st.addAggr("params.{type, name}", "int", "x");
+			st.addAggr("params.{type, name}", "float", "y");
+		}
+		assertEquals("void foo(int x, float y)", st2.render());
+		assertEquals(st1.render(), st2.render());
+	}
+
+	/**
+	 * Tests that only the first and the last newlines of a template
+	 * definition are trimmed.
+	 */
+	@Test
+	public void trimmedNewlines() {
+		ST st = templates.getInstanceOf("line");
+		st.add("text", "int x;");
+		assertEquals("int x;\n", st.render());
+	}
+
+	/**
+	 * Tests that attributes added to an instance do not affect other
+	 * instances of the same template, even if they are alive at the same
+	 * time.
+	 */
+	@Test
+	public void independentInstances() {
+		ST st1 = templates.getInstanceOf("function");
+		st1.add("name", "foo");
+		ST st2 = templates.getInstanceOf("function");
+		st2.add("returnType", "int");
+		st1.add("returnType", "void");
+		st2.add("name", "bar");
+		assertEquals("void foo()", st1.render());
+		assertEquals("int bar()", st2.render());
+		assertNull(templates.getInstanceOf("function").getAttribute("name"));
+	}
+
+	/**
+	 * Tests that instances may be created and rendered concurrently.
+	 */
+	@Test
+	public void concurrentInstances() throws Exception {
+		final List<String> errors = new ArrayList<>();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final String name = "foo" + i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						ST st = templates.getInstanceOf("concat");
+						st.add("c", name);
+						st.add("a", j);
+						st.add("b", j % 10);
+						String expected = j + "" + j % 10 + name;
+						if (!st.render().equals(expected)) {
+							synchronized (errors) {
+								errors.add(expected);
+							}
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	/**
+	 * Tests that groups import the templates of the superclass groups.
+	 */
+	@Test
+	public void superclassTemplates() {
+		STGroup group = Templates.load(PMArrayTranslator.class);
+		assertNotNull(group.getInstanceOf("inputBindObjCreation"));
+		assertNotNull(group.getInstanceOf("forLoop"));
+	}
+
+	/**
+	 * Tests that classes without a template group are reported.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void missingGroup() {
+		Templates.load(Templates.class);
+	}
+}
@@ -0,0 +1,186 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.parallelme.compiler.Compiler;
+import org.parallelme.compiler.Diagnostic;
+import org.parallelme.compiler.RuntimeDefinition.TargetRuntime;
+import org.parallelme.compiler.SimpleLogger;
+import org.parallelme.compiler.exception.CompilationException;
+
+/**
+ * Translates the classes written with ParallelME user library during the
+ * generate-sources phase, running the compiler inside the Maven process.
+ * 
+ * Builds are incremental: a manifest with the content hash of each source is
+ * kept in the output directory, so only classes that changed since the
+ * previous build are compiled again. The generated Java code is added as a
+ * compile source root, while the RenderScript and JNI folders are published
+ * in the parallelme.rsDirectory and parallelme.jniDirectory properties for
+ * the plugins that build them.
+ * 
+ * The compiler keeps its logger flags, output statistics and profiling data
+ * in static fields, so the goal is not thread safe and parallel builds run
+ * it one module at a time.
+ * 
+ * @author Wilson de Carvalho
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES)
+public class GenerateMojo extends AbstractMojo {
+	/**
+	 * Folder with the classes that use the user library. It must not be a
+	 * compile source root, since the translated classes replace them. Files
+	 * that do not use the user library are not copied to the output.
+	 */
+	@Parameter(defaultValue = "${project.basedir}/src/main/parallelme", required = true)
+	File sourceDirectory;
+
+	/**
+	 * Folder where the java, jni and rs folders are generated.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/parallelme", required = true)
+	File outputDirectory;
+
+	/**
+	 * Number of files compiled in parallel.
+	 */
+	@Parameter(property = "parallelme.threads", defaultValue = "1")
+	int threads;
+
+	/**
+	 * Runtimes code is generated for: rs, pm or both.
+	 */
+	@Parameter(property = "parallelme.targets", defaultValue = "both")
+	String targets;
+
+	/**
+	 * Skips the translation.
+	 */
+	@Parameter(property = "parallelme.skip", defaultValue = "false")
+	boolean skip;
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	MavenProject project;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (this.skip) {
+			this.getLog().info("Skipping ParallelME compilation.");
+			return;
+		}
+		if (!this.sourceDirectory.isDirectory()) {
+			this.getLog().info(
+					"No ParallelME sources found in " + this.sourceDirectory
+							+ ".");
+			return;
+		}
+		String[] files = this.listSources();
+		Compiler compiler = new Compiler(this.threads, true);
+		compiler.setTargets(this.parseTargets());
+		this.getLog().info(
+				"Compiling " + files.length + " ParallelME source files to "
+						+ this.outputDirectory + ".");
+		// Compiler messages are only printed in debug mode, and the previous
+		// logger flags are restored afterwards.
+		boolean logInfo = SimpleLogger.logInfo;
+		boolean logWarn = SimpleLogger.logWarn;
+		boolean logError = SimpleLogger.logError;
+		boolean debug = this.getLog().isDebugEnabled();
+		SimpleLogger.logInfo = SimpleLogger.logWarn = SimpleLogger.logError = debug;
+		CompilationException failure = null;
+		try {
+			FileUtils.forceMkdir(this.outputDirectory);
+			compiler.compile(files, this.outputDirectory.getPath());
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+					"Error while compiling ParallelME sources: "
+							+ e.getMessage(), e);
+		} catch (CompilationException e) {
+			failure = e;
+		} finally {
+			SimpleLogger.logInfo = logInfo;
+			SimpleLogger.logWarn = logWarn;
+			SimpleLogger.logError = logError;
+		}
+		this.report(compiler.getDiagnostics(), failure);
+		this.addGeneratedRoots();
+	}
+
+	/**
+	 * Lists the Java files in the source directory, in a stable order.
+	 */
+	private String[] listSources() {
+		List<String> files = new ArrayList<>();
+		for (File file : FileUtils.listFiles(this.sourceDirectory,
+				new String[] { "java" }, true))
+			files.add(file.getPath());
+		Collections.sort(files);
+		return files.toArray(new String[files.size()]);
+	}
+
+	private Set<TargetRuntime> parseTargets() throws MojoExecutionException {
+		if (this.targets.equals("rs"))
+			return EnumSet.of(TargetRuntime.RenderScript);
+		else if (this.targets.equals("pm"))
+			return EnumSet.of(TargetRuntime.ParallelME);
+		else if (this.targets.equals("both"))
+			return EnumSet.allOf(TargetRuntime.class);
+		else
+			throw new MojoExecutionException("Invalid target runtimes: "
+					+ this.targets);
+	}
+
+	/**
+	 * Logs the diagnostics found, failing the build if there are errors or if
+	 * the compilation failed without reporting any.
+	 */
+	private void report(List<Diagnostic> diagnostics,
+			CompilationException failure) throws MojoFailureException {
+		int errors = 0;
+		for (Diagnostic diagnostic : diagnostics) {
+			if (diagnostic.kind == Diagnostic.Kind.Error) {
+				this.getLog().error(diagnostic.toString());
+				errors++;
+			} else {
+				this.getLog().warn(diagnostic.toString());
+			}
+		}
+		if (errors > 0)
+			throw new MojoFailureException("ParallelME compilation failed with "
+					+ errors + " errors.");
+		else if (failure != null)
+			throw new MojoFailureException("ParallelME compilation failed: "
+					+ failure.getMessage(), failure);
+	}
+
+	private void addGeneratedRoots() {
+		this.project.addCompileSourceRoot(new File(this.outputDirectory,
+				"java").getPath());
+		this.project.getProperties().setProperty("parallelme.rsDirectory",
+				new File(this.outputDirectory, "rs").getPath());
+		this.project.getProperties().setProperty("parallelme.jniDirectory",
+				new File(this.outputDirectory, "jni").getPath());
+	}
+}
@@ -0,0 +1,105 @@
+/**                                               _    __ ____
+ *   _ __  ___ _____   ___   __  __   ___ __     / |  / /  __/
+ *  |  _ \/ _ |  _  | / _ | / / / /  / __/ /    /  | / / /__
+ *  |  __/ __ |  ___|/ __ |/ /_/ /__/ __/ /__  / / v  / /__
+ *  |_| /_/ |_|_|\_\/_/ |_/____/___/___/____/ /_/  /_/____/
+ *
+ */
+
+package org.parallelme.compiler.maven;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.parallelme.compiler.SimpleLogger;
+
+/**
+ * Performs tests to validate the generate goal.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class GenerateMojoTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GenerateMojo createMojo() throws Exception {
+		GenerateMojo mojo = new GenerateMojo();
+		mojo.sourceDirectory = new File(folder.getRoot(), "parallelme");
+		mojo.outputDirectory = new File(folder.getRoot(), "generated");
+		mojo.threads = 1;
+		mojo.targets = "both";
+		mojo.project = new MavenProject();
+		return mojo;
+	}
+
+	private void writeSource(GenerateMojo mojo, String body) throws Exception {
+		FileUtils.write(new File(mojo.sourceDirectory, "foo/Foo.java"),
+				"package foo;\n"
+						+ "import org.parallelme.userlibrary.image.BitmapImage;\n"
+						+ body, "UTF-8");
+	}
+
+	/**
+	 * Tests that sources are translated, generated roots are added to the
+	 * project and that unchanged sources are not compiled again.
+	 */
+	@Test
+	public void generate() throws Exception {
+		GenerateMojo mojo = this.createMojo();
+		this.writeSource(mojo, "class Foo {\n"
+				+ "  Bitmap bar(Bitmap bitmap) {\n"
+				+ "    BitmapImage image = new BitmapImage(bitmap);\n"
+				+ "    bitmap = image.toBitmap();\n"
+				+ "    return bitmap;\n" + "  }\n" + "}");
+		mojo.execute();
+		File generatedFile = new File(mojo.outputDirectory, "java/foo/Foo.java");
+		assertTrue(generatedFile.isFile());
+		assertTrue(new File(mojo.outputDirectory, "rs/foo/Foo.rs").isFile());
+		assertTrue(mojo.project.getCompileSourceRoots().contains(
+				new File(mojo.outputDirectory, "java").getPath()));
+		assertEquals(new File(mojo.outputDirectory, "rs").getPath(),
+				mojo.project.getProperties().get("parallelme.rsDirectory"));
+		long lastModified = generatedFile.lastModified();
+		generatedFile.setLastModified(lastModified - 10000);
+		this.createMojo().execute();
+		assertEquals(lastModified - 10000, generatedFile.lastModified());
+	}
+
+	/**
+	 * Tests that syntax errors fail the build.
+	 */
+	@Test(expected = MojoFailureException.class)
+	public void syntaxError() throws Exception {
+		GenerateMojo mojo = this.createMojo();
+		this.writeSource(mojo, "class Foo { void bar() { int x = ; } }");
+		mojo.execute();
+	}
+
+	/**
+	 * Tests that the compiler logger flags are restored after the goal runs,
+	 * even if the compilation fails.
+	 */
+	@Test
+	public void loggerFlagsRestored() throws Exception {
+		GenerateMojo mojo = this.createMojo();
+		this.writeSource(mojo, "class Foo { void bar() { int x = ; } }");
+		SimpleLogger.logInfo = SimpleLogger.logWarn = SimpleLogger.logError = true;
+		try {
+			mojo.execute();
+			fail();
+		} catch (MojoFailureException e) {
+			assertTrue(SimpleLogger.logInfo);
+			assertTrue(SimpleLogger.logWarn);
+			assertTrue(SimpleLogger.logError);
+		} finally {
+			SimpleLogger.logInfo = SimpleLogger.logWarn = SimpleLogger.logError = false;
+		}
+	}
+}